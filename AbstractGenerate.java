@@ -12,22 +12,36 @@
 
 public abstract class AbstractGenerate
 {
+    /** Where the 312 events go; buffered standard output unless replaced.  The default is only
+      made once an event needs it, since most Generates are given a sink of their own straight
+      away and its 64K buffer would be thrown away unused. */
+    protected EventSink sink;
 
     /**
     *
-    * insertTerminal
+    * setSink
     *
     **/
 
-    public void insertTerminal( Token token ) {
-        String tt = Token.getName( token.symbol );
-        
-        if( (token.symbol == Token.identifier) || (token.symbol == Token.numberConstant) || (token.symbol == Token.stringConstant) )
-            tt += " '" + token.text + "'";
+    public void setSink( EventSink sink ) {
+        this.sink = sink;
+    } // end of method setSink
 
-        tt += " on line " + token.lineNumber;
+    /** @return The sink, first making the default one if none has been set. */
+    private EventSink sink() {
+        if( sink == null )
+            sink = new WriterEventSink( System.out );
+        return sink;
+    } // end of method sink
+
+    /**
+    *
+    * insertTerminal
+    *
+    **/
 
-        System.out.println( "312TOKEN " + tt );
+    public void insertTerminal( Token token ) {
+        sink().terminal( token.symbol, token.getText(), token.lineNumber );
     } // end of method insertTerminal
 
     /**
@@ -37,7 +51,7 @@ public abstract class AbstractGenerate
     **/
 
     public void commenceNonterminal( String name ) {
-        System.out.println( "312BEGIN " + name );
+        sink().beginNonterminal( name );
     } // end of method commenceNonterminal
 
     /**
@@ -47,7 +61,7 @@ public abstract class AbstractGenerate
     **/
 
     public void finishNonterminal( String name ) {
-        System.out.println( "312END " + name );
+        sink().endNonterminal( name );
     } // end of method finishNonterminal
 
     /**
@@ -58,9 +72,20 @@ public abstract class AbstractGenerate
 
     public void reportSuccess()
     {
-        System.out.println( "312SUCCESS" );
+        sink().success();
     } // end of method reportSuccess
 
+    /**
+    *
+    * flush, once the whole file has been processed
+    *
+    **/
+
+    public void flush()
+    {
+        sink().flush();
+    } // end of method flush
+
 
     /** Report an error to the user. */
     public abstract void reportError( Token token, String explanatoryMessage ) throws CompilationException;
@@ -11,16 +11,63 @@
  **/
 
 import java.io.* ;
+import java.util.ArrayList ;
+import java.util.List ;
 
 public abstract class AbstractSyntaxAnalyser
 {
-	/** The lexical analyser to process input using. */
-	LexicalAnalyser lex ;
+	/** The lexical analyser, or other source of tokens, to process input using. */
+	TokenSource lex ;
 	/** A cache of the token to be processed next. */
 	Token nextToken ;
 	/** A code generator, descendant of AbstractGenerate. */
 	Generate myGenerate = null;
 
+	/** Whether to recover from syntax errors and carry on, rather than stop at the first. */
+	boolean recoverErrors = false ;
+	/** In recovery mode, the number of errors after which the rest of the file is abandoned. */
+	int maxDiagnostics = 50 ;
+	/** The syntax errors found so far in this parse, reported together at its end. */
+	List<CompilationException> diagnostics = new ArrayList<CompilationException>() ;
+	/** Whether an expression's terms, and a term's factors, are siblings rather than nested. */
+	boolean flatExpressions = false ;
+
+	/** For the flight recorder events: the tokens accepted so far, the line of the last one, and
+	  the line of the top level statement being parsed. */
+	long tokensAccepted ;
+	int lastLine,
+			statementLine ;
+
+	/** @return The name of the file being parsed, for the flight recorder events. */
+	String fileName()
+	{
+		return null ;
+	} // end of method fileName
+
+	/** Chooses between stopping at the first syntax error (the default) and recovering
+	  from each one to report every error in the file at the end of the parse.
+
+	  @param recover Whether to recover from syntax errors.
+	  @param maxErrors In recovery mode, the number of errors after which to give up on the file.
+	*/
+	public void setErrorRecovery( boolean recover, int maxErrors )
+	{
+		recoverErrors = recover ;
+		maxDiagnostics = maxErrors ;
+	} // end of method setErrorRecovery
+
+	/** Chooses the shape of the events for a chain of operators such as a + b - c.  Nested (the
+	  default), each operator opens a further Expression or Term inside the last, as the grammar's
+	  right recursion has it; flat, there is one Expression whose children are all the Terms and
+	  operators, read left to right, and likewise one Term for all the Factors.
+
+	  @param flat Whether to send the flat shape.
+	*/
+	public void setFlatExpressions( boolean flat )
+	{
+		flatExpressions = flat ;
+	} // end of method setFlatExpressions
+
 	/** Begin processing the first (top level) token.*/
 	public abstract void _statementPart_() throws IOException, CompilationException;
 
@@ -34,17 +81,64 @@ public abstract class AbstractSyntaxAnalyser
 	*/
 	public void parse( PrintStream ps ) throws IOException
 	{
-		myGenerate = new Generate();
+		parse( ps, new Generate() );
+	} // end of method parse
+
+	/** Parses with this instance's LexicalAnalyser, reporting to the given code generator.
+
+	  @param ps The PrintStream object to report compilation errors to.
+	  @param generate The code generator to receive the parse.
+	  @throws IOException in the event that the input can no longer be read.
+	*/
+	public void parse( PrintStream ps, Generate generate ) throws IOException
+	{
+		myGenerate = generate;
+		diagnostics.clear() ;
+		tokensAccepted = 0 ;
+		lastLine = 0 ;
+		statementLine = 0 ;
 		try {
 			nextToken = lex.getNextToken() ;
 			_statementPart_() ;
 			acceptTerminal(Token.eofSymbol) ;
-			myGenerate.reportSuccess() ;
+			if( diagnostics.isEmpty() )
+				myGenerate.reportSuccess() ;
 		}
 		catch( CompilationException ex )
+		{
+			// Nothing has been read since the error was thrown, so the counts are still those at it.
+			addDiagnostic( ex ) ;
+		}
+		finally
+		{
+			myGenerate.flush() ;
+		}
+
+		for( CompilationException ex : diagnostics )
 		{
 			ps.println( "Compilation Exception" );
 			ps.println( ex.toTraceString() );
 		}
 	} // end of method parse
+
+	/** Keeps a syntax error to be reported at the end of the parse, and records its
+	  SyntaxError event now, while the statement being parsed and the count of tokens
+	  accepted are still those the error was found at.
+
+	  @param ex The error.
+	*/
+	void addDiagnostic( CompilationException ex )
+	{
+		diagnostics.add( ex ) ;
+		CompilerEvents.SyntaxError event = new CompilerEvents.SyntaxError() ;
+		if( event.shouldCommit() )
+		{
+			event.file = fileName() ;
+			event.firstLine = statementLine ;
+			event.lastLine = (ex.getFrameCount() > 0) ? ex.getFrameLine( 0 ) : lastLine ;
+			event.tokens = tokensAccepted ;
+			event.message = ex.getMessage() ;
+			event.commit() ;
+		}
+	} // end of method addDiagnostic
 } // end of class AbstractSyntaxAnalyser
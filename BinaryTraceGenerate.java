@@ -0,0 +1,9 @@
+import java.io.OutputStream;
+
+// A Generate that archives the 312 events as a binary trace (see BinaryTraceSink) instead of printing them.
+public class BinaryTraceGenerate extends Generate {
+
+    public BinaryTraceGenerate(OutputStream out) {
+        setSink(new BinaryTraceSink(out));
+    }
+}
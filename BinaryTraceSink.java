@@ -0,0 +1,127 @@
+
+/**
+ *
+ * Writes 312 events in a compact binary form, read back by TraceDecoder.
+ *
+ * The trace starts with the magic bytes "312T" and a version byte, followed by
+ * one record per event.  Each record starts with a varint tag, so that almost
+ * every event fits in a single byte:
+ *
+ *     0                          success
+ *     symbol * 2 + moved         terminal; if moved is 1 the tag is followed by
+ *                                the change of line number since the previous
+ *                                terminal, as a zig-zag varint.  Identifiers,
+ *                                numbers and strings then have their text.
+ *     NONTERMINAL + name * 2     begin nonterminal
+ *     NONTERMINAL + name * 2 + 1 end nonterminal
+ *
+ * Nonterminal names and token texts are indexes into two string tables built
+ * up as the trace is written.  An index equal to the current size of its table
+ * introduces a new entry, followed by its varint UTF-8 length and its bytes.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+public class BinaryTraceSink implements EventSink
+{
+    static final byte[] MAGIC = { '3', '1', '2', 'T' };
+    static final int VERSION = 1;
+
+    static final int TAG_SUCCESS = 0;
+    static final int TAG_NONTERMINAL = 80;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+
+    private final HashMap<String, Integer> names = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> texts = new HashMap<String, Integer>();
+    private int previousLine;
+
+    public BinaryTraceSink( OutputStream out ) {
+        this.out = out;
+        for( byte b : MAGIC )
+            buffer[count++] = b;
+        buffer[count++] = (byte) VERSION;
+    }
+
+    public void terminal( int symbol, String text, int lineNumber ) {
+        int delta = lineNumber - previousLine;
+        previousLine = lineNumber;
+        if( delta == 0 ) {
+            writeVarint( symbol * 2 );
+        } else {
+            writeVarint( symbol * 2 + 1 );
+            writeVarint( (delta << 1) ^ (delta >> 31) );
+        }
+        if( (symbol == Token.identifier) || (symbol == Token.numberConstant) || (symbol == Token.stringConstant) )
+            writeString( texts, text, 0, 1 );
+    }
+
+    public void beginNonterminal( String name ) {
+        writeString( names, name, TAG_NONTERMINAL, 2 );
+    }
+
+    public void endNonterminal( String name ) {
+        writeString( names, name, TAG_NONTERMINAL + 1, 2 );
+    }
+
+    public void success() {
+        writeVarint( TAG_SUCCESS );
+    }
+
+    public void flush() {
+        try {
+            drain();
+            out.flush();
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /** Writes base + index * scale for the string's table entry, adding the entry if it is new. */
+    private void writeString( HashMap<String, Integer> table, String s, int base, int scale ) {
+        Integer index = table.get( s );
+        if( index != null ) {
+            writeVarint( base + index * scale );
+            return;
+        }
+        writeVarint( base + table.size() * scale );
+        table.put( s, table.size() );
+        byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+        writeVarint( bytes.length );
+        for( byte b : bytes ) {
+            ensure( 1 );
+            buffer[count++] = b;
+        }
+    }
+
+    private void writeVarint( int value ) {
+        ensure( 5 );
+        while( (value & ~0x7F) != 0 ) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void ensure( int bytes ) {
+        if( count + bytes > buffer.length ) {
+            try {
+                drain();
+            } catch( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write( buffer, 0, count );
+        count = 0;
+    }
+} // end of class BinaryTraceSink
@@ -0,0 +1,385 @@
+/**
+ *
+ * Compiles a LoweredProgram to a JVM class, so that it runs as fast as the JIT
+ * can make it rather than at the pace of an interpreter.
+ *
+ * The class implements ExecutableProgram.  Its run method calls one or more
+ * part methods, each compiled from a run of top level statements and kept
+ * under the 8000 bytes of code beyond which HotSpot will not compile a method.
+ * Within a part every variable it uses is in a local (a double for a number, a
+ * String for a string), loaded from a field of the same name on the way in and
+ * stored back on the way out, and get and put are calls to ProgramRuntime.
+ * Comparisons use dcmpl or dcmpg so that NaN compares as Java does.  Classes
+ * are loaded each through a ProgramClassLoader of their own, so a program that
+ * is compiled again is a new class, and the old one can be unloaded.
+ *
+ * A top level statement is never split between parts, so one that compiles to
+ * over 64 KB of code, the limit the class file format sets on a method, makes
+ * the program too large to compile; one of over 8000 bytes runs in a part of
+ * its own, which HotSpot leaves to its interpreter.
+ *
+ **/
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class BytecodeGenerator
+{
+    private static final String RUNTIME = "ProgramRuntime";
+    /** HotSpot's HugeMethodLimit: it does not compile methods with more code than this. */
+    private static final int PART_LENGTH = 8000;
+    /** The most code it takes to load or store one variable in a part's prologue or epilogue. */
+    private static final int VARIABLE_TRANSFER_LENGTH = 8;
+
+    /** Defines the classes of compiled programs. */
+    static final class ProgramClassLoader extends ClassLoader {
+        ProgramClassLoader( ClassLoader parent ) {
+            super( parent );
+        }
+
+        Class<?> define( String name, byte[] classFile ) {
+            return defineClass( name, classFile, 0, classFile.length );
+        }
+    }
+
+    private final LoweredProgram program;
+    private final String className;
+    private ClassFileWriter writer;
+    private ClassFileWriter.Code code;
+    /** The local variable slot of each variable. */
+    private int[] slots;
+    /** The variables used by the code being generated. */
+    private BitSet used;
+
+    /** @param className The name of the class to generate, in the default package. */
+    public BytecodeGenerator( LoweredProgram program, String className ) {
+        this.program = program;
+        this.className = className;
+    }
+
+    /** @return A class name made from a program's file name, such as program0 for "Programs Folder/program0". */
+    public static String classNameFor( String fileName ) {
+        String base = new File( fileName ).getName();
+        StringBuilder name = new StringBuilder();
+        for( int i = 0; i < base.length(); i++ ) {
+            char c = base.charAt( i );
+            name.append( Character.isJavaIdentifierPart( c ) ? c : '_' );
+        }
+        if( name.length() == 0 || !Character.isJavaIdentifierStart( name.charAt( 0 ) ) )
+            name.insert( 0, 'P' );
+        return name.toString();
+    }
+
+    /** Generates the class file.
+
+      @throws CompilationException if a top level statement is too large for one method.
+     */
+    public byte[] generate() throws CompilationException {
+        writer = new ClassFileWriter( className, "java/lang/Object", "ExecutableProgram" );
+        writer.setSourceFile( new File( program.fileName ).getName() );
+        int n = program.variables.length;
+        slots = new int[n];
+        int next = 2;
+        for( int v = 0; v < n; v++ ) {
+            slots[v] = next;
+            next += program.isString[v] ? 1 : 2;
+            writer.field( ClassFileWriter.ACC_PRIVATE, program.variables[v], descriptor( v ) );
+        }
+
+        ClassFileWriter.Code constructor = writer.method( ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1 );
+        constructor.local( ClassFileWriter.ALOAD, 0, 1, 1 );
+        constructor.op( ClassFileWriter.INVOKESPECIAL, writer.methodReference( "java/lang/Object", "<init>", "()V" ), -1 );
+        constructor.op( ClassFileWriter.RETURN, 0 );
+        constructor.finish();
+
+        try {
+            // Each top level statement is compiled on its own, then as many as fit are put in each part.
+            ArrayList<ClassFileWriter.Code> fragments = new ArrayList<ClassFileWriter.Code>();
+            ArrayList<BitSet> fragmentUses = new ArrayList<BitSet>();
+            for( LoweredProgram.Statement s : program.body ) {
+                code = writer.fragment( 2 );
+                used = new BitSet( n );
+                statement( s );
+                fragments.add( code );
+                fragmentUses.add( used );
+            }
+
+            ClassFileWriter.Code run = writer.method( ClassFileWriter.ACC_PUBLIC, "run", "(L" + RUNTIME + ";)V", 2 );
+            // Number fields start as 0 anyway; string fields start as "" rather than null.
+            for( int v = 0; v < n; v++ ) {
+                if( program.isString[v] ) {
+                    run.local( ClassFileWriter.ALOAD, 0, 1, 1 );
+                    run.ldcString( "" );
+                    run.op( ClassFileWriter.PUTFIELD, field( v ), -2 );
+                }
+            }
+            int parts = 0;
+            for( int first = 0; first < fragments.size(); ) {
+                BitSet partUses = (BitSet) fragmentUses.get( first ).clone();
+                int length = fragments.get( first ).position();
+                int last = first + 1;
+                while( last < fragments.size() ) {
+                    BitSet uses = (BitSet) partUses.clone();
+                    uses.or( fragmentUses.get( last ) );
+                    int more = length + fragments.get( last ).position();
+                    if( more + 2 * VARIABLE_TRANSFER_LENGTH * uses.cardinality() > PART_LENGTH )
+                        break;
+                    partUses = uses;
+                    length = more;
+                    last++;
+                }
+                String name = "part" + parts++;
+                part( name, fragments.subList( first, last ), partUses );
+                run.local( ClassFileWriter.ALOAD, 0, 1, 1 );
+                run.local( ClassFileWriter.ALOAD, 1, 1, 1 );
+                run.op( ClassFileWriter.INVOKESPECIAL, writer.methodReference( className, name, "(L" + RUNTIME + ";)V" ),
+                        -2 );
+                first = last;
+            }
+            run.local( ClassFileWriter.ALOAD, 1, 1, 1 );
+            run.op( ClassFileWriter.INVOKEVIRTUAL, writer.methodReference( RUNTIME, "flush", "()V" ), -1 );
+            run.op( ClassFileWriter.RETURN, 0 );
+            run.finish();
+        } catch( IllegalStateException e ) {
+            throw new CompilationException( "Program too large to compile: " + e.getMessage() + ". FILE: "
+                    + program.fileName );
+        }
+        return writer.toByteArray();
+    }
+
+    /** Adds a part method: the variables it uses are loaded from their fields, its statements run, and
+      the variables stored back. */
+    private void part( String name, List<ClassFileWriter.Code> fragments, BitSet uses ) {
+        ClassFileWriter.Code part = writer.method( ClassFileWriter.ACC_PRIVATE, name, "(L" + RUNTIME + ";)V", 2 );
+        for( int v = uses.nextSetBit( 0 ); v >= 0; v = uses.nextSetBit( v + 1 ) ) {
+            part.local( ClassFileWriter.ALOAD, 0, 1, 1 );
+            if( program.isString[v] ) {
+                part.op( ClassFileWriter.GETFIELD, field( v ), 0 );
+                part.local( ClassFileWriter.ASTORE, slots[v], -1, 1 );
+            } else {
+                part.op( ClassFileWriter.GETFIELD, field( v ), 1 );
+                part.local( ClassFileWriter.DSTORE, slots[v], -2, 2 );
+            }
+        }
+        for( ClassFileWriter.Code fragment : fragments )
+            part.append( fragment );
+        for( int v = uses.nextSetBit( 0 ); v >= 0; v = uses.nextSetBit( v + 1 ) ) {
+            part.local( ClassFileWriter.ALOAD, 0, 1, 1 );
+            if( program.isString[v] ) {
+                part.local( ClassFileWriter.ALOAD, slots[v], 1, 1 );
+                part.op( ClassFileWriter.PUTFIELD, field( v ), -2 );
+            } else {
+                part.local( ClassFileWriter.DLOAD, slots[v], 2, 2 );
+                part.op( ClassFileWriter.PUTFIELD, field( v ), -3 );
+            }
+        }
+        part.op( ClassFileWriter.RETURN, 0 );
+        part.finish();
+    }
+
+    private String descriptor( int variable ) {
+        return program.isString[variable] ? "Ljava/lang/String;" : "D";
+    }
+
+    private int field( int variable ) {
+        return writer.fieldReference( className, program.variables[variable], descriptor( variable ) );
+    }
+
+    /** Loads or stores a variable in the code being generated. */
+    private void local( int opcode, int variable, int stackEffect ) {
+        used.set( variable );
+        code.local( opcode, slots[variable], stackEffect, program.isString[variable] ? 1 : 2 );
+    }
+
+    /** Calls a method of the ProgramRuntime. */
+    private void runtime( String name, String descriptor, int stackEffect ) {
+        code.local( ClassFileWriter.ALOAD, 1, 1, 1 );
+        code.op( ClassFileWriter.INVOKEVIRTUAL, writer.methodReference( RUNTIME, name, descriptor ), stackEffect );
+    }
+
+    private void block( LoweredProgram.Statement[] statements ) {
+        for( LoweredProgram.Statement s : statements )
+            statement( s );
+    }
+
+    private void statement( LoweredProgram.Statement s ) {
+        if( s instanceof LoweredProgram.Assign ) {
+            assign( (LoweredProgram.Assign) s );
+        } else if( s instanceof LoweredProgram.AssignString ) {
+            LoweredProgram.AssignString a = (LoweredProgram.AssignString) s;
+            code.ldcString( a.value );
+            local( ClassFileWriter.ASTORE, a.variable, -1 );
+        } else if( s instanceof LoweredProgram.While ) {
+            // The test is at the bottom, so each time round the loop takes one jump.
+            LoweredProgram.While w = (LoweredProgram.While) s;
+            ClassFileWriter.Label top = new ClassFileWriter.Label(), test = new ClassFileWriter.Label();
+            code.jump( ClassFileWriter.GOTO, test, 0 );
+            code.place( top );
+            block( w.body );
+            code.place( test );
+            condition( w.condition, true, top );
+        } else if( s instanceof LoweredProgram.If ) {
+            LoweredProgram.If i = (LoweredProgram.If) s;
+            ClassFileWriter.Label elsePart = new ClassFileWriter.Label(), end = new ClassFileWriter.Label();
+            condition( i.condition, false, elsePart );
+            block( i.thenPart );
+            if( i.elsePart.length > 0 )
+                code.jump( ClassFileWriter.GOTO, end, 0 );
+            code.place( elsePart );
+            block( i.elsePart );
+            code.place( end );
+        } else if( s instanceof LoweredProgram.For ) {
+            LoweredProgram.For f = (LoweredProgram.For) s;
+            ClassFileWriter.Label top = new ClassFileWriter.Label(), test = new ClassFileWriter.Label();
+            assign( f.initial );
+            code.jump( ClassFileWriter.GOTO, test, 0 );
+            code.place( top );
+            block( f.body );
+            assign( f.step );
+            code.place( test );
+            condition( f.condition, true, top );
+        } else if( s instanceof LoweredProgram.DoUntil ) {
+            LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+            ClassFileWriter.Label top = new ClassFileWriter.Label();
+            code.place( top );
+            block( d.body );
+            condition( d.condition, false, top );
+        } else if( s instanceof LoweredProgram.Get ) {
+            for( int v : ((LoweredProgram.Get) s).variables ) {
+                if( program.isString[v] ) {
+                    runtime( "readString", "()Ljava/lang/String;", 0 );
+                    local( ClassFileWriter.ASTORE, v, -1 );
+                } else {
+                    runtime( "readNumber", "()D", 1 );
+                    local( ClassFileWriter.DSTORE, v, -2 );
+                }
+            }
+        } else {
+            for( int v : ((LoweredProgram.Put) s).variables ) {
+                code.local( ClassFileWriter.ALOAD, 1, 1, 1 );
+                if( program.isString[v] ) {
+                    local( ClassFileWriter.ALOAD, v, 1 );
+                    code.op( ClassFileWriter.INVOKEVIRTUAL,
+                            writer.methodReference( RUNTIME, "putString", "(Ljava/lang/String;)V" ), -2 );
+                } else {
+                    local( ClassFileWriter.DLOAD, v, 2 );
+                    code.op( ClassFileWriter.INVOKEVIRTUAL, writer.methodReference( RUNTIME, "putNumber", "(D)V" ), -3 );
+                }
+            }
+            runtime( "endLine", "()V", -1 );
+        }
+    }
+
+    private void assign( LoweredProgram.Assign a ) {
+        expression( a.value );
+        local( ClassFileWriter.DSTORE, a.variable, -2 );
+    }
+
+    /** Jumps to target if the condition is as given.  dcmpg is used where NaN has to fail a less-than
+      test and dcmpl where it has to fail a greater-than test. */
+    private void condition( LoweredProgram.Condition c, boolean jumpIf, ClassFileWriter.Label target ) {
+        expression( c.left );
+        expression( c.right );
+        int compare, branch;
+        switch( c.relation ) {
+            case Token.equalSymbol:
+                compare = ClassFileWriter.DCMPL;
+                branch = jumpIf ? ClassFileWriter.IFEQ : ClassFileWriter.IFNE;
+                break;
+            case Token.notEqualSymbol:
+                compare = ClassFileWriter.DCMPL;
+                branch = jumpIf ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ;
+                break;
+            case Token.lessThanSymbol:
+                compare = ClassFileWriter.DCMPG;
+                branch = jumpIf ? ClassFileWriter.IFLT : ClassFileWriter.IFGE;
+                break;
+            case Token.lessEqualSymbol:
+                compare = ClassFileWriter.DCMPG;
+                branch = jumpIf ? ClassFileWriter.IFLE : ClassFileWriter.IFGT;
+                break;
+            case Token.greaterThanSymbol:
+                compare = ClassFileWriter.DCMPL;
+                branch = jumpIf ? ClassFileWriter.IFGT : ClassFileWriter.IFLE;
+                break;
+            default:
+                compare = ClassFileWriter.DCMPL;
+                branch = jumpIf ? ClassFileWriter.IFGE : ClassFileWriter.IFLT;
+                break;
+        }
+        code.op( compare, -3 );
+        code.jump( branch, target, -1 );
+    }
+
+    /** Pushes the value of an expression.  Chains of operators lean to the left, so the left operands
+      are followed in a loop, and only right operands are compiled by recursion. */
+    private void expression( LoweredProgram.Expression e ) {
+        int length = 0;
+        LoweredProgram.Expression leftmost = e;
+        while( leftmost instanceof LoweredProgram.Binary ) {
+            leftmost = ((LoweredProgram.Binary) leftmost).left;
+            length++;
+        }
+        if( leftmost instanceof LoweredProgram.Constant )
+            code.ldcDouble( ((LoweredProgram.Constant) leftmost).value );
+        else
+            local( ClassFileWriter.DLOAD, ((LoweredProgram.Variable) leftmost).variable, 2 );
+        if( length == 0 )
+            return;
+
+        LoweredProgram.Binary[] spine = new LoweredProgram.Binary[length];
+        LoweredProgram.Expression node = e;
+        for( int i = length - 1; i >= 0; i-- ) {
+            spine[i] = (LoweredProgram.Binary) node;
+            node = spine[i].left;
+        }
+        for( LoweredProgram.Binary b : spine ) {
+            expression( b.right );
+            operation( b.operator );
+        }
+    }
+
+    private void operation( int operator ) {
+        switch( operator ) {
+            case Token.plusSymbol:
+                code.op( ClassFileWriter.DADD, -2 );
+                break;
+            case Token.minusSymbol:
+                code.op( ClassFileWriter.DSUB, -2 );
+                break;
+            case Token.timesSymbol:
+                code.op( ClassFileWriter.DMUL, -2 );
+                break;
+            case Token.divideSymbol:
+                code.op( ClassFileWriter.DDIV, -2 );
+                break;
+            default:
+                // drem is a slow library call; see ProgramRuntime.remainder
+                code.op( ClassFileWriter.INVOKESTATIC, writer.methodReference( RUNTIME, "remainder", "(DD)D" ), -2 );
+                break;
+        }
+    }
+
+    /** Loads a class generated by generate() and makes an instance of it. */
+    public static ExecutableProgram load( String className, byte[] classFile ) {
+        ProgramClassLoader loader = new ProgramClassLoader( ExecutableProgram.class.getClassLoader() );
+        try {
+            return (ExecutableProgram) loader.define( className, classFile ).getDeclaredConstructor().newInstance();
+        } catch( ReflectiveOperationException e ) {
+            throw new IllegalStateException( "unable to load compiled program " + className, e );
+        }
+    }
+
+    /** Writes a class generated by generate() to className.class in a directory, creating it if need be. */
+    public static File save( String className, byte[] classFile, File directory ) throws IOException {
+        if( !directory.isDirectory() && !directory.mkdirs() )
+            throw new IOException( "unable to create directory " + directory );
+        File file = new File( directory, className + ".class" );
+        try( OutputStream out = new FileOutputStream( file ) ) {
+            out.write( classFile );
+        }
+        return file;
+    }
+} // end of class BytecodeGenerator
@@ -0,0 +1,374 @@
+/**
+ *
+ * Writes a JVM class file: a constant pool, fields, methods with their
+ * bytecode and little else.  Just enough of the class file format for
+ * BytecodeGenerator.
+ *
+ * Classes are written as version 49 (Java 5) class files, which the JVM
+ * verifies by type inference, so no StackMapTable frames are needed however
+ * the code branches.  Each method's maximum stack depth is worked out from the
+ * stack effect given with every instruction.
+ *
+ **/
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class ClassFileWriter
+{
+    public static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    // The opcodes BytecodeGenerator uses.
+    public static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14,
+        ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, ILOAD_0 = 0x1a, ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a,
+        ISTORE_0 = 0x3b, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DCMPL = 0x97, DCMPG = 0x98,
+        IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e, GOTO = 0xa7, RETURN = 0xb1,
+        GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+        WIDE = 0xc4;
+
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_DOUBLE = 6, CONSTANT_CLASS = 7, CONSTANT_STRING = 8,
+        CONSTANT_FIELDREF = 9, CONSTANT_METHODREF = 10, CONSTANT_NAME_AND_TYPE = 12;
+
+    /** The largest a method's code may be. */
+    public static final int MAX_CODE_LENGTH = 65535;
+
+    /** A position in a method's code, which jumps can be written to before it is placed. */
+    public static final class Label {
+        int position = -1;
+        /** The offsets of jump instructions, and of their 16 bit operands, waiting for this label. */
+        final ArrayList<int[]> fixups = new ArrayList<int[]>();
+    }
+
+    /** The code of one method, written instruction by instruction; or a fragment of code, which is
+      appended to a method later. */
+    public final class Code {
+        private final int access, name, descriptor;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int stack, maxStack, maxLocals;
+
+        Code( int access, String name, String descriptor, int parameterSlots ) {
+            this.access = access;
+            this.name = (name == null) ? 0 : utf8( name );
+            this.descriptor = (descriptor == null) ? 0 : utf8( descriptor );
+            this.maxLocals = parameterSlots;
+        }
+
+        /** @return The offset of the next instruction. */
+        public int position() {
+            return code.size();
+        }
+
+        private void adjust( int stackEffect ) {
+            stack += stackEffect;
+            if( stack > maxStack )
+                maxStack = stack;
+        }
+
+        /** Writes an instruction with no operands. */
+        public void op( int opcode, int stackEffect ) {
+            code.write( opcode );
+            adjust( stackEffect );
+        }
+
+        /** Writes an instruction with a 16 bit constant pool index, such as an invoke. */
+        public void op( int opcode, int index, int stackEffect ) {
+            code.write( opcode );
+            code.write( index >> 8 );
+            code.write( index );
+            adjust( stackEffect );
+        }
+
+        /** Loads or stores a local variable, with the one byte form of the instruction for the first
+          four slots, and a wide instruction if the slot needs one. */
+        public void local( int opcode, int slot, int stackEffect, int slots ) {
+            if( slot <= 3 && opcode >= ILOAD && opcode <= ALOAD ) {
+                op( ILOAD_0 + 4 * (opcode - ILOAD) + slot, stackEffect );
+            } else if( slot <= 3 && opcode >= ISTORE && opcode <= ASTORE ) {
+                op( ISTORE_0 + 4 * (opcode - ISTORE) + slot, stackEffect );
+            } else if( slot > 255 ) {
+                code.write( WIDE );
+                op( opcode, slot, stackEffect );
+            } else {
+                code.write( opcode );
+                code.write( slot );
+                adjust( stackEffect );
+            }
+            maxLocals = Math.max( maxLocals, slot + slots );
+        }
+
+        /** Pushes a constant string. */
+        public void ldcString( String value ) {
+            int index = string( value );
+            if( index > 255 ) {
+                op( LDC_W, index, 1 );
+            } else {
+                code.write( LDC );
+                code.write( index );
+                adjust( 1 );
+            }
+        }
+
+        /** Pushes a constant double. */
+        public void ldcDouble( double value ) {
+            if( Double.doubleToRawLongBits( value ) == 0 )
+                op( DCONST_0, 2 );
+            else if( value == 1.0 )
+                op( DCONST_1, 2 );
+            else
+                op( LDC2_W, doubleConstant( value ), 2 );
+        }
+
+        /** Writes a jump, conditional or not, to a label. */
+        public void jump( int opcode, Label target, int stackEffect ) {
+            int at = code.size();
+            code.write( opcode );
+            code.write( 0 );
+            code.write( 0 );
+            adjust( stackEffect );
+            if( target.position >= 0 )
+                patch( at, target.position );
+            else
+                target.fixups.add( new int[] { at } );
+        }
+
+        /** Places a label at the next instruction. */
+        public void place( Label label ) {
+            label.position = code.size();
+            for( int[] fixup : label.fixups )
+                patch( fixup[0], label.position );
+            label.fixups.clear();
+        }
+
+        private void patch( int at, int target ) {
+            int offset = target - at;
+            if( offset < Short.MIN_VALUE || offset > Short.MAX_VALUE )
+                throw new IllegalStateException( "jump of " + offset + " bytes is too far" );
+            pending.add( new int[] { at + 1, offset } );
+        }
+
+        /** Jump offsets to write into the code once it is finished, as (operand offset, value). */
+        private final ArrayList<int[]> pending = new ArrayList<int[]>();
+
+        /** @return The code, with its jumps filled in. */
+        private byte[] bytes() {
+            byte[] bytes = code.toByteArray();
+            for( int[] p : pending ) {
+                bytes[p[0]] = (byte) (p[1] >> 8);
+                bytes[p[0] + 1] = (byte) p[1];
+            }
+            return bytes;
+        }
+
+        /** Writes the code of a fragment here.  Jumps are relative, so they need no change, but every
+          label of the fragment must have been placed. */
+        public void append( Code fragment ) {
+            byte[] bytes = fragment.bytes();
+            code.write( bytes, 0, bytes.length );
+            maxStack = Math.max( maxStack, stack + fragment.maxStack );
+            stack += fragment.stack;
+            maxLocals = Math.max( maxLocals, fragment.maxLocals );
+        }
+
+        /** Ends the method, adding it to the class.
+
+          @throws IllegalStateException if the code is too long for one method.
+         */
+        public void finish() {
+            if( code.size() > MAX_CODE_LENGTH )
+                throw new IllegalStateException( "method code of " + code.size() + " bytes is over the limit of "
+                        + MAX_CODE_LENGTH );
+            methods.add( this );
+        }
+
+        private void write( DataOutputStream out ) throws IOException {
+            byte[] bytes = bytes();
+            out.writeShort( access );
+            out.writeShort( name );
+            out.writeShort( descriptor );
+            out.writeShort( 1 );
+            // the Code attribute
+            out.writeShort( codeAttribute );
+            out.writeInt( 12 + bytes.length );
+            out.writeShort( maxStack );
+            out.writeShort( maxLocals );
+            out.writeInt( bytes.length );
+            out.write( bytes );
+            out.writeShort( 0 );  // no exception handlers
+            out.writeShort( 0 );  // no attributes
+        }
+    }
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream( pool );
+    private final HashMap<String, Integer> constants = new HashMap<String, Integer>();
+    /** The index the next constant will have; a double takes two. */
+    private int nextConstant = 1;
+
+    private final int thisClass, superClass, codeAttribute;
+    private final int[] interfaces;
+    /** Each field as (access, name, descriptor). */
+    private final ArrayList<int[]> fields = new ArrayList<int[]>();
+    private final ArrayList<Code> methods = new ArrayList<Code>();
+    private int sourceFileAttribute, sourceFile;
+
+    /** Starts a public final class.
+
+      @param className The internal name of the class, such as java/lang/Object.
+      @param superName The internal name of its superclass.
+      @param interfaceNames The internal names of the interfaces it implements.
+     */
+    public ClassFileWriter( String className, String superName, String... interfaceNames ) {
+        thisClass = classReference( className );
+        superClass = classReference( superName );
+        interfaces = new int[interfaceNames.length];
+        for( int i = 0; i < interfaces.length; i++ )
+            interfaces[i] = classReference( interfaceNames[i] );
+        codeAttribute = utf8( "Code" );
+    }
+
+    /** Records the source file the class came from, for stack traces. */
+    public void setSourceFile( String name ) {
+        sourceFileAttribute = utf8( "SourceFile" );
+        sourceFile = utf8( name );
+    }
+
+    /** Adds a constant, or finds it if already added.  @return Its index. */
+    private int constant( String key, int slots, ConstantWriter writer ) {
+        Integer index = constants.get( key );
+        if( index != null )
+            return index;
+        try {
+            writer.write( poolOut );
+        } catch( IOException e ) {
+            throw new IllegalArgumentException( e );  // only a string too long for the class file format
+        }
+        index = nextConstant;
+        nextConstant += slots;
+        if( nextConstant > 65535 )
+            throw new IllegalStateException( "too many constants for one class" );
+        constants.put( key, index );
+        return index;
+    }
+
+    private interface ConstantWriter {
+        void write( DataOutputStream out ) throws IOException;
+    }
+
+    public int utf8( String value ) {
+        return constant( "U" + value, 1, out -> {
+            out.writeByte( CONSTANT_UTF8 );
+            out.writeUTF( value );
+        } );
+    }
+
+    public int classReference( String internalName ) {
+        int name = utf8( internalName );
+        return constant( "C" + internalName, 1, out -> {
+            out.writeByte( CONSTANT_CLASS );
+            out.writeShort( name );
+        } );
+    }
+
+    public int string( String value ) {
+        int utf8 = utf8( value );
+        return constant( "S" + value, 1, out -> {
+            out.writeByte( CONSTANT_STRING );
+            out.writeShort( utf8 );
+        } );
+    }
+
+    public int doubleConstant( double value ) {
+        long bits = Double.doubleToRawLongBits( value );
+        return constant( "D" + bits, 2, out -> {
+            out.writeByte( CONSTANT_DOUBLE );
+            out.writeLong( bits );
+        } );
+    }
+
+    public int methodReference( String owner, String name, String descriptor ) {
+        return memberReference( "M", CONSTANT_METHODREF, owner, name, descriptor );
+    }
+
+    public int fieldReference( String owner, String name, String descriptor ) {
+        return memberReference( "F", CONSTANT_FIELDREF, owner, name, descriptor );
+    }
+
+    private int memberReference( String kind, int tag, String owner, String name, String descriptor ) {
+        int ownerClass = classReference( owner );
+        int nameIndex = utf8( name ), descriptorIndex = utf8( descriptor );
+        int nameAndType = constant( "N" + name + " " + descriptor, 1, out -> {
+            out.writeByte( CONSTANT_NAME_AND_TYPE );
+            out.writeShort( nameIndex );
+            out.writeShort( descriptorIndex );
+        } );
+        return constant( kind + owner + "." + name + descriptor, 1, out -> {
+            out.writeByte( tag );
+            out.writeShort( ownerClass );
+            out.writeShort( nameAndType );
+        } );
+    }
+
+    /** Adds a field to the class. */
+    public void field( int access, String name, String descriptor ) {
+        fields.add( new int[] { access, utf8( name ), utf8( descriptor ) } );
+    }
+
+    /** Starts a method; call finish() on the result to add it to the class.
+
+      @param parameterSlots The local variable slots taken by this and the parameters.
+     */
+    public Code method( int access, String name, String descriptor, int parameterSlots ) {
+        return new Code( access, name, descriptor, parameterSlots );
+    }
+
+    /** Starts a fragment of code, to be appended to a method with Code.append.
+
+      @param parameterSlots The local variable slots taken by this and the parameters of the method.
+     */
+    public Code fragment( int parameterSlots ) {
+        return new Code( 0, null, null, parameterSlots );
+    }
+
+    /** @return The whole class file. */
+    public byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream( bytes );
+            out.writeInt( 0xCAFEBABE );
+            out.writeShort( 0 );   // minor version
+            out.writeShort( 49 );  // major version: Java 5, before stack map frames
+            out.writeShort( nextConstant );
+            poolOut.flush();
+            pool.writeTo( out );
+            out.writeShort( ACC_PUBLIC | ACC_FINAL | ACC_SUPER );
+            out.writeShort( thisClass );
+            out.writeShort( superClass );
+            out.writeShort( interfaces.length );
+            for( int i : interfaces )
+                out.writeShort( i );
+            out.writeShort( fields.size() );
+            for( int[] f : fields ) {
+                out.writeShort( f[0] );
+                out.writeShort( f[1] );
+                out.writeShort( f[2] );
+                out.writeShort( 0 );  // no attributes
+            }
+            out.writeShort( methods.size() );
+            for( Code method : methods )
+                method.write( out );
+            if( sourceFile == 0 ) {
+                out.writeShort( 0 );
+            } else {
+                out.writeShort( 1 );
+                out.writeShort( sourceFileAttribute );
+                out.writeInt( 2 );
+                out.writeShort( sourceFile );
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch( IOException e ) {
+            throw new AssertionError( e );  // ByteArrayOutputStream does not throw
+        }
+    }
+} // end of class ClassFileWriter
@@ -0,0 +1,51 @@
+
+/**
+ *
+ * Keeps every 312 event as a line of text, formatted exactly as
+ * WriterEventSink would write it, for comparing runs in memory.
+ *
+ **/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CollectingEventSink implements EventSink
+{
+    private final List<String> lines = new ArrayList<String>();
+    private final StringBuilder line = new StringBuilder();
+
+    public void terminal( int symbol, String text, int lineNumber ) {
+        line.setLength( 0 );
+        try {
+            WriterEventSink.appendTerminal( line, symbol, text, lineNumber );
+        } catch( IOException e ) {
+            throw new AssertionError( e );  // StringBuilder does not throw
+        }
+        lines.add( line.toString() );
+    }
+
+    public void beginNonterminal( String name ) {
+        lines.add( "312BEGIN " + name );
+    }
+
+    public void endNonterminal( String name ) {
+        lines.add( "312END " + name );
+    }
+
+    public void success() {
+        lines.add( "312SUCCESS" );
+    }
+
+    public void flush() { }
+
+    /** @return Every event received so far, one line each. */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /** Forgets every event received so far. */
+    public void clear() {
+        lines.clear();
+    }
+} // end of class CollectingEventSink
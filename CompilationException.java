@@ -1,39 +1,92 @@
-
-/**
- *
- * compilation exception analyser for 312 exercise.
- * 
- * This class has been provided to students
- *
- * @Author: Roger Garside, John Mariani, John Vidler, Paul Rayson
- *
- *
- **/
-
-public class CompilationException extends Exception
-{
-	private static final int MAX_TRACE_DEPTH = 20;
-
-	public CompilationException( String message ) {
-		super( message );
-	}
-
-	public CompilationException( String message, CompilationException cause ) {
-		super( message, cause );
-	}
-
-	public String toTraceString() {
-		StringBuffer buffer = new StringBuffer();
-		Throwable err = this;
-		int maxDepth = MAX_TRACE_DEPTH;
-		while( err != null && maxDepth-- > 0 ) {
-			buffer.append( "\tCaused by " ).append( err.getMessage() ).append( "\r\n" );
-			err = err.getCause();
-		}
-
-		if( maxDepth < 1 )
-			buffer.append( "\t ... etc.\r\n" );
-
-		return buffer.toString();
-	}
-} // end of class CompilationException
\ No newline at end of file
+/**
+ *
+ * compilation exception analyser for 312 exercise.
+ * 
+ * This class has been provided to students
+ *
+ * @Author: Roger Garside, John Mariani, John Vidler, Paul Rayson
+ *
+ *
+ **/
+
+import java.util.Arrays;
+
+public class CompilationException extends Exception
+{
+	private static final int MAX_TRACE_DEPTH = 20;
+
+	/* The (nonterminal, line) frames the error passed through on its way out, innermost first. */
+	private String[] frameNames = new String[8];
+	private int[] frameLines = new int[8];
+	private int frameCount = 0;
+
+	/* No stack trace is filled in: the frames above say where the error happened, and the
+	   exception is thrown for every syntax error, so it needs to be cheap. */
+	public CompilationException( String message ) {
+		super( message, null, false, false );
+	}
+
+	public CompilationException( String message, CompilationException cause ) {
+		super( message, cause, false, false );
+	}
+
+	/** Records that the error passed out through a nonterminal, without building any text.
+
+	  @param nonterminal The name of the nonterminal being compiled.
+	  @param lineNumber The line being compiled at the time.
+	  @return This exception, to be rethrown.
+	 */
+	public CompilationException addFrame( String nonterminal, int lineNumber ) {
+		if( frameCount == frameNames.length ) {
+			frameNames = Arrays.copyOf( frameNames, frameCount * 2 );
+			frameLines = Arrays.copyOf( frameLines, frameCount * 2 );
+		}
+		frameNames[frameCount] = nonterminal;
+		frameLines[frameCount] = lineNumber;
+		frameCount++;
+		return this;
+	}
+
+	/** @return The number of frames recorded. */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/** @return The name of the i'th frame, counting outwards from the error. */
+	public String getFrameName( int i ) {
+		return frameNames[i];
+	}
+
+	/** @return The line of the i'th frame, counting outwards from the error. */
+	public int getFrameLine( int i ) {
+		return frameLines[i];
+	}
+
+	/** Renders the frames, outermost first, followed by the message itself. */
+	private void appendFrames( StringBuilder buffer ) {
+		for( int i = frameCount - 1; i >= 0; i-- )
+			buffer.append( "Caused by error whilst compiling " ).append( frameNames[i] )
+					.append( " on line " ).append( frameLines[i] ).append( '\n' );
+		buffer.append( getMessage() );
+	}
+
+	public String toTraceString() {
+		StringBuilder buffer = new StringBuilder();
+		Throwable err = this;
+		int maxDepth = MAX_TRACE_DEPTH;
+		while( err != null && maxDepth-- > 0 ) {
+			buffer.append( "\tCaused by " );
+			if( err instanceof CompilationException )
+				((CompilationException) err).appendFrames( buffer );
+			else
+				buffer.append( err.getMessage() );
+			buffer.append( "\r\n" );
+			err = err.getCause();
+		}
+
+		if( maxDepth < 1 )
+			buffer.append( "\t ... etc.\r\n" );
+
+		return buffer.toString();
+	}
+} // end of class CompilationException
@@ -11,11 +11,213 @@
  **/
 
 import java.io.* ;
+import java.nio.ByteBuffer ;
+import java.nio.charset.Charset ;
+import java.nio.file.* ;
+import java.util.ArrayDeque ;
+import java.util.ArrayList ;
+import java.util.concurrent.ForkJoinPool ;
+import java.util.concurrent.ForkJoinTask ;
+import java.util.concurrent.TimeUnit ;
 
 public class Compile {
 
 	public static String fileName;
 
+	/** If set, each file's events are archived here as a binary trace instead of printed. */
+	private static String traceDirectory;
+
+	/** Whether to report every syntax error in a file rather than only the first. */
+	private static boolean recoverErrors;
+
+	/** If set, the results of earlier runs, replayed for programs that have not changed. */
+	private static CompileCache cache;
+
+	/** Whether to parse with TableDrivenParser instead of SyntaxAnalyser. */
+	private static boolean tableEngine;
+
+	/** Whether chains of operators are sent as one flat Expression or Term rather than nested ones. */
+	private static boolean flatExpressions;
+
+	/** Whether each file is lexed on a thread of its own, feeding the parser through a TokenPipeline. */
+	private static boolean pipelined;
+
+	/** Whether to lex with the table driven DfaScanner instead of LexicalAnalyser. */
+	private static boolean dfaScanner;
+
+	/** If set, where each file's time goes is measured, and reported to metricsFile at the end. */
+	private static CompileMetrics metrics;
+	private static String metricsFile;
+
+	/** The number of files compiled at once; 1 compiles them in turn on this thread. */
+	private int jobs = 1;
+
+	/** Whether to stay running after the first pass, recompiling each program as it changes. */
+	private boolean watch;
+
+	/** In watch mode, the res.txt output of each program by number, or null once it has changed. */
+	private final ArrayList<byte[]> diagnosticsByFile = new ArrayList<byte[]>();
+
+	/** The output of compiling one file, held until its turn to be written. */
+	private static class FileResult {
+		ByteArrayOutputStream events = new ByteArrayOutputStream();
+		ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+	}
+
+	/**
+	 *
+	 * compileFile
+	 *
+	 **/
+
+	private static void compileFile( String name, PrintStream events, PrintStream diagnostics ) throws IOException {
+		events.println();
+		events.println( "312FILE " + name );
+
+		// Measuring, the tokens and the events pass through the metrics' timing decorators.
+		CompileMetrics.FileMetrics measured = (metrics != null) ? metrics.startFile( name ) : null;
+		CompilerEvents.CompileFile event = new CompilerEvents.CompileFile();
+		event.begin();
+		TokenPipeline pipeline = null;
+		AbstractSyntaxAnalyser syn = null;
+		try {
+			if( cache != null ) {
+				compileCached( name, events, diagnostics, measured );
+				return;
+			}
+
+			// With no other choices made, the parser opens the file itself, as it always has.
+			TokenSource tokens = null;
+			if( pipelined )
+				tokens = pipeline = new TokenPipeline( lexer( name, true ), TokenPipeline.BATCH_SIZE, TokenPipeline.BATCHES );
+			else if( dfaScanner || measured != null )
+				tokens = lexer( name, false );
+			if( measured != null )
+				tokens = measured.tokens( tokens );
+			if( tokens != null )
+				syn = tableEngine ? new TableDrivenParser( tokens, name ) : new SyntaxAnalyser( tokens, name );
+			else
+				syn = tableEngine ? new TableDrivenParser(name) : new SyntaxAnalyser(name) ;
+			syn.setErrorRecovery( recoverErrors, 50 );
+			syn.setFlatExpressions( flatExpressions );
+			if( traceDirectory == null ) {
+				syn.parse( diagnostics, generator( new WriterEventSink( events ), measured ) ) ;
+			} else {
+				File trace = new File( traceDirectory, new File(name).getName() + ".312t" );
+				try( OutputStream out = new FileOutputStream( trace ) ) {
+					syn.parse( diagnostics, generator( new BinaryTraceSink( out ), measured ) ) ;
+				}
+			}
+		} finally {
+			// A parse that stops at an error leaves the lexer waiting for room in the ring.
+			if( pipeline != null )
+				pipeline.close();
+			if( measured != null )
+				metrics.finishFile( measured );
+			// A file replayed from the cache is not parsed, so its event has only the name and time.
+			if( event.shouldCommit() ) {
+				event.file = name;
+				if( syn != null ) {
+					event.lastLine = syn.lastLine;
+					event.tokens = syn.tokensAccepted;
+					event.errors = syn.diagnostics.size();
+				}
+				event.commit();
+			}
+		}
+	} // end of method compileFile
+
+	/** @return The chosen scanner over a file: the DfaScanner, or a LexicalAnalyser reading it a line at a time or as one buffer. */
+	private static LexicalAnalyser lexer( String name, boolean wholeBuffer ) throws IOException {
+		return dfaScanner ? new DfaScanner( name ) : new LexicalAnalyser( name, wholeBuffer );
+	} // end of method lexer
+
+	/** @return The chosen scanner over the whole of a text. */
+	private static LexicalAnalyser lexer( char[] text ) {
+		return dfaScanner ? new DfaScanner( text, 0, text.length, 0 ) : new LexicalAnalyser( text, 0, text.length, 0 );
+	} // end of method lexer
+
+	/** @return A Generate sending its events to the sink, through the metrics' decorator when measuring. */
+	private static Generate generator( EventSink sink, CompileMetrics.FileMetrics measured ) {
+		Generate generate = new Generate();
+		generate.setSink( (measured != null) ? measured.events( sink ) : sink );
+		return generate;
+	} // end of method generator
+
+	/**
+	 *
+	 * compileCached, replaying the cached result when the program is unchanged
+	 *
+	 **/
+
+	private static void compileCached( String name, PrintStream events, PrintStream diagnostics,
+			CompileMetrics.FileMetrics measured ) throws IOException {
+		byte[] source = Files.readAllBytes( Paths.get( name ) );
+		String key = cache.key( name, source );
+		CompileCache.Entry entry = cache.get( key, source.length );
+		if( entry == null ) {
+			// Lex the very bytes that were hashed, in case the file changes underneath us.
+			char[] text = Charset.defaultCharset().decode( ByteBuffer.wrap( source ) ).toString().toCharArray();
+			AbstractSyntaxAnalyser syn;
+			if( measured != null ) {
+				TokenSource tokens = measured.tokens( lexer( text ) );
+				syn = tableEngine ? new TableDrivenParser( tokens, name ) : new SyntaxAnalyser( tokens, name );
+			} else {
+				TokenBuffer tokens = new TokenBuffer();
+				tokens.fill( lexer( text ) );
+				syn = tableEngine ? new TableDrivenParser( tokens, name ) : new SyntaxAnalyser( tokens, name );
+			}
+			syn.setErrorRecovery( recoverErrors, 50 );
+			syn.setFlatExpressions( flatExpressions );
+			ByteArrayOutputStream trace = new ByteArrayOutputStream();
+			ByteArrayOutputStream errors = new ByteArrayOutputStream();
+			PrintStream ps = new PrintStream( errors );
+			syn.parse( ps, new BinaryTraceGenerate( trace ) );
+			ps.flush();
+			entry = cache.put( key, trace.toByteArray(), errors.toByteArray() );
+		}
+
+		// Hit or miss, the events are counted and timed as they are replayed, so none are counted twice.
+		if( traceDirectory == null ) {
+			EventSink sink = new WriterEventSink( events );
+			new TraceDecoder( new ByteArrayInputStream( entry.trace ) ).replay( (measured != null) ? measured.events( sink ) : sink );
+		} else {
+			File trace = new File( traceDirectory, new File(name).getName() + ".312t" );
+			Files.write( trace.toPath(), entry.trace );
+		}
+		diagnostics.write( entry.diagnostics );
+	} // end of method compileCached
+
+	/**
+	 *
+	 * compileFile, into a buffer
+	 *
+	 **/
+
+	private static FileResult compileFile( String name ) throws IOException {
+		FileResult result = new FileResult();
+		PrintStream events = new PrintStream( result.events );
+		PrintStream diagnostics = new PrintStream( result.diagnostics );
+		compileFile( name, events, diagnostics );
+		events.flush();
+		diagnostics.flush();
+		return result;
+	} // end of method compileFile
+
+	/**
+	 *
+	 * writeResult
+	 *
+	 **/
+
+	private void writeResult( String name, FileResult result, PrintStream out ) throws IOException {
+		fileName = name;
+		result.events.writeTo( System.out );
+		result.diagnostics.writeTo( out );
+		if( watch )
+			diagnosticsByFile.add( result.diagnostics.toByteArray() );
+	} // end of method writeResult
+
 	/**
 	 *
 	 * main
@@ -38,28 +240,212 @@ public class Compile {
 			System.exit(0);
 		}
 
+		// Files are compiled in parallel but written strictly in order, with at most
+		// a few per worker held in memory waiting for their predecessors.
+		ForkJoinPool pool = (jobs > 1) ? new ForkJoinPool( jobs ) : null;
+		ArrayDeque<String> pendingNames = new ArrayDeque<String>();
+		ArrayDeque<ForkJoinTask<FileResult>> pending = new ArrayDeque<ForkJoinTask<FileResult>>();
+
 		while( goon ) {
 			fileNumber++ ;
-			fileName = prefix + fileNumber;
-			goon = ((new File(fileName)).exists());
+			String name = prefix + fileNumber;
+			goon = ((new File(name)).exists());
 			if( goon ) {
-				System.out.println();
-				System.out.println( "312FILE " + fileName );
-
-				SyntaxAnalyser syn = new SyntaxAnalyser(fileName) ;
-				syn.parse( out ) ;
-			} else System.out.println(fileName+" does not exist");
+				if( pool == null && !watch ) {
+					fileName = name;
+					compileFile( fileName, System.out, out );
+				} else if( pool == null ) {
+					writeResult( name, compileFile( name ), out );
+				} else {
+					pendingNames.add( name );
+					pending.add( pool.submit( () -> compileFile( name ) ) );
+					if( pending.size() > jobs * 4 )
+						writeResult( pendingNames.remove(), pending.remove().join(), out );
+				}
+			} else {
+				while( !pending.isEmpty() )
+					writeResult( pendingNames.remove(), pending.remove().join(), out );
+				fileName = name;
+				System.out.println(fileName+" does not exist");
+			}
 		}
+		if( pool != null )
+			pool.shutdown();
 
 		System.out.println() ;
 		System.out.println("312FINISH") ;
 		out.flush();out.close();
+		if( cache != null ) {
+			cache.evict();
+			System.err.println( cache.getStats() );
+		}
+		if( metrics != null )
+			writeMetrics();
+		if( watch )
+			watch( prefix, outputFile );
 		System.exit(exitFlag) ;
 	} // end of main method
 
+	/**
+	 *
+	 * writeMetrics, as JSON to the metrics file and as percentile distributions beside it
+	 *
+	 **/
+
+	private static void writeMetrics() throws IOException {
+		String base = metricsFile.endsWith( ".json" ) ? metricsFile.substring( 0, metricsFile.length() - 5 ) : metricsFile;
+		try( PrintStream json = new PrintStream( new BufferedOutputStream( new FileOutputStream( metricsFile ) ) ) ) {
+			metrics.writeJson( json );
+		}
+		try( PrintStream hgrm = new PrintStream( new BufferedOutputStream( new FileOutputStream( base + ".hgrm" ) ) ) ) {
+			metrics.writePercentiles( hgrm );
+		}
+	} // end of method writeMetrics
+
+	/**
+	 *
+	 * watch, recompiling each program that changes and rewriting the output file
+	 *
+	 **/
+
+	private void watch( String prefix, String outputFile ) throws IOException {
+		Path folder = Paths.get( prefix ).getParent();
+		String programPrefix = Paths.get( prefix ).getFileName().toString();
+		try( WatchService watcher = folder.getFileSystem().newWatchService() ) {
+			folder.register( watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE );
+			System.out.println( "312WATCH " + folder );
+			System.out.flush();
+
+			while( true ) {
+				WatchKey key = watcher.take();
+				// Editors often save a file in several steps, so take whatever arrives in quick succession together.
+				do {
+					for( WatchEvent<?> event : key.pollEvents() ) {
+						if( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+							diagnosticsByFile.replaceAll( d -> null );
+							continue;
+						}
+						String changed = event.context().toString();
+						if( changed.startsWith( programPrefix ) ) {
+							try {
+								int number = Integer.parseInt( changed.substring( programPrefix.length() ) );
+								if( number < diagnosticsByFile.size() && changed.equals( programPrefix + number ) )
+									diagnosticsByFile.set( number, null );
+							} catch( NumberFormatException e ) {
+								// not one of the programs
+							}
+						}
+					}
+					key.reset();
+				} while( (key = watcher.poll( 20, TimeUnit.MILLISECONDS )) != null );
+
+				recompileChanged( prefix, outputFile );
+			}
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	} // end of method watch
+
+	/**
+	 *
+	 * recompileChanged, in watch mode
+	 *
+	 **/
+
+	private void recompileChanged( String prefix, String outputFile ) throws IOException {
+		long start = System.nanoTime();
+		int compiled = 0;
+		int fileNumber = 0;
+		// As in the first pass, the programs run from program0 up to the first one missing.
+		for( ; new File( prefix + fileNumber ).exists(); fileNumber++ ) {
+			if( fileNumber < diagnosticsByFile.size() && diagnosticsByFile.get( fileNumber ) != null )
+				continue;
+			String name = prefix + fileNumber;
+			if( fileNumber == diagnosticsByFile.size() )
+				diagnosticsByFile.add( null );
+			FileResult result;
+			try {
+				result = compileFile( name );
+			} catch( IOException e ) {
+				// Perhaps caught part way through being saved: leave it to be tried again next time.
+				System.err.println( name + ": " + e );
+				continue;
+			}
+			fileName = name;
+			result.events.writeTo( System.out );
+			diagnosticsByFile.set( fileNumber, result.diagnostics.toByteArray() );
+			compiled++;
+		}
+		System.out.flush();
+
+		try( OutputStream out = new BufferedOutputStream( new FileOutputStream( outputFile ) ) ) {
+			for( int i = 0; i < fileNumber; i++ ) {
+				if( diagnosticsByFile.get( i ) != null )
+					out.write( diagnosticsByFile.get( i ) );
+			}
+		}
+		System.err.printf( "recompiled %d of %d programs in %.1f ms%n", compiled, fileNumber,
+				(System.nanoTime() - start) / 1e6 );
+		if( cache != null ) {
+			cache.evict();
+			System.err.println( cache.getStats() );
+		}
+	} // end of method recompileChanged
+
 	public static void main(String args[]) throws IOException {
 		Compile c = new Compile();
+		String cacheDirectory = null;
+		long cacheMegabytes = 64;
+		for( int i = 0; i < args.length; i++ ) {
+			if( args[i].equals("-jobs") && i + 1 < args.length ) {
+				c.jobs = Integer.parseInt( args[++i] );
+				if( c.jobs <= 0 )
+					c.jobs = Runtime.getRuntime().availableProcessors();
+			} else if( args[i].equals("-trace") && i + 1 < args.length ) {
+				traceDirectory = args[++i];
+				new File( traceDirectory ).mkdirs();
+			} else if( args[i].equals("-recover") ) {
+				recoverErrors = true;
+			} else if( args[i].equals("-watch") ) {
+				c.watch = true;
+			} else if( args[i].equals("-cache") && i + 1 < args.length ) {
+				cacheDirectory = args[++i];
+			} else if( args[i].equals("-cachesize") && i + 1 < args.length ) {
+				cacheMegabytes = Long.parseLong( args[++i] );
+			} else if( args[i].equals("-flatexpressions") ) {
+				flatExpressions = true;
+			} else if( args[i].equals("-pipeline") ) {
+				pipelined = true;
+			} else if( args[i].equals("-scanner") && i + 1 < args.length
+					&& (args[i + 1].equals("chain") || args[i + 1].equals("dfa")) ) {
+				dfaScanner = args[++i].equals("dfa");
+			} else if( args[i].equals("-metrics") && i + 1 < args.length ) {
+				metricsFile = args[++i];
+				metrics = new CompileMetrics();
+			} else if( args[i].equals("-engine") && i + 1 < args.length
+					&& (args[i + 1].equals("descent") || args[i + 1].equals("table")) ) {
+				tableEngine = args[++i].equals("table");
+			} else {
+				usage();
+			}
+		}
+		if( tableEngine && recoverErrors ) {
+			// The table driven parser stops at the first error.
+			usage();
+		}
+		if( cacheDirectory != null )
+			cache = new CompileCache( new File( cacheDirectory ), cacheMegabytes << 20,
+					(recoverErrors ? "recover" : "") + (tableEngine ? " table" : "") + (flatExpressions ? " flat" : "") );
 		c.go();
 	};
 
+	private static void usage() {
+		System.err.println( "usage: java Compile [-jobs N] [-trace directory] [-recover] [-watch]"
+				+ " [-cache directory [-cachesize megabytes]] [-engine descent|table]"
+				+ " [-scanner chain|dfa] [-flatexpressions] [-pipeline] [-metrics report.json]" );
+		System.err.println( "       -recover cannot be used with -engine table" );
+		System.exit( 1 );
+	}
+
 } // end of class Compile
@@ -0,0 +1,182 @@
+/**
+ *
+ * An on-disk cache of compilation results, so that a program which has not
+ * changed since an earlier run can be replayed instead of lexed and parsed.
+ *
+ * Each entry is keyed by the SHA-256 of the compiler's own class files, the
+ * options that change its output, the program's file name (which its error
+ * messages give) and the program's source, and holds the
+ * program's binary event trace (as written by BinaryTraceSink) and its res.txt
+ * output.  Entries live in one file each, named by the key; the file's last
+ * modified time is bumped on every hit, and once the cache grows past its size
+ * limit the least recently used entries are deleted.
+ *
+ **/
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CompileCache
+{
+    /** The classes whose code decides what a compilation produces. */
+    private static final Class<?>[] COMPILER_CLASSES = {
+        Token.class, LexicalAnalyser.class, DfaScanner.class, TokenBuffer.class, AbstractSyntaxAnalyser.class, SyntaxAnalyser.class,
+        LL1Grammar.class, TableDrivenParser.class, Nonterminal.class,
+        AbstractGenerate.class, Generate.class, CompilationException.class, BinaryTraceSink.class, BinaryTraceGenerate.class
+    };
+
+    private static final String SUFFIX = ".312c";
+
+    /** One cached compilation. */
+    public static class Entry {
+        public final byte[] trace;
+        public final byte[] diagnostics;
+
+        Entry( byte[] trace, byte[] diagnostics ) {
+            this.trace = trace;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    /** The digest of the compiler and options, which every key starts from. */
+    private final byte[] compilerDigest;
+
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /** Opens (creating if need be) a cache in the given directory.
+
+      @param directory Where to keep the entries.
+      @param maxBytes The size the entries are cut back to by evict().
+      @param options Anything besides the compiler and the source that changes the results.
+     */
+    public CompileCache( File directory, long maxBytes, String options ) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if( !directory.isDirectory() && !directory.mkdirs() )
+            throw new IOException( "unable to create cache directory " + directory );
+
+        MessageDigest digest = newDigest();
+        for( Class<?> c : COMPILER_CLASSES ) {
+            try( InputStream in = c.getResourceAsStream( c.getSimpleName() + ".class" ) ) {
+                if( in == null )
+                    throw new IOException( "unable to find the class file of " + c.getName() );
+                digest.update( in.readAllBytes() );
+            }
+        }
+        digest.update( options.getBytes( "UTF-8" ) );
+        compilerDigest = digest.digest();
+
+        for( File f : entries() )
+            size.addAndGet( f.length() );
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance( "SHA-256" );
+        } catch( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "SHA-256 is missing from this JVM", e );
+        }
+    }
+
+    /** @return The key of the given file's source text under this compiler and these options. */
+    public String key( String name, byte[] source ) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update( compilerDigest );
+        // The name ends at a NUL, so that no name and source can run together into another.
+        digest.update( name.getBytes( "UTF-8" ) );
+        digest.update( (byte) 0 );
+        digest.update( source );
+        StringBuilder hex = new StringBuilder( 64 );
+        for( byte b : digest.digest() )
+            hex.append( Character.forDigit( (b >> 4) & 15, 16 ) ).append( Character.forDigit( b & 15, 16 ) );
+        return hex.toString();
+    }
+
+    /** Looks up a compilation, counting a hit or a miss.
+
+      @param key The key of the source, from key().
+      @param sourceLength The size of the source, counted as saved on a hit.
+      @return The cached result, or null if there is none.
+     */
+    public Entry get( String key, long sourceLength ) {
+        File file = new File( directory, key + SUFFIX );
+        try( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) ) {
+            byte[] diagnostics = new byte[in.readInt()];
+            in.readFully( diagnostics );
+            byte[] trace = in.readAllBytes();
+            file.setLastModified( System.currentTimeMillis() );
+            hits.incrementAndGet();
+            bytesSaved.addAndGet( sourceLength );
+            return new Entry( trace, diagnostics );
+        } catch( IOException e ) {
+            // missing, or unreadable, which is treated the same way
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Stores a compilation.  The entry is written to a temporary file first, so
+      that another run can never see it half written.
+
+      @return The new entry.
+     */
+    public Entry put( String key, byte[] trace, byte[] diagnostics ) throws IOException {
+        File temp = File.createTempFile( key, ".tmp", directory );
+        try( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) ) ) {
+            out.writeInt( diagnostics.length );
+            out.write( diagnostics );
+            out.write( trace );
+        }
+        long length = temp.length();
+        File file = new File( directory, key + SUFFIX );
+        // An entry being replaced is already counted; length() is 0 if there is none.
+        long replaced = file.length();
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        size.addAndGet( length - replaced );
+        return new Entry( trace, diagnostics );
+    }
+
+    private File[] entries() {
+        File[] files = directory.listFiles( (dir, name) -> name.endsWith( SUFFIX ) );
+        return (files == null) ? new File[0] : files;
+    }
+
+    /** Deletes the least recently used entries until the cache is within its size limit.  Called
+      at the end of a run, and in watch mode at the end of each round; the cache stays usable. */
+    public void evict() {
+        if( size.get() <= maxBytes )
+            return;
+        ArrayList<File> files = new ArrayList<File>();
+        long total = 0;
+        for( File f : entries() ) {
+            files.add( f );
+            total += f.length();
+        }
+        files.sort( Comparator.comparingLong( File::lastModified ) );
+        for( int i = 0; i < files.size() && total > maxBytes; i++ ) {
+            long length = files.get( i ).length();
+            if( files.get( i ).delete() ) {
+                total -= length;
+                evicted.incrementAndGet();
+            }
+        }
+        size.set( total );
+    }
+
+    /** @return A one line summary of this run's use of the cache. */
+    public String getStats() {
+        return "cache: " + hits.get() + " hits, " + misses.get() + " misses, " + bytesSaved.get()
+            + " source bytes not recompiled, " + evicted.get() + " entries evicted, " + size.get() + " bytes held";
+    }
+} // end of class CompileCache
@@ -0,0 +1,213 @@
+/**
+ *
+ * Measures where the time of a run of Compile goes, file by file and in all:
+ * wall time lexing, parsing and emitting events, tokens per second, how many
+ * times each nonterminal of the grammar was entered, the deepest nesting of
+ * nonterminals and the bytes read.  The lexer and the event sink are wrapped
+ * in decorators that time every call into them, and whatever is left of the
+ * file's time is the parse.  Nothing is wrapped unless metrics are asked for,
+ * so a run without them costs no more than it did.
+ *
+ * The report is written as JSON, with the latency of getNextToken and of each
+ * phase of a file as percentiles from a LatencyHistogram, and the same
+ * histograms in HdrHistogram's percentile distribution format.
+ *
+ **/
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+
+public class CompileMetrics
+{
+    /** The measurements of one file. */
+    public static class FileMetrics {
+        final String name;
+        final long bytes;
+        private final long start = System.nanoTime();
+
+        long tokens;
+        long lexNanos, emitNanos, parseNanos, totalNanos;
+        int depth, maxDepth;
+        /** Entries into each nonterminal, indexed by its id from Nonterminal; 0 counts unknown names. */
+        final long[] nonterminals = new long[Nonterminal.count + 1];
+        /** The time of each call to getNextToken. */
+        final LatencyHistogram tokenLatency = new LatencyHistogram();
+
+        FileMetrics( String name ) {
+            this.name = name;
+            this.bytes = new File( name ).length();
+        }
+
+        /** @return The source, timing every token taken from it as lexing. */
+        public TokenSource tokens( TokenSource source ) {
+            return () -> {
+                long before = System.nanoTime();
+                Token token = source.getNextToken();
+                long nanos = System.nanoTime() - before;
+                lexNanos += nanos;
+                tokenLatency.record( nanos );
+                tokens++;
+                return token;
+            };
+        }
+
+        /** @return The sink, counting and timing every event sent to it as emitting. */
+        public EventSink events( EventSink sink ) {
+            return new EventSink() {
+                public void terminal( int symbol, String text, int lineNumber ) {
+                    long before = System.nanoTime();
+                    sink.terminal( symbol, text, lineNumber );
+                    emitNanos += System.nanoTime() - before;
+                }
+
+                public void beginNonterminal( String name ) {
+                    nonterminals[Nonterminal.getId( name )]++;
+                    if( ++depth > maxDepth )
+                        maxDepth = depth;
+                    long before = System.nanoTime();
+                    sink.beginNonterminal( name );
+                    emitNanos += System.nanoTime() - before;
+                }
+
+                public void endNonterminal( String name ) {
+                    depth--;
+                    long before = System.nanoTime();
+                    sink.endNonterminal( name );
+                    emitNanos += System.nanoTime() - before;
+                }
+
+                public void success() {
+                    long before = System.nanoTime();
+                    sink.success();
+                    emitNanos += System.nanoTime() - before;
+                }
+
+                public void flush() {
+                    long before = System.nanoTime();
+                    sink.flush();
+                    emitNanos += System.nanoTime() - before;
+                }
+            };
+        }
+
+        /** Adds the counts of another file's measurements to these. */
+        void add( FileMetrics other ) {
+            tokens += other.tokens;
+            lexNanos += other.lexNanos;
+            emitNanos += other.emitNanos;
+            parseNanos += other.parseNanos;
+            totalNanos += other.totalNanos;
+            maxDepth = Math.max( maxDepth, other.maxDepth );
+            for( int i = 0; i < nonterminals.length; i++ )
+                nonterminals[i] += other.nonterminals[i];
+            tokenLatency.add( other.tokenLatency );
+        }
+    }
+
+    private final ArrayList<FileMetrics> files = new ArrayList<FileMetrics>();
+    private long bytes;
+    /** Every file's measurements added together. */
+    private final FileMetrics total = new FileMetrics( "" );
+    /** The time of each phase of a file, and of the whole file. */
+    private final LatencyHistogram lexLatency = new LatencyHistogram(),
+            parseLatency = new LatencyHistogram(),
+            emitLatency = new LatencyHistogram(),
+            fileLatency = new LatencyHistogram();
+
+    /** @return Measurements for a file whose compilation is starting now. */
+    public FileMetrics startFile( String name ) {
+        return new FileMetrics( name );
+    }
+
+    /** Records a file whose compilation has just finished.  Files may finish on any thread. */
+    public synchronized void finishFile( FileMetrics file ) {
+        file.totalNanos = System.nanoTime() - file.start;
+        file.parseNanos = Math.max( 0, file.totalNanos - file.lexNanos - file.emitNanos );
+        files.add( file );
+        bytes += file.bytes;
+        total.add( file );
+        lexLatency.record( file.lexNanos );
+        parseLatency.record( file.parseNanos );
+        emitLatency.record( file.emitNanos );
+        fileLatency.record( file.totalNanos );
+    }
+
+    /** Writes the JSON report, with the files in the order of their names (shortest first, so
+      that program10 comes after program9). */
+    public synchronized void writeJson( PrintStream out ) {
+        ArrayList<FileMetrics> sorted = new ArrayList<FileMetrics>( files );
+        sorted.sort( Comparator.comparingInt( (FileMetrics f) -> f.name.length() ).thenComparing( f -> f.name ) );
+
+        out.println( "{" );
+        out.println( "  \"files\": [" );
+        for( int i = 0; i < sorted.size(); i++ ) {
+            FileMetrics file = sorted.get( i );
+            out.print( "    { \"name\": " + quote( file.name ) + ", \"bytes\": " + file.bytes + ", " );
+            writeCounts( out, file, "      " );
+            out.println( i < sorted.size() - 1 ? " }," : " }" );
+        }
+        out.println( "  ]," );
+        out.print( "  \"total\": { \"files\": " + files.size() + ", \"bytes\": " + bytes + ", " );
+        writeCounts( out, total, "    " );
+        out.println( " }," );
+        out.println( "  \"latencyNanos\": {" );
+        writeLatency( out, "getNextToken", total.tokenLatency, "," );
+        writeLatency( out, "fileLex", lexLatency, "," );
+        writeLatency( out, "fileParse", parseLatency, "," );
+        writeLatency( out, "fileEmit", emitLatency, "," );
+        writeLatency( out, "file", fileLatency, "" );
+        out.println( "  }" );
+        out.println( "}" );
+    }
+
+    private static void writeCounts( PrintStream out, FileMetrics file, String indent ) {
+        out.printf( Locale.ROOT, "\"tokens\": %d, \"tokensPerSecond\": %.0f,%n", file.tokens,
+                (file.totalNanos == 0) ? 0.0 : file.tokens * 1e9 / file.totalNanos );
+        out.printf( Locale.ROOT, "%s\"lexMillis\": %.3f, \"parseMillis\": %.3f, \"emitMillis\": %.3f, \"totalMillis\": %.3f,%n",
+                indent, file.lexNanos / 1e6, file.parseNanos / 1e6, file.emitNanos / 1e6, file.totalNanos / 1e6 );
+        out.print( indent + "\"maxDepth\": " + file.maxDepth + ", \"nonterminals\": {" );
+        String separator = " ";
+        for( int id = 1; id <= Nonterminal.count; id++ ) {
+            if( file.nonterminals[id] == 0 )
+                continue;
+            out.print( separator + quote( Nonterminal.getName( id ) ) + ": " + file.nonterminals[id] );
+            separator = ", ";
+        }
+        out.print( " }" );
+    }
+
+    private static void writeLatency( PrintStream out, String name, LatencyHistogram histogram, String after ) {
+        out.printf( Locale.ROOT, "    %s: { \"count\": %d, \"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"p99.9\": %d, \"max\": %d }%s%n",
+                quote( name ), histogram.count(), histogram.mean(), histogram.valueAtPercentile( 50 ),
+                histogram.valueAtPercentile( 90 ), histogram.valueAtPercentile( 99 ),
+                histogram.valueAtPercentile( 99.9 ), histogram.max(), after );
+    }
+
+    /** Writes each latency histogram in HdrHistogram's percentile distribution format, in microseconds. */
+    public synchronized void writePercentiles( PrintStream out ) {
+        String[] names = { "getNextToken", "fileLex", "fileParse", "fileEmit", "file" };
+        LatencyHistogram[] histograms = { total.tokenLatency, lexLatency, parseLatency, emitLatency, fileLatency };
+        for( int i = 0; i < names.length; i++ ) {
+            out.println( "# " + names[i] + " (microseconds)" );
+            histograms[i].writePercentiles( out, 1000.0 );
+            out.println();
+        }
+    }
+
+    /** @return A string as a JSON string literal. */
+    private static String quote( String s ) {
+        StringBuilder quoted = new StringBuilder( s.length() + 2 ).append( '"' );
+        for( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt( i );
+            if( c == '"' || c == '\\' )
+                quoted.append( '\\' ).append( c );
+            else if( c < ' ' )
+                quoted.append( String.format( "\\u%04x", (int) c ) );
+            else
+                quoted.append( c );
+        }
+        return quoted.append( '"' ).toString();
+    }
+} // end of class CompileMetrics
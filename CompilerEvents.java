@@ -0,0 +1,109 @@
+/**
+ *
+ * The compiler's own Java Flight Recorder events, so that a recording shows
+ * what the compiler was doing alongside the JVM's garbage collection, I/O and
+ * thread events.  Compile records one CompileFile event for each file,
+ * SyntaxAnalyser one ParseStatement for each top level statement,
+ * LexicalAnalyser one LexerRefill each time it reads more of its input, and
+ * the syntax analysers one SyntaxError for each error reported.  Every event
+ * carries the file name, the span of lines it covers and a count of tokens.
+ *
+ * Statements and refills are frequent and mostly quick, so by default only
+ * those taking 100 us or more are recorded; a recording configuration can
+ * lower the threshold.  When nothing is recording, an event costs a check of
+ * a flag.
+ *
+ **/
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+public class CompilerEvents
+{
+    private static final String CATEGORY = "312 Compiler";
+
+    @Name( "compiler.CompileFile" )
+    @Label( "Compile File" )
+    @Category( CATEGORY )
+    @Description( "Lexing and parsing one file and writing out its events" )
+    @StackTrace( false )
+    public static class CompileFile extends Event {
+        @Label( "File" )
+        String file;
+        @Label( "First Line" )
+        int firstLine;
+        @Label( "Last Line" )
+        int lastLine;
+        @Label( "Tokens" )
+        @Description( "Tokens accepted by the parser" )
+        long tokens;
+        @Label( "Errors" )
+        int errors;
+    }
+
+    @Name( "compiler.ParseStatement" )
+    @Label( "Parse Statement" )
+    @Category( CATEGORY )
+    @Description( "Parsing one top level statement" )
+    @StackTrace( false )
+    @Threshold( "100 us" )
+    public static class ParseStatement extends Event {
+        @Label( "File" )
+        String file;
+        @Label( "First Line" )
+        int firstLine;
+        @Label( "Last Line" )
+        int lastLine;
+        @Label( "Tokens" )
+        long tokens;
+    }
+
+    @Name( "compiler.LexerRefill" )
+    @Label( "Lexer Refill" )
+    @Category( CATEGORY )
+    @Description( "Reading more of the input into the lexical analyser: a line, or the whole file when it is mapped" )
+    @StackTrace( false )
+    @Threshold( "100 us" )
+    public static class LexerRefill extends Event {
+        @Label( "File" )
+        String file;
+        @Label( "First Line" )
+        int firstLine;
+        @Label( "Last Line" )
+        int lastLine;
+        @Label( "Tokens" )
+        @Description( "Tokens scanned from the file before this refill" )
+        long tokens;
+        @Label( "Characters" )
+        long chars;
+    }
+
+    @Name( "compiler.SyntaxError" )
+    @Label( "Syntax Error" )
+    @Category( CATEGORY )
+    @Description( "A syntax error, recorded when the parser finds it" )
+    @StackTrace( false )
+    public static class SyntaxError extends Event {
+        @Label( "File" )
+        String file;
+        @Label( "First Line" )
+        @Description( "The line of the top level statement the error was found in, where the parser keeps track" )
+        int firstLine;
+        @Label( "Last Line" )
+        @Description( "The line the error was found on" )
+        int lastLine;
+        @Label( "Tokens" )
+        @Description( "Tokens accepted by the parser before the error" )
+        long tokens;
+        @Label( "Message" )
+        String message;
+    }
+
+    private CompilerEvents() {
+    }
+} // end of class CompilerEvents
@@ -0,0 +1,200 @@
+/**
+ *
+ * Works out arithmetic on numberConstants while compiling.  A variable read
+ * where it is sure to hold a known constant is replaced by the constant, and
+ * an operator with two constant operands becomes the constant it gives,
+ * computed just as the back ends would compute it.  Conditions are compared
+ * against a variable, never a constant, in the source, so replacing variables
+ * is what gives UnreachableBranchRemoval constant conditions to work on.
+ *
+ * A variable is known after an assignment of a constant to it, until the next
+ * assignment or get, and at the end of an if only if both branches agree.  A
+ * variable stored into anywhere in a loop is not known anywhere in the loop,
+ * so one walk through the loop is enough.
+ *
+ * Multiplying or dividing by 1, and adding -0 or subtracting 0, are dropped
+ * too, as they give their operand back exactly.  Adding 0 is kept, since
+ * -0 + 0 is 0, and so is multiplying by 0, since NaN * 0 is NaN.  Chains are
+ * not reordered: in x + 1 + 2 nothing is constant, as (x + 1) + 2 need not
+ * equal x + 3.
+ *
+ **/
+
+import java.util.BitSet;
+
+public class ConstantFolding extends OptimizationPass
+{
+    /** The value of each variable, where known. */
+    private double[] values;
+    private BitSet known;
+
+    public String name() {
+        return "constant folding";
+    }
+
+    protected LoweredProgram.Statement[] optimize( LoweredProgram program ) {
+        int n = program.variables.length;
+        values = new double[n];
+        known = new BitSet( n );
+        // Every number variable starts as 0.
+        for( int v = 0; v < n; v++ ) {
+            if( !program.isString[v] )
+                known.set( v );
+        }
+        return block( program.body );
+    }
+
+    private LoweredProgram.Statement[] block( LoweredProgram.Statement[] statements ) {
+        LoweredProgram.Statement[] result = statements;
+        for( int i = 0; i < statements.length; i++ ) {
+            LoweredProgram.Statement s = statement( statements[i] );
+            if( s != statements[i] ) {
+                if( result == statements )
+                    result = statements.clone();
+                result[i] = s;
+            }
+        }
+        return result;
+    }
+
+    /** Forgets the values of the variables stored into in a loop. */
+    private void forget( LoweredProgram.Statement[] body, LoweredProgram.Assign step ) {
+        int[] stores = new int[values.length];
+        stores( body, stores );
+        if( step != null )
+            stores( step, stores );
+        for( int v = 0; v < stores.length; v++ ) {
+            if( stores[v] > 0 )
+                known.clear( v );
+        }
+    }
+
+    private LoweredProgram.Statement statement( LoweredProgram.Statement s ) {
+        if( s instanceof LoweredProgram.Assign ) {
+            return assign( (LoweredProgram.Assign) s );
+        } else if( s instanceof LoweredProgram.Get ) {
+            for( int v : ((LoweredProgram.Get) s).variables )
+                known.clear( v );
+        } else if( s instanceof LoweredProgram.If ) {
+            LoweredProgram.If i = (LoweredProgram.If) s;
+            LoweredProgram.Condition condition = condition( i.condition );
+            double[] startValues = values.clone();
+            BitSet startKnown = (BitSet) known.clone();
+            LoweredProgram.Statement[] thenPart = block( i.thenPart );
+            double[] thenValues = values;
+            BitSet thenKnown = known;
+            values = startValues;
+            known = startKnown;
+            LoweredProgram.Statement[] elsePart = block( i.elsePart );
+            known.and( thenKnown );
+            for( int v = known.nextSetBit( 0 ); v >= 0; v = known.nextSetBit( v + 1 ) ) {
+                if( Double.doubleToRawLongBits( values[v] ) != Double.doubleToRawLongBits( thenValues[v] ) )
+                    known.clear( v );
+            }
+            if( condition == i.condition && thenPart == i.thenPart && elsePart == i.elsePart )
+                return s;
+            return new LoweredProgram.If( condition, thenPart, elsePart );
+        } else if( s instanceof LoweredProgram.While ) {
+            LoweredProgram.While w = (LoweredProgram.While) s;
+            forget( w.body, null );
+            LoweredProgram.Condition condition = condition( w.condition );
+            LoweredProgram.Statement[] body = block( w.body );
+            // The loop ends at the test, where only what was known before it still holds.
+            forget( w.body, null );
+            if( condition == w.condition && body == w.body )
+                return s;
+            return new LoweredProgram.While( condition, body );
+        } else if( s instanceof LoweredProgram.DoUntil ) {
+            LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+            forget( d.body, null );
+            // The loop ends after the body, so what is known at its end holds after the loop.
+            LoweredProgram.Statement[] body = block( d.body );
+            LoweredProgram.Condition condition = condition( d.condition );
+            if( condition == d.condition && body == d.body )
+                return s;
+            return new LoweredProgram.DoUntil( body, condition );
+        } else if( s instanceof LoweredProgram.For ) {
+            LoweredProgram.For f = (LoweredProgram.For) s;
+            LoweredProgram.Assign initial = assign( f.initial );
+            forget( f.body, f.step );
+            LoweredProgram.Condition condition = condition( f.condition );
+            LoweredProgram.Statement[] body = block( f.body );
+            LoweredProgram.Assign step = assign( f.step );
+            forget( f.body, f.step );
+            if( initial == f.initial && condition == f.condition && step == f.step && body == f.body )
+                return s;
+            return new LoweredProgram.For( initial, condition, step, body );
+        }
+        return s;
+    }
+
+    private LoweredProgram.Assign assign( LoweredProgram.Assign a ) {
+        LoweredProgram.Expression value = expression( a.value );
+        if( value instanceof LoweredProgram.Constant ) {
+            values[a.variable] = ((LoweredProgram.Constant) value).value;
+            known.set( a.variable );
+        } else {
+            known.clear( a.variable );
+        }
+        return (value == a.value) ? a : new LoweredProgram.Assign( a.variable, value );
+    }
+
+    private LoweredProgram.Condition condition( LoweredProgram.Condition c ) {
+        LoweredProgram.Expression left = expression( c.left ), right = expression( c.right );
+        if( left == c.left && right == c.right )
+            return c;
+        return new LoweredProgram.Condition( left, c.relation, right );
+    }
+
+    /** @return An operand, or the constant it is known to be. */
+    private LoweredProgram.Expression operand( LoweredProgram.Expression e ) {
+        if( e instanceof LoweredProgram.Variable && known.get( ((LoweredProgram.Variable) e).variable ) ) {
+            rewritten();
+            return new LoweredProgram.Constant( values[((LoweredProgram.Variable) e).variable] );
+        }
+        return e;
+    }
+
+    /** Folds an expression, following the left operands of a chain in a loop rather than by recursion. */
+    private LoweredProgram.Expression expression( LoweredProgram.Expression e ) {
+        if( !(e instanceof LoweredProgram.Binary) )
+            return operand( e );
+        LoweredProgram.Binary[] spine = spine( (LoweredProgram.Binary) e );
+        LoweredProgram.Expression value = operand( spine[0].left );
+        for( LoweredProgram.Binary b : spine ) {
+            LoweredProgram.Expression right = expression( b.right );
+            LoweredProgram.Expression folded = fold( b.operator, value, right );
+            if( folded != null ) {
+                rewritten();
+                value = folded;
+            } else if( value != b.left || right != b.right ) {
+                value = new LoweredProgram.Binary( b.operator, value, right );
+            } else {
+                value = b;
+            }
+        }
+        return value;
+    }
+
+    /** @return What left operator right simplifies to, or null if it does not. */
+    private static LoweredProgram.Expression fold( int operator, LoweredProgram.Expression left,
+            LoweredProgram.Expression right ) {
+        if( left instanceof LoweredProgram.Constant && right instanceof LoweredProgram.Constant ) {
+            return new LoweredProgram.Constant( ProgramInterpreter.apply( operator,
+                    ((LoweredProgram.Constant) left).value, ((LoweredProgram.Constant) right).value ) );
+        }
+        if( right instanceof LoweredProgram.Constant ) {
+            double r = ((LoweredProgram.Constant) right).value;
+            if( r == 1.0 && (operator == Token.timesSymbol || operator == Token.divideSymbol) )
+                return left;
+            long bits = Double.doubleToRawLongBits( r );
+            if( (bits == 0 && operator == Token.minusSymbol)
+                    || (bits == Double.doubleToRawLongBits( -0.0 ) && operator == Token.plusSymbol) )
+                return left;
+        }
+        if( left instanceof LoweredProgram.Constant && ((LoweredProgram.Constant) left).value == 1.0
+                && operator == Token.timesSymbol )
+            return right;
+        return null;
+    }
+} // end of class ConstantFolding
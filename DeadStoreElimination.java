@@ -0,0 +1,162 @@
+/**
+ *
+ * Removes assignments whose value is never read: those after which the
+ * variable is assigned again, or the program ends, before anything reads it.
+ * Which variables are live, that is may yet be read, is worked out backwards
+ * through each block; a loop's is repeated until it settles, since what the
+ * body reads on one time round is live at the end of the time before.
+ *
+ * A store that is removed does not count as reading its operands, so a chain
+ * of assignments that only feed each other, and nothing that is put, goes in
+ * one pass.  get is never removed, even into a dead variable, since it uses up
+ * input, and neither are the initial and step assignments of a for loop,
+ * which the loop needs.
+ *
+ **/
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+
+public class DeadStoreElimination extends OptimizationPass
+{
+    public String name() {
+        return "dead store elimination";
+    }
+
+    protected LoweredProgram.Statement[] optimize( LoweredProgram program ) {
+        // Nothing is read after the program ends.
+        return block( program.body, new BitSet( program.variables.length ), true );
+    }
+
+    /** Works out the variables live before a block from those live after it.
+
+      @param live The variables live after the block, changed to those live before it.
+      @param rewrite Whether to remove the dead stores, or only to work out what is live.
+      @return The block without its dead stores, when rewriting.
+     */
+    private LoweredProgram.Statement[] block( LoweredProgram.Statement[] statements, BitSet live,
+            boolean rewrite ) {
+        ArrayList<LoweredProgram.Statement> kept = rewrite ? new ArrayList<LoweredProgram.Statement>() : null;
+        boolean changed = false;
+        for( int i = statements.length - 1; i >= 0; i-- ) {
+            LoweredProgram.Statement s = statements[i];
+            if( s instanceof LoweredProgram.Assign ) {
+                LoweredProgram.Assign a = (LoweredProgram.Assign) s;
+                if( !live.get( a.variable ) ) {
+                    if( rewrite ) {
+                        rewritten();
+                        changed = true;
+                    }
+                    continue;
+                }
+                live.clear( a.variable );
+                reads( a.value, live );
+            } else if( s instanceof LoweredProgram.AssignString ) {
+                LoweredProgram.AssignString a = (LoweredProgram.AssignString) s;
+                if( !live.get( a.variable ) ) {
+                    if( rewrite ) {
+                        rewritten();
+                        changed = true;
+                    }
+                    continue;
+                }
+                live.clear( a.variable );
+            } else if( s instanceof LoweredProgram.Get ) {
+                for( int v : ((LoweredProgram.Get) s).variables )
+                    live.clear( v );
+            } else if( s instanceof LoweredProgram.Put ) {
+                for( int v : ((LoweredProgram.Put) s).variables )
+                    live.set( v );
+            } else if( s instanceof LoweredProgram.If ) {
+                LoweredProgram.If f = (LoweredProgram.If) s;
+                BitSet thenLive = (BitSet) live.clone();
+                LoweredProgram.Statement[] thenPart = block( f.thenPart, thenLive, rewrite );
+                LoweredProgram.Statement[] elsePart = block( f.elsePart, live, rewrite );
+                live.or( thenLive );
+                reads( f.condition, live );
+                if( rewrite && (thenPart != f.thenPart || elsePart != f.elsePart) )
+                    s = new LoweredProgram.If( f.condition, thenPart, elsePart );
+            } else if( s instanceof LoweredProgram.While ) {
+                LoweredProgram.While w = (LoweredProgram.While) s;
+                // live becomes what is live at the test: after the loop, in the condition, or before the body
+                BitSet after = (BitSet) live.clone();
+                reads( w.condition, after );
+                live.or( after );
+                for( ;; ) {
+                    BitSet test = (BitSet) live.clone();
+                    block( w.body, test, false );
+                    test.or( after );
+                    if( test.equals( live ) )
+                        break;
+                    live.or( test );
+                }
+                if( rewrite ) {
+                    LoweredProgram.Statement[] body = block( w.body, (BitSet) live.clone(), true );
+                    if( body != w.body )
+                        s = new LoweredProgram.While( w.condition, body );
+                }
+            } else if( s instanceof LoweredProgram.DoUntil ) {
+                LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+                // live becomes what is live at the end of the body, then before it
+                BitSet after = (BitSet) live.clone();
+                reads( d.condition, after );
+                live.or( after );
+                BitSet start;
+                for( ;; ) {
+                    start = (BitSet) live.clone();
+                    block( d.body, start, false );
+                    BitSet end = (BitSet) start.clone();
+                    end.or( after );
+                    if( end.equals( live ) )
+                        break;
+                    live.or( end );
+                }
+                if( rewrite ) {
+                    LoweredProgram.Statement[] body = block( d.body, (BitSet) live.clone(), true );
+                    if( body != d.body )
+                        s = new LoweredProgram.DoUntil( body, d.condition );
+                }
+                live.clear();
+                live.or( start );
+            } else if( s instanceof LoweredProgram.For ) {
+                LoweredProgram.For f = (LoweredProgram.For) s;
+                // live becomes what is live at the test, as for a while loop with the step at its end
+                BitSet after = (BitSet) live.clone();
+                reads( f.condition, after );
+                live.or( after );
+                for( ;; ) {
+                    BitSet test = beforeStep( f.step, live );
+                    block( f.body, test, false );
+                    test.or( after );
+                    if( test.equals( live ) )
+                        break;
+                    live.or( test );
+                }
+                if( rewrite ) {
+                    LoweredProgram.Statement[] body = block( f.body, beforeStep( f.step, live ), true );
+                    if( body != f.body )
+                        s = new LoweredProgram.For( f.initial, f.condition, f.step, body );
+                }
+                live.clear( f.initial.variable );
+                reads( f.initial.value, live );
+            }
+            if( rewrite ) {
+                changed |= (s != statements[i]);
+                kept.add( s );
+            }
+        }
+        if( !rewrite || !changed )
+            return statements;
+        Collections.reverse( kept );
+        return kept.toArray( new LoweredProgram.Statement[0] );
+    }
+
+    /** @return The variables live before a for loop's step, given those live after it. */
+    private static BitSet beforeStep( LoweredProgram.Assign step, BitSet live ) {
+        BitSet before = (BitSet) live.clone();
+        before.clear( step.variable );
+        reads( step.value, before );
+        return before;
+    }
+} // end of class DeadStoreElimination
@@ -0,0 +1,501 @@
+
+/**
+ *
+ * A table driven scanner for the tokens of LexicalAnalyser.  Where
+ * LexicalAnalyser tests each character against a chain of conditions, this
+ * looks the class of every ASCII character up in a 128 entry table, and
+ * recognises the operators and comments with a table of transitions between
+ * states over those classes.  Words, numbers, strings and runs of white space
+ * are scanned by short loops over the class table, and only a character
+ * outside ASCII falls back to Character.isLetter and Character.isDigit, so
+ * the same letters and digits are accepted as before.
+ *
+ * It scans a whole buffer of source with an index, as LexicalAnalyser does in
+ * buffer mode, folding line terminators to '\n' as that does and giving the
+ * same tokens, text, line numbers and offsets, down to the handling of a
+ * stray NUL, which both take for the end of the input.  It extends
+ * LexicalAnalyser so that it can stand in for one anywhere one is taken:
+ * TokenBuffer.fill, TokenPipeline, or the parsers as a TokenSource; Compile
+ * uses it with -scanner dfa.  ScannerCrossCheck compares the two token for
+ * token.
+ *
+ **/
+import java.io.* ;
+import java.nio.CharBuffer ;
+import java.util.Arrays ;
+
+public class DfaScanner extends LexicalAnalyser
+{
+	/** Character classes, letters and digits first so that testing for either is one
+	  comparison.  NUL is the end of the input as far as tokens go, but unlike the real
+	  end it is a character, and can be skipped over; END is past the last char. */
+	private static final int LETTER = 0,
+			DIGIT = 1,
+			OTHER = 2,
+			SPACE = 3,
+			NEWLINE = 4,
+			QUOTE = 5,
+			MINUS = 6,
+			COLON = 7,
+			GREATER = 8,
+			LESS = 9,
+			BANG = 10,
+			EQUALS = 11,
+			SINGLE = 12,
+			NUL = 13,
+			END = 14,
+			CLASSES = 15 ;
+
+	/** The class of each ASCII character. */
+	private static final byte[] charClass = new byte[128] ;
+	/** The symbol of each character in class SINGLE. */
+	private static final byte[] singleSymbols = new byte[128] ;
+
+	/** States of the transition table: between tokens, and part way through an operator or comment. */
+	private static final int START = 0,
+			AFTER_MINUS = 1,
+			COMMENT = 2,
+			AFTER_COLON = 3,
+			AFTER_GREATER = 4,
+			AFTER_LESS = 5,
+			AFTER_BANG = 6,
+			STATES = 7 ;
+
+	/** Actions of the transition table, in the high bits of an entry; the low eight bits
+	  hold the next state or the symbol. */
+	private static final int SHIFT = 1,	// take the char and go to the state
+			LINE = 2,	// take the line terminator ending a comment, and count the line
+			ACCEPT = 3,	// take the char, and the token ends with the symbol
+			RETURN = 4 ;	// the token ends with the symbol, before this char
+
+	/** The action for each state and character class, indexed by state * CLASSES + class.  Between
+	  tokens only the chars that start an operator or comment have actions; nextSymbol dispatches
+	  the rest on their class alone. */
+	private static final int[] transitions = new int[STATES * CLASSES] ;
+
+	static
+	{
+		Arrays.fill(charClass, (byte) OTHER) ;
+		for (char c = 'a'; c <= 'z'; c++)
+			charClass[c] = LETTER ;
+		for (char c = 'A'; c <= 'Z'; c++)
+			charClass[c] = LETTER ;
+		for (char c = '0'; c <= '9'; c++)
+			charClass[c] = DIGIT ;
+		charClass[' '] = SPACE ;
+		charClass['\t'] = SPACE ;
+		charClass['\n'] = NEWLINE ;
+		charClass['\r'] = NEWLINE ;
+		charClass['"'] = QUOTE ;
+		charClass['-'] = MINUS ;
+		charClass[':'] = COLON ;
+		charClass['>'] = GREATER ;
+		charClass['<'] = LESS ;
+		charClass['!'] = BANG ;
+		charClass['='] = EQUALS ;
+		charClass['\000'] = NUL ;
+		char[] singles = { ',', ';', '+', '/', '%', '*', '(', ')' } ;
+		int[] symbols = { Token.commaSymbol, Token.semicolonSymbol, Token.plusSymbol, Token.divideSymbol,
+				Token.modSymbol, Token.timesSymbol, Token.leftParenthesis, Token.rightParenthesis } ;
+		for (int i = 0; i < singles.length; i++)
+		{
+			charClass[singles[i]] = SINGLE ;
+			singleSymbols[singles[i]] = (byte) symbols[i] ;
+		}
+		// '=' is a token on its own too, but after ':', '<', '>' or '!' it ends an operator.
+		singleSymbols['='] = Token.equalSymbol ;
+
+		// Between tokens, the chars that may start an operator of two chars, or a comment.
+		set(START, MINUS, SHIFT, AFTER_MINUS) ;
+		set(START, COLON, SHIFT, AFTER_COLON) ;
+		set(START, GREATER, SHIFT, AFTER_GREATER) ;
+		set(START, LESS, SHIFT, AFTER_LESS) ;
+		set(START, BANG, SHIFT, AFTER_BANG) ;
+
+		// "--" starts a comment, which runs to the end of the line.
+		setAll(AFTER_MINUS, RETURN, Token.minusSymbol) ;
+		set(AFTER_MINUS, MINUS, SHIFT, COMMENT) ;
+		setAll(COMMENT, SHIFT, COMMENT) ;
+		set(COMMENT, NEWLINE, LINE, 0) ;
+		// An open comment always gets the '\n' supplied at the end of its line, so this is never reached.
+		set(COMMENT, END, RETURN, Token.eofSymbol) ;
+
+		setAll(AFTER_COLON, RETURN, Token.colonSymbol) ;
+		set(AFTER_COLON, EQUALS, ACCEPT, Token.becomesSymbol) ;
+		setAll(AFTER_GREATER, RETURN, Token.greaterThanSymbol) ;
+		set(AFTER_GREATER, EQUALS, ACCEPT, Token.greaterEqualSymbol) ;
+		setAll(AFTER_LESS, RETURN, Token.lessThanSymbol) ;
+		set(AFTER_LESS, EQUALS, ACCEPT, Token.lessEqualSymbol) ;
+
+		// A '!' not followed by '=' takes the next char with it, whatever that is, into an error.
+		setAll(AFTER_BANG, ACCEPT, Token.errorSymbol) ;
+		set(AFTER_BANG, EQUALS, ACCEPT, Token.notEqualSymbol) ;
+		set(AFTER_BANG, END, RETURN, Token.errorSymbol) ;
+	}
+
+	/** Sets one entry of the transition table. */
+	private static void set(int state, int charClass, int action, int argument)
+	{
+		transitions[(state * CLASSES) + charClass] = (action << 8) | argument ;
+	} // end of method set
+
+	/** Sets the entries of a state for every character class. */
+	private static void setAll(int state, int action, int argument)
+	{
+		for (int c = 0; c < CLASSES; c++)
+			set(state, c, action, argument) ;
+	} // end of method setAll
+
+	/** The source, the range of it to scan, and the end of the input: one past limit when
+	  the last line needs the '\n' that LexicalAnalyser supplies after an unterminated line. */
+	private final char[] text ;
+	private final int limit,
+			end ;
+
+	/** The index of the next char to scan, and of the first char of the last token. */
+	private int position,
+			tokenStart ;
+	private int lineNumber ;
+
+	/** Has a string run into the end of the input without its closing quote? */
+	private boolean unterminated ;
+
+	/* token buffer */
+	private char[] currentText = new char[64] ;
+	private int currentTextLength ;
+
+	/** Creates a new DfaScanner which will run over the given file, read into memory
+	  as LexicalAnalyser reads it in buffer mode.
+
+	  @param fileName The file to read.
+	  @throws IOException if the file cannot be read.
+	 */
+	public DfaScanner(String fileName) throws IOException
+	{
+		this(readSource(fileName)) ;
+	} // end of constructor method
+
+	private DfaScanner(CharBuffer chars)
+	{
+		this(chars.array(), chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit(), 0, false) ;
+	} // end of constructor method
+
+	/** Creates a new DfaScanner which will run over part of a buffer of source text,
+	  as if the text before it had already been scanned.
+
+	  @param text The source text.
+	  @param offset The index of the first char to scan; this should not be part way through a token.
+	  @param limit The index just past the last char to scan, normally text.length.
+	  @param firstLineNumber The line number the text at offset is on.
+	 */
+	public DfaScanner(char[] text, int offset, int limit, int firstLineNumber)
+	{
+		this(text, offset, limit, firstLineNumber,
+				(offset > 0) && (text[offset - 1] != '\n') && (text[offset - 1] != '\r')) ;
+	} // end of constructor method
+
+	private DfaScanner(char[] text, int offset, int limit, int firstLineNumber, boolean midLine)
+	{
+		super(text, offset, limit, firstLineNumber) ;
+		this.text = text ;
+		this.limit = limit ;
+		boolean lineOpen = (limit > offset) ? ((text[limit - 1] != '\n') && (text[limit - 1] != '\r')) : midLine ;
+		end = lineOpen ? limit + 1 : limit ;
+		position = offset ;
+		tokenStart = -1 ;
+		lineNumber = firstLineNumber ;
+	} // end of constructor method
+
+	/** @return The class of a char outside ASCII: a letter, a digit or neither. */
+	private static int slowClass(char c)
+	{
+		if (Character.isLetter(c))
+			return LETTER ;
+		else if (Character.isDigit(c))
+			return DIGIT ;
+		else
+			return OTHER ;
+	} // end of method slowClass
+
+	private static boolean isDigit(char c)
+	{
+		return (c < 128) ? (charClass[c] == DIGIT) : Character.isDigit(c) ;
+	} // end of method isDigit
+
+	private static boolean isLetterOrDigit(char c)
+	{
+		return (c < 128) ? (charClass[c] <= DIGIT) : Character.isLetterOrDigit(c) ;
+	} // end of method isLetterOrDigit
+
+	/** @return The index after the char at i, taking "\r\n" as one. */
+	private int after(int i, char c)
+	{
+		return ((c == '\r') && (i + 1 < limit) && (text[i + 1] == '\n')) ? i + 2 : i + 1 ;
+	} // end of method after
+
+	/** Returns the next token from the source.
+
+	  @return the next token from the source.
+	 */
+	public Token getNextToken()
+	{
+		int symbol = nextSymbol() ;
+		return new Token(symbol, tokenText(symbol), lineNumber) ;
+	} // end of method getNextToken
+
+	/** Scans the next token without building a Token for it, dispatching on the
+	  class of the char it starts with.
+
+	  @return the symbol of the next token, one of the class constants from Token.
+	 */
+	int nextSymbol()
+	{
+		char[] text = this.text ;
+		int i = position ;
+		currentTextLength = 0 ;
+
+		while (true)
+		{
+			char c ;
+			int k ;
+			if (i < limit)
+			{
+				c = text[i] ;
+				k = (c < 128) ? charClass[c] : slowClass(c) ;
+			}
+			else
+			{
+				c = '\n' ;
+				k = (i < end) ? NEWLINE : END ;
+			}
+			tokenStart = Math.min(i, limit) ;
+
+			switch (k)
+			{
+			case SPACE:
+				i = skipSpaces(i + 1) ;
+				break ;
+			case NEWLINE:
+				lineNumber++ ;
+				i = skipSpaces(after(i, c)) ;
+				break ;
+			case LETTER:
+				return scanWord(i) ;
+			case DIGIT:
+				return scanNumber(i) ;
+			case QUOTE:
+				return scanString(i) ;
+			case SINGLE:
+			case EQUALS:
+				position = i + 1 ;
+				return singleSymbols[c] ;
+			case OTHER:
+				position = i + 1 ;
+				return Token.errorSymbol ;
+			case NUL:
+			case END:
+				position = i ;
+				return Token.eofSymbol ;
+			default:
+				int symbol = scanOperator(i) ;
+				if (symbol != 0)
+					return symbol ;
+				// It was a comment, and scanning goes on from the next line.
+				i = skipSpaces(position) ;
+			}
+		}
+	} // end of method nextSymbol
+
+	/** Scans an operator or comment starting at i by running the transition table.
+
+	  @return the symbol of the operator, or 0 after a comment.
+	 */
+	private int scanOperator(int i)
+	{
+		int state = START ;
+		while (true)
+		{
+			char c ;
+			int k ;
+			if (i < limit)
+			{
+				c = text[i] ;
+				k = (c < 128) ? charClass[c] : slowClass(c) ;
+			}
+			else
+			{
+				c = '\n' ;
+				k = (i < end) ? NEWLINE : END ;
+			}
+
+			int action = transitions[(state * CLASSES) + k] ;
+			int argument = action & 0xff ;
+			switch (action >>> 8)
+			{
+			case SHIFT:
+				state = argument ;
+				i++ ;
+				// Everything in a comment up to the line terminator shifts back to COMMENT.
+				if (state == COMMENT)
+				{
+					while ((i < limit) && (text[i] != '\n') && (text[i] != '\r'))
+						i++ ;
+				}
+				break ;
+			case LINE:
+				lineNumber++ ;
+				position = after(i, c) ;
+				return 0 ;
+			case ACCEPT:
+				position = after(i, c) ;
+				return argument ;
+			default:
+				position = i ;
+				return argument ;
+			}
+		}
+	} // end of method scanOperator
+
+	/** @return The index of the first char from i on that is not a space or tab; indentation
+	  is the commonest run of chars between tokens, so it is skipped without the table. */
+	private int skipSpaces(int i)
+	{
+		while ((i < limit) && ((text[i] == ' ') || (text[i] == '\t')))
+			i++ ;
+		return i ;
+	} // end of method skipSpaces
+
+	/** Scans a word starting at i, which holds a letter, copying it into the token buffer as it goes. */
+	private int scanWord(int i)
+	{
+		char[] text = this.text ;
+		char[] word = currentText ;
+		int length = 0 ;
+		do
+		{
+			if (length == word.length)
+				word = currentText = Arrays.copyOf(word, length * 2) ;
+			word[length++] = text[i++] ;
+		}
+		while ((i < limit) && isLetterOrDigit(text[i])) ;
+		currentTextLength = length ;
+		position = i ;
+		return reservedWordSymbol(word, length) ;
+	} // end of method scanWord
+
+	/** Scans a number starting at i, which holds a digit, with an optional fraction. */
+	private int scanNumber(int i)
+	{
+		int start = i++ ;
+		while ((i < limit) && isDigit(text[i]))
+			i++ ;
+		if ((i < limit) && (text[i] == '.'))
+		{
+			i++ ;
+			while ((i < limit) && isDigit(text[i]))
+				i++ ;
+		}
+		position = i ;
+		copyText(start, i) ;
+		return Token.numberConstant ;
+	} // end of method scanNumber
+
+	/** Scans a string starting at i, which holds its opening quote.  A string left
+	  open runs to the end of the input, or to a NUL. */
+	private int scanString(int i)
+	{
+		int start = ++i ;
+		boolean folded = false ;
+		char c = 0 ;
+		while ((i < limit) && ((c = text[i]) != '"') && (c != '\000'))
+		{
+			folded |= (c == '\r') ;
+			i++ ;
+		}
+		if (folded)
+			copyFoldedText(start, i) ;
+		else
+			copyText(start, i) ;
+
+		if ((i < limit) && (c == '"'))
+			i++ ;
+		else
+		{
+			unterminated = true ;
+			if ((i == limit) && (end > limit))
+			{
+				// The '\n' supplied after an unterminated last line is part of the string.
+				appendText('\n') ;
+				i++ ;
+			}
+		}
+		position = i ;
+		return Token.stringConstant ;
+	} // end of method scanString
+
+	/** Copies text[from, to) into the token buffer. */
+	private void copyText(int from, int to)
+	{
+		int length = to - from ;
+		if (length > currentText.length)
+			currentText = Arrays.copyOf(currentText, Math.max(length, currentText.length * 2)) ;
+		System.arraycopy(text, from, currentText, 0, length) ;
+		currentTextLength = length ;
+	} // end of method copyText
+
+	/** Copies text[from, to) into the token buffer, folding line terminators to '\n'. */
+	private void copyFoldedText(int from, int to)
+	{
+		currentTextLength = 0 ;
+		for (int i = from; i < to; i = after(i, text[i]))
+			appendText((text[i] == '\r') ? '\n' : text[i]) ;
+	} // end of method copyFoldedText
+
+	private void appendText(char c)
+	{
+		if (currentTextLength == currentText.length)
+			currentText = Arrays.copyOf(currentText, currentTextLength * 2) ;
+		currentText[currentTextLength++] = c ;
+	} // end of method appendText
+
+	/** Returns the text of the token last scanned by nextSymbol, as LexicalAnalyser.tokenText does. */
+	String tokenText(int symbol)
+	{
+		if ((currentTextLength > 0) || (symbol == Token.stringConstant))
+			return new String(currentText, 0, currentTextLength) ;
+		else if ((symbol == Token.errorSymbol) || (symbol == Token.eofSymbol))
+			return "" ;
+		else
+			return Token.getName(symbol) ;
+	} // end of method tokenText
+
+	char[] tokenChars()
+	{
+		return currentText ;
+	} // end of method tokenChars
+
+	int tokenLength()
+	{
+		return currentTextLength ;
+	} // end of method tokenLength
+
+	int tokenStartOffset()
+	{
+		return tokenStart ;
+	} // end of method tokenStartOffset
+
+	int tokenEndOffset()
+	{
+		return Math.min(position, limit) ;
+	} // end of method tokenEndOffset
+
+	boolean unterminatedString()
+	{
+		return unterminated ;
+	} // end of method unterminatedString
+
+	int tokenLineNumber()
+	{
+		return lineNumber ;
+	} // end of method tokenLineNumber
+} // end of class DfaScanner
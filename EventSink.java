@@ -0,0 +1,28 @@
+
+/**
+ *
+ * Receives the stream of 312 events produced while a file is parsed.
+ *
+ * WriterEventSink writes them out as the familiar 312 text, NullEventSink
+ * discards them and CollectingEventSink keeps them as a list of lines.
+ *
+ **/
+
+public interface EventSink
+{
+    /** A terminal has been accepted. */
+    void terminal( int symbol, String text, int lineNumber );
+
+    /** A nonterminal has been entered. */
+    void beginNonterminal( String name );
+
+    /** A nonterminal has been completed. */
+    void endNonterminal( String name );
+
+    /** The whole file has been parsed successfully. */
+    void success();
+
+    /** Pushes out anything buffered; called once at the end of each file. */
+    void flush();
+
+} // end of interface EventSink
@@ -0,0 +1,14 @@
+/**
+ *
+ * A 312 program ready to run, however it is run: compiled to a class by
+ * BytecodeGenerator, or walked by ProgramInterpreter.
+ *
+ **/
+
+import java.io.IOException;
+
+public interface ExecutableProgram
+{
+    /** Runs the program from the start, flushing its output at the end. */
+    void run( ProgramRuntime runtime ) throws IOException;
+} // end of interface ExecutableProgram
@@ -0,0 +1,215 @@
+/**
+ *
+ * Checks that IncrementalParser agrees with a full parse after every edit:
+ * the tokens, every event, success, and the message of every error, on each
+ * program given.
+ *
+ * Usage: java IncrementalCrossCheck [-generate N] [-seed N] [-statements N] [-edits N] [file ...]
+ *
+ * checks the named files, or with none the programs in "Programs Folder", and
+ * then N valid programs from ProgramGenerator, seeded one after another from
+ * the given seed.  Each program gets the given number of random edits, seeded
+ * from the same seed: digits and spaces added where they keep the tokens
+ * whole, chars removed, fragments of programs inserted, and the last edit
+ * undone, more often when it broke the text, so that texts go from parsing
+ * to not parsing and back.  After each edit the incremental parse is
+ * compared with a full lex and parse of the new text.  Exits with status 1
+ * if they disagree after any edit.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IncrementalCrossCheck
+{
+    /** What edits insert: single chars that keep most tokens whole, and pieces of statements that do not. */
+    private static final String[] FRAGMENTS = {
+        "a", "x", "1", "7", " ", "\n", ";", ":=", "+", "*", "(", ")", "<", "\"", "--", "end", "begin", "then",
+        "x1 := 3", "y := a + b * 2", "; z := (a - 1) % 3", "call put(x)", "; call get(a, b)",
+        "if a < b then x := 1 else x := 2 end if", "while a > 0 loop a := a - 1 end loop",
+        "do a := a + 1 until a >= 10", "for (i := 0; i < 3; i := i + 1) do x := x + i end loop"
+    };
+
+    /** A Generate that collects the events, and keeps the messages of errors rather than printing them. */
+    private static class Recording extends Generate {
+        final CollectingEventSink events = new CollectingEventSink();
+
+        Recording() {
+            setSink( events );
+        }
+
+        @Override
+        public void reportError( Token token, String explanatoryMessage ) throws CompilationException {
+            throw new CompilationException( "Syntax Error on line " + token.lineNumber + ": " + explanatoryMessage );
+        }
+    }
+
+    private int programs, edits, partial, failures;
+    private long incrementalNanos, fullNanos;
+
+    /** Compares the incremental parser's tokens, events and errors with those of a full parse of its text. */
+    private String compare( IncrementalParser incremental, String name ) throws IOException {
+        char[] text = incremental.getText().toCharArray();
+        long start = System.nanoTime();
+        TokenBuffer tokens = new TokenBuffer();
+        tokens.fill( new LexicalAnalyser( text, 0, text.length, 0 ) );
+        Recording full = new Recording();
+        SyntaxAnalyser parser = new SyntaxAnalyser( tokens, name );
+        parser.parse( new PrintStream( OutputStream.nullOutputStream() ), full );
+        fullNanos += System.nanoTime() - start;
+
+        TokenBuffer held = incremental.getTokens();
+        if( held.size() != tokens.size() )
+            return "incremental holds " + held.size() + " tokens, full " + tokens.size();
+        for( int i = 0; i < tokens.size(); i++ ) {
+            if( held.symbol( i ) != tokens.symbol( i ) || held.line( i ) != tokens.line( i )
+                    || !held.text( i ).equals( tokens.text( i ) ) )
+                return "token " + i + ": incremental " + held.token( i ) + ", full " + tokens.token( i );
+        }
+
+        CollectingEventSink replayed = new CollectingEventSink();
+        incremental.replay( replayed );
+        List<String> a = replayed.getLines(), b = full.events.getLines();
+        int n = Math.min( a.size(), b.size() );
+        for( int i = 0; i < n; i++ ) {
+            if( !a.get( i ).equals( b.get( i ) ) )
+                return "event " + i + ": incremental '" + a.get( i ) + "', full '" + b.get( i ) + "'";
+        }
+        if( a.size() != b.size() )
+            return "incremental sent " + a.size() + " events, full " + b.size();
+
+        List<CompilationException> errorsA = incremental.getDiagnostics(), errorsB = parser.diagnostics;
+        if( errorsA.size() != errorsB.size() )
+            return "incremental found " + errorsA.size() + " errors, full " + errorsB.size();
+        for( int i = 0; i < errorsA.size(); i++ ) {
+            if( !errorsA.get( i ).getMessage().equals( errorsB.get( i ).getMessage() ) )
+                return "error " + i + ": incremental '" + errorsA.get( i ).getMessage() + "', full '"
+                        + errorsB.get( i ).getMessage() + "'";
+        }
+        return null;
+    }
+
+    /** @return The offset of the first digit or space at or after from, or -1 if there is none. */
+    private static int safeOffset( String text, int from ) {
+        for( int i = from; i < text.length(); i++ ) {
+            if( Character.isDigit( text.charAt( i ) ) || text.charAt( i ) == ' ' )
+                return i;
+        }
+        return -1;
+    }
+
+    /** Applies random edits to one program, comparing with a full parse after each, and reports the first difference. */
+    private void check( String name, String source, Random random, int editCount ) throws IOException {
+        programs++;
+        IncrementalParser incremental = new IncrementalParser( name, source );
+        String difference = compare( incremental, name );
+        String text = source;
+        // The edits that would undo those made so far, the latest last: an offset, then the chars to remove and insert.
+        ArrayList<Object[]> undo = new ArrayList<Object[]>();
+        for( int e = 0; e < editCount && difference == null; e++ ) {
+            int offset, removed;
+            String inserted;
+            // Most edits that break the text are undone, back to where it parsed, so that most edits are made to
+            // texts that parse.
+            if( !undo.isEmpty() && random.nextInt( 4 ) < (incremental.isValid() ? 1 : 3) ) {
+                Object[] last = undo.remove( undo.size() - 1 );
+                offset = (Integer) last[0];
+                removed = ((String) last[1]).length();
+                inserted = (String) last[2];
+            } else {
+                if( random.nextInt( 3 ) == 0 && (offset = safeOffset( text, random.nextInt( text.length() + 1 ) )) >= 0 ) {
+                    // A digit before a digit, or a space or newline before a space, leaves every token but one or two
+                    // as it was.
+                    removed = 0;
+                    inserted = Character.isDigit( text.charAt( offset ) ) ? String.valueOf( random.nextInt( 10 ) )
+                            : (random.nextBoolean() ? " " : "\n");
+                } else {
+                    offset = random.nextInt( text.length() + 1 );
+                    removed = (random.nextInt( 3 ) == 0) ? 0 : random.nextInt( Math.min( 12, text.length() - offset ) + 1 );
+                    inserted = (random.nextInt( 3 ) == 0) ? "" : FRAGMENTS[random.nextInt( FRAGMENTS.length )];
+                }
+                if( incremental.isValid() )
+                    undo.clear();
+                undo.add( new Object[] { offset, inserted, text.substring( offset, offset + removed ) } );
+            }
+            text = text.substring( 0, offset ) + inserted + text.substring( offset + removed );
+
+            long start = System.nanoTime();
+            incremental.edit( offset, removed, inserted );
+            incrementalNanos += System.nanoTime() - start;
+            edits++;
+            if( incremental.getReparsedCount() < incremental.getTokens().size() )
+                partial++;
+
+            if( !incremental.getText().equals( text ) )
+                difference = "edit " + e + ": the text is not the one edited";
+            else if( (difference = compare( incremental, name )) != null )
+                difference = "edit " + e + " (" + offset + "+" + removed + " '" + inserted + "'): " + difference;
+        }
+        if( difference != null ) {
+            failures++;
+            System.out.println( name + ": " + difference );
+        }
+    }
+
+    public static void main( String[] args ) throws IOException {
+        long seed = 312;
+        int generate = 0;
+        long statements = 200;
+        int editCount = 200;
+        IncrementalCrossCheck checker = new IncrementalCrossCheck();
+        boolean anyFiles = false;
+        Random random = new Random( seed );
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals( "-generate" ) && i + 1 < args.length ) {
+                generate = Integer.parseInt( args[++i] );
+            } else if( args[i].equals( "-seed" ) && i + 1 < args.length ) {
+                seed = Long.parseLong( args[++i] );
+                random = new Random( seed );
+            } else if( args[i].equals( "-statements" ) && i + 1 < args.length ) {
+                statements = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-edits" ) && i + 1 < args.length ) {
+                editCount = Integer.parseInt( args[++i] );
+            } else if( !args[i].startsWith( "-" ) ) {
+                File file = new File( args[i] );
+                checker.check( file.getPath(), read( file ), random, editCount );
+                anyFiles = true;
+            } else {
+                System.err.println( "usage: java IncrementalCrossCheck [-generate N] [-seed N] [-statements N] [-edits N] [file ...]" );
+                System.exit( 1 );
+            }
+        }
+
+        if( !anyFiles ) {
+            for( int n = 0; ; n++ ) {
+                File file = new File( "Programs Folder", "program" + n );
+                if( !file.exists() )
+                    break;
+                checker.check( file.getPath(), read( file ), random, editCount );
+            }
+        }
+
+        for( int i = 0; i < generate; i++ ) {
+            ProgramGenerator generator = new ProgramGenerator( seed + i );
+            generator.setErrors( 0 );
+            StringBuilder text = new StringBuilder();
+            generator.write( text, statements );
+            checker.check( "generated(seed " + (seed + i) + ")", text.toString(), random, editCount );
+        }
+
+        System.out.printf( "%d programs, %d edits (%d parsed in part), %d disagreements; incremental %.1f ms, full %.1f ms%n",
+                checker.programs, checker.edits, checker.partial, checker.failures, checker.incrementalNanos / 1e6,
+                checker.fullNanos / 1e6 );
+        if( checker.failures > 0 )
+            System.exit( 1 );
+    }
+
+    private static String read( File file ) throws IOException {
+        return new String( Files.readAllBytes( file.toPath() ), Charset.defaultCharset() );
+    }
+} // end of class IncrementalCrossCheck
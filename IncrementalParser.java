@@ -0,0 +1,401 @@
+/**
+ *
+ * Keeps the tokens and parse of one source text so that, after each edit to the
+ * text, only the tokens around the edit are lexed again and only the innermost
+ * Statement enclosing them is parsed again.  Anything the edit disturbs beyond
+ * a single statement, or a text that did not parse, is parsed again in full.
+ *
+ * The parse is held as a flat list of events: +kind for the start of a
+ * nonterminal, -kind for its end (kinds as in Nonterminal) and 0 for a
+ * terminal, the n'th of which is always the n'th token.  replay gives the
+ * same events a full parse of the current text would.
+ *
+ **/
+import java.io.* ;
+import java.nio.CharBuffer ;
+import java.nio.charset.Charset ;
+import java.nio.file.Files ;
+import java.nio.file.Paths ;
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.List ;
+
+public class IncrementalParser
+{
+	/** The marker for a terminal in the event list. */
+	private static final int TOKEN = 0 ;
+
+	/** The name errors are reported against. */
+	private final String fileName ;
+
+	/** The current source text. */
+	private char[] text ;
+	private int textLength ;
+
+	/** The tokens of the text, and for each the offset just past it in the text. */
+	private TokenBuffer tokens = new TokenBuffer() ;
+	private int[] ends = new int[256] ;
+
+	/** The parse events of the text, and for each token the index of its event. */
+	private int[] events = new int[1024] ;
+	private int eventCount ;
+	private int[] tokenEvents = new int[256] ;
+
+	/** Did the last parse succeed, and if not, why not? */
+	private boolean valid ;
+	private List<CompilationException> diagnostics = new ArrayList<CompilationException>() ;
+
+	/** Scratch space for the tokens lexed again after an edit. */
+	private final TokenBuffer fresh = new TokenBuffer() ;
+	private int[] freshEnds = new int[64] ;
+
+	/** What the last edit cost: the tokens lexed and the tokens parsed again. */
+	private int relexed, reparsed ;
+
+	/** Creates an incremental parser for the given text, and parses it in full.
+
+	  @param fileName The name to report errors against.
+	  @param source The source text.
+	  @throws IOException if the tokens cannot be read.
+	 */
+	public IncrementalParser(String fileName, CharSequence source) throws IOException
+	{
+		this.fileName = fileName ;
+		text = new char[Math.max(source.length() * 2, 256)] ;
+		textLength = source.length() ;
+		CharBuffer.wrap(source).get(text, 0, textLength) ;
+
+		LexicalAnalyser lex = new LexicalAnalyser(text, 0, textLength, 0) ;
+		int symbol ;
+		do
+		{
+			symbol = lex.nextSymbol() ;
+			tokens.add(symbol, lex.tokenChars(), 0, lex.tokenLength(), lex.tokenLineNumber()) ;
+			if (tokens.size() > ends.length)
+				ends = Arrays.copyOf(ends, ends.length * 2) ;
+			ends[tokens.size() - 1] = lex.tokenEndOffset() ;
+		}
+		while (symbol != Token.eofSymbol) ;
+		relexed = tokens.size() ;
+		parseAll() ;
+	} // end of constructor method
+
+	/** Reads a file, in the platform's default charset, into a new incremental parser.
+
+	  @param fileName The file to read.
+	  @throws IOException if the file cannot be read.
+	  @return A parser holding the file's text, already parsed.
+	 */
+	public static IncrementalParser read(String fileName) throws IOException
+	{
+		byte[] bytes = Files.readAllBytes(Paths.get(fileName)) ;
+		return new IncrementalParser(fileName, new String(bytes, Charset.defaultCharset())) ;
+	} // end of method read
+
+	/** Applies an edit to the text and brings the tokens and parse up to date.
+
+	  @param offset The index in the text of the first char to remove, or to insert before.
+	  @param removed The number of chars to remove.
+	  @param inserted The chars to insert in their place.
+	  @throws IOException if the tokens cannot be read.
+	 */
+	public void edit(int offset, int removed, CharSequence inserted) throws IOException
+	{
+		if ((offset < 0) || (removed < 0) || (offset + removed > textLength))
+			throw new IndexOutOfBoundsException("edit " + offset + "+" + removed + " of " + textLength) ;
+		int oldLength = textLength ;
+		int delta = inserted.length() - removed ;
+		if (textLength + delta > text.length)
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + delta)) ;
+		System.arraycopy(text, offset + removed, text, offset + inserted.length(), textLength - offset - removed) ;
+		CharBuffer.wrap(inserted).get(text, offset, inserted.length()) ;
+		textLength += delta ;
+
+		// The first token the edit can have changed is the first whose lookahead it touched;
+		// lexing starts again where the one before it stopped.
+		int count = tokens.size() ;
+		int first = Arrays.binarySearch(ends, 0, count - 1, offset) ;
+		if (first < 0)
+			first = -first - 1 ;
+		else
+			while ((first > 0) && (ends[first - 1] == offset))
+				first-- ;
+		int restart = (first == 0) ? 0 : ends[first - 1] ;
+		int restartLine = (first == 0) ? 0 : tokens.line(first - 1) ;
+
+		// Lex until the scanner is back in step with the old tokens: at the same place
+		// in the unchanged text after the edit, about to read the same char.
+		LexicalAnalyser lex = new LexicalAnalyser(text, restart, textLength, restartLine) ;
+		fresh.clear() ;
+		int last = count - 1 ;
+		int lineDelta = 0 ;
+		int old = first ;
+		boolean resynced = false ;
+		while (!resynced)
+		{
+			int symbol = lex.nextSymbol() ;
+			fresh.add(symbol, lex.tokenChars(), 0, lex.tokenLength(), lex.tokenLineNumber()) ;
+			if (fresh.size() > freshEnds.length)
+				freshEnds = Arrays.copyOf(freshEnds, freshEnds.length * 2) ;
+			int end = lex.tokenEndOffset() ;
+			freshEnds[fresh.size() - 1] = end ;
+			if (symbol == Token.eofSymbol)
+				break ;
+
+			int oldEnd = end - delta ;
+			if ((oldEnd >= offset + removed) && (oldEnd < oldLength))
+			{
+				while ((old < count - 1) && (ends[old] < oldEnd))
+					old++ ;
+				if (ends[old] == oldEnd)
+				{
+					resynced = true ;
+					last = old ;
+					lineDelta = lex.tokenLineNumber() - tokens.line(old) ;
+				}
+			}
+		}
+
+		// Splice the new tokens in place of the old ones from first to last.
+		int n = fresh.size() ;
+		int tail = count - last - 1 ;
+		if (first + n + tail > ends.length)
+			ends = Arrays.copyOf(ends, Math.max(ends.length * 2, first + n + tail)) ;
+		System.arraycopy(ends, last + 1, ends, first + n, tail) ;
+		for (int i = first + n; i < first + n + tail; i++)
+			ends[i] += delta ;
+		System.arraycopy(freshEnds, 0, ends, first, n) ;
+		tokens.replace(first, last + 1, fresh, lineDelta) ;
+		relexed = n ;
+
+		if (!valid || !resynced || !reparseStatement(first, last + 1, first + n))
+			parseAll() ;
+	} // end of method edit
+
+	/** Parses the innermost statement holding every changed token again, or if
+	  that no longer parses to the same extent, the next one out, and so on.
+	  The search works outwards from the first changed token, so it costs no
+	  more than the size of the statements it looks at.
+
+	  @param first The index of the first changed token.
+	  @param oldLimit The index just past the last changed token, before the edit.
+	  @param newLimit The index just past the last changed token, after it.
+	  @throws IOException if the tokens cannot be read.
+	  @return Whether a statement was parsed again successfully.
+	 */
+	private boolean reparseStatement(int first, int oldLimit, int newLimit) throws IOException
+	{
+		int statement = Nonterminal.statement ;
+		// Events before back, and from forward on, are yet to be looked at; the token
+		// counts are the index of the next token after each point.
+		int back = tokenEvents[first] - 1, backToken = first ;
+		int forward = tokenEvents[first], forwardToken = first ;
+		while (true)
+		{
+			int depth = 0 ;
+			for (; back >= 0; back--)
+			{
+				int event = events[back] ;
+				if (event == TOKEN)
+					backToken-- ;
+				else if (event == -statement)
+					depth++ ;
+				else if ((event == statement) && (depth-- == 0))
+					break ;
+			}
+			if (back < 0)
+				return false ;
+
+			depth = 0 ;
+			for (; forward < eventCount; forward++)
+			{
+				int event = events[forward] ;
+				if (event == TOKEN)
+					forwardToken++ ;
+				else if (event == statement)
+					depth++ ;
+				else if ((event == -statement) && (depth-- == 0))
+					break ;
+			}
+			if ((forwardToken >= oldLimit) &&
+					reparse(backToken, forwardToken, newLimit - oldLimit, back, forward + 1))
+				return true ;
+			back-- ;
+			forward++ ;
+		}
+	} // end of method reparseStatement
+
+	/** Parses the statement at the given token again, and if it still ends where
+	  it should, puts its events in place of the old ones.
+
+	  @param start The index of the statement's first token.
+	  @param limit The index just past its last token, before the edit.
+	  @param tokenDelta The number of tokens the edit added.
+	  @param eventStart The index of the statement's first event.
+	  @param eventLimit The index just past its last event.
+	  @return Whether the statement parsed, to the right length.
+	 */
+	private boolean reparse(int start, int limit, int tokenDelta, int eventStart, int eventLimit) throws IOException
+	{
+		Recorder recorder = new Recorder() ;
+		SyntaxAnalyser syn = new SyntaxAnalyser(tokens, fileName) ;
+		syn.lex = tokens.cursor(start) ;
+		try
+		{
+			syn.parseStatement(recorder) ;
+		}
+		catch (CompilationException e)
+		{
+			return false ;
+		}
+		if (recorder.terminals != limit + tokenDelta - start)
+			return false ;
+
+		int eventDelta = recorder.count - (eventLimit - eventStart) ;
+		int tail = eventCount - eventLimit ;
+		if (eventCount + eventDelta > events.length)
+			events = Arrays.copyOf(events, Math.max(events.length * 2, eventCount + eventDelta)) ;
+		if (eventDelta != 0)
+			System.arraycopy(events, eventLimit, events, eventLimit + eventDelta, tail) ;
+		System.arraycopy(recorder.events, 0, events, eventStart, recorder.count) ;
+		eventCount += eventDelta ;
+
+		int count = tokens.size() ;
+		if (count > tokenEvents.length)
+			tokenEvents = Arrays.copyOf(tokenEvents, Math.max(tokenEvents.length * 2, count)) ;
+		if ((tokenDelta != 0) || (eventDelta != 0))
+		{
+			System.arraycopy(tokenEvents, limit, tokenEvents, limit + tokenDelta, count - limit - tokenDelta) ;
+			for (int i = limit + tokenDelta; i < count; i++)
+				tokenEvents[i] += eventDelta ;
+		}
+		for (int i = 0; i < recorder.terminals; i++)
+			tokenEvents[start + i] = eventStart + recorder.tokenEvents[i] ;
+		reparsed = recorder.terminals ;
+		return true ;
+	} // end of method reparse
+
+	/** Parses the whole token stream again. */
+	private void parseAll() throws IOException
+	{
+		Recorder recorder = new Recorder() ;
+		SyntaxAnalyser syn = new SyntaxAnalyser(tokens, fileName) ;
+		syn.parse(new PrintStream(OutputStream.nullOutputStream()), recorder) ;
+		events = recorder.events ;
+		eventCount = recorder.count ;
+		tokenEvents = recorder.tokenEvents ;
+		valid = recorder.succeeded ;
+		diagnostics = new ArrayList<CompilationException>(syn.diagnostics) ;
+		reparsed = tokens.size() ;
+	} // end of method parseAll
+
+	/** Sends the events of the current parse to a sink, as a full parse of the
+	  current text would: with success() at the end only if it parsed. */
+	public void replay(EventSink sink)
+	{
+		int token = 0 ;
+		for (int e = 0; e < eventCount; e++)
+		{
+			int event = events[e] ;
+			if (event == TOKEN)
+			{
+				sink.terminal(tokens.symbol(token), tokens.text(token), tokens.line(token)) ;
+				token++ ;
+			}
+			else if (event > 0)
+				sink.beginNonterminal(Nonterminal.getName(event)) ;
+			else
+				sink.endNonterminal(Nonterminal.getName(-event)) ;
+		}
+		if (valid)
+			sink.success() ;
+	} // end of method replay
+
+	/** @return The current source text. */
+	public String getText()
+	{
+		return new String(text, 0, textLength) ;
+	} // end of method getText
+
+	/** @return The tokens of the current text. */
+	public TokenBuffer getTokens()
+	{
+		return tokens ;
+	} // end of method getTokens
+
+	/** @return Whether the current text parsed without error. */
+	public boolean isValid()
+	{
+		return valid ;
+	} // end of method isValid
+
+	/** @return The syntax errors found in the current text. */
+	public List<CompilationException> getDiagnostics()
+	{
+		return diagnostics ;
+	} // end of method getDiagnostics
+
+	/** @return The number of tokens lexed by the last edit, or by the first parse. */
+	public int getRelexedCount()
+	{
+		return relexed ;
+	} // end of method getRelexedCount
+
+	/** @return The number of tokens parsed by the last edit, or by the first parse. */
+	public int getReparsedCount()
+	{
+		return reparsed ;
+	} // end of method getReparsedCount
+
+	/** Records parse events in the form held by IncrementalParser.  Errors are
+	  thrown as usual but not printed, since a failed statement may only mean
+	  that more than one statement has to be parsed again. */
+	private static class Recorder extends Generate
+	{
+		private int[] events = new int[256] ;
+		private int count ;
+		private int[] tokenEvents = new int[64] ;
+		private int terminals ;
+		private boolean succeeded ;
+
+		Recorder()
+		{
+			setSink(new NullEventSink()) ;
+		} // end of constructor method
+
+		private void record(int event)
+		{
+			if (count == events.length)
+				events = Arrays.copyOf(events, count * 2) ;
+			events[count++] = event ;
+		} // end of method record
+
+		public void insertTerminal(Token token)
+		{
+			if (terminals == tokenEvents.length)
+				tokenEvents = Arrays.copyOf(tokenEvents, terminals * 2) ;
+			tokenEvents[terminals++] = count ;
+			record(TOKEN) ;
+		} // end of method insertTerminal
+
+		public void commenceNonterminal(String name)
+		{
+			record(Nonterminal.getId(name)) ;
+		} // end of method commenceNonterminal
+
+		public void finishNonterminal(String name)
+		{
+			record(-Nonterminal.getId(name)) ;
+		} // end of method finishNonterminal
+
+		public void reportSuccess()
+		{
+			succeeded = true ;
+		} // end of method reportSuccess
+
+		public void reportError(Token token, String explanatoryMessage) throws CompilationException
+		{
+			throw new CompilationException("Syntax Error on line " + token.lineNumber + ": " + explanatoryMessage) ;
+		} // end of method reportError
+	} // end of class Recorder
+} // end of class IncrementalParser
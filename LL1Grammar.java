@@ -0,0 +1,319 @@
+/**
+ *
+ * An LL(1) grammar, declared rule by rule, and the parse table built from it
+ * for TableDrivenParser.
+ *
+ * Each rule has a name (lower case, so that it never clashes with the names
+ * of the nonterminals reported to the code generator) and a list of
+ * alternatives.  The right hand side of an alternative is a space separated
+ * list of:
+ *
+ *     begin, ;, IDENTIFIER ...   terminals, by their names in Token
+ *     statement, factor ...      other rules
+ *     <Name                      commenceNonterminal(Name)
+ *     Name>                      finishNonterminal(Name)
+ *
+ * so the events a rule sends are written out where they happen, and a rule
+ * that sends none is invisible to the code generator.  An alternative is
+ * chosen by the FIRST set of its right hand side, or by an explicit list of
+ * lookahead terminals (needed for empty alternatives); any token chosen by
+ * no alternative takes the rule's default, which is either one of its
+ * alternatives or an error message.  Choosing a default rather than failing
+ * straight away is what a hand written parser does with a final else, and
+ * leaves the error to be found, with the same message, further on.
+ *
+ * A rule may also name a frame, the nonterminal it stands for in the chain
+ * of frames of a CompilationException.
+ *
+ * Parse table entries are production indexes, or for errors -1 - the index
+ * of the message.  Right hand sides are encoded as ints (see the kind
+ * constants) and stored reversed, ready to be pushed onto the parse stack.
+ *
+ **/
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.HashMap ;
+import java.util.List ;
+
+public class LL1Grammar
+{
+	/** The kinds of stack entry, in the top bits of each; the low bits are a symbol, rule or nonterminal id. */
+	public static final int TERMINAL = 0,
+			RULE = 1,
+			BEGIN = 2,
+			END = 3,
+			FRAME = 4 ;
+	public static final int KIND_SHIFT = 16 ;
+	public static final int ID_MASK = (1 << KIND_SHIFT) - 1 ;
+
+	/** The number of columns in the parse table: every Token symbol. */
+	public static final int SYMBOLS = 39 ;
+
+	/** One rule as declared. */
+	public static class Rule
+	{
+		final String name ;
+		final int index ;
+		final int frame ;
+		final List<String> alternatives = new ArrayList<String>() ;
+		final List<String> lookaheads = new ArrayList<String>() ;
+		/** The alternative taken by default, -1 for an error, or -2 if not yet declared. */
+		int otherwise = -2 ;
+		String errorMessage ;
+
+		Rule(String name, int index, int frame)
+		{
+			this.name = name ;
+			this.index = index ;
+			this.frame = frame ;
+		} // end of constructor method
+
+		/** Adds an alternative chosen by the FIRST set of its right hand side. */
+		public Rule alt(String rhs)
+		{
+			return on(null, rhs) ;
+		} // end of method alt
+
+		/** Adds an alternative chosen by the given space separated terminal names. */
+		public Rule on(String lookahead, String rhs)
+		{
+			alternatives.add(rhs) ;
+			lookaheads.add(lookahead) ;
+			return this ;
+		} // end of method on
+
+		/** Adds an alternative taken for every token no other alternative is chosen by. */
+		public Rule otherwise(String rhs)
+		{
+			otherwise = alternatives.size() ;
+			return on("", rhs) ;
+		} // end of method otherwise
+
+		/** Reports a syntax error for every token no alternative is chosen by.  A
+		  $ in the message stands for the text of the token found. */
+		public Rule error(String message)
+		{
+			otherwise = -1 ;
+			errorMessage = message ;
+			return this ;
+		} // end of method error
+	} // end of class Rule
+
+	private final List<Rule> rules = new ArrayList<Rule>() ;
+	private final HashMap<String, Rule> rulesByName = new HashMap<String, Rule>() ;
+
+	/** Built by build(). */
+	private int[][] table ;
+	private int[][] productions ;
+	private int[] frames ;
+	private String[] messages ;
+
+	/** Declares a rule, which stands for no frame. */
+	public Rule rule(String name)
+	{
+		return rule(name, null) ;
+	} // end of method rule
+
+	/** Declares a rule standing for the named frame. */
+	public Rule rule(String name, String frame)
+	{
+		if (rulesByName.containsKey(name))
+			throw new IllegalArgumentException("rule " + name + " declared twice") ;
+		int frameId = 0 ;
+		if (frame != null && (frameId = Nonterminal.getId(frame)) == 0)
+			throw new IllegalArgumentException("unknown frame " + frame) ;
+		Rule rule = new Rule(name, rules.size(), frameId) ;
+		rules.add(rule) ;
+		rulesByName.put(name, rule) ;
+		return rule ;
+	} // end of method rule
+
+	/** Declares a rule with a single alternative, taken whatever the next token. */
+	public Rule rule(String name, String frame, String rhs)
+	{
+		return rule(name, frame).otherwise(rhs) ;
+	} // end of method rule
+
+	/** @return The index of the named rule. */
+	public int ruleIndex(String name)
+	{
+		Rule rule = rulesByName.get(name) ;
+		if (rule == null)
+			throw new IllegalArgumentException("no rule " + name) ;
+		return rule.index ;
+	} // end of method ruleIndex
+
+	/** Encodes one item of a right hand side.  An item such as <= is a terminal, not a marker,
+	  because = is not the name of a nonterminal. */
+	private int encode(String item, String ruleName)
+	{
+		if (item.startsWith("<") && Nonterminal.getId(item.substring(1)) != 0)
+			return (BEGIN << KIND_SHIFT) | Nonterminal.getId(item.substring(1)) ;
+		if (item.endsWith(">") && Nonterminal.getId(item.substring(0, item.length() - 1)) != 0)
+			return (END << KIND_SHIFT) | Nonterminal.getId(item.substring(0, item.length() - 1)) ;
+		Rule rule = rulesByName.get(item) ;
+		if (rule != null)
+			return (RULE << KIND_SHIFT) | rule.index ;
+		return (TERMINAL << KIND_SHIFT) | terminal(item, ruleName) ;
+	} // end of method encode
+
+	private static int terminal(String name, String ruleName)
+	{
+		for (int symbol = 1; symbol < SYMBOLS; symbol++)
+			if (Token.getName(symbol).equals(name))
+				return symbol ;
+		throw new IllegalArgumentException("unknown terminal or rule " + name + " in rule " + ruleName) ;
+	} // end of method terminal
+
+	private int[] encodeAll(String rhs, String ruleName)
+	{
+		String[] items = rhs.trim().isEmpty() ? new String[0] : rhs.trim().split("\\s+") ;
+		int[] encoded = new int[items.length] ;
+		for (int i = 0; i < items.length; i++)
+			encoded[i] = encode(items[i], ruleName) ;
+		return encoded ;
+	} // end of method encodeAll
+
+	/** Computes FIRST sets and builds the parse table, checking that the grammar is LL(1).
+
+	  @throws IllegalStateException if two alternatives of a rule can be chosen by the same token.
+	  @return this grammar.
+	 */
+	public LL1Grammar build()
+	{
+		int n = rules.size() ;
+		int[][][] encoded = new int[n][][] ;
+		for (Rule rule : rules)
+		{
+			if (rule.otherwise == -2)
+				throw new IllegalStateException("rule " + rule.name + " has no default") ;
+			encoded[rule.index] = new int[rule.alternatives.size()][] ;
+			for (int a = 0; a < rule.alternatives.size(); a++)
+				encoded[rule.index][a] = encodeAll(rule.alternatives.get(a), rule.name) ;
+		}
+
+		// FIRST sets and nullability of the rules, to a fixed point.
+		boolean[][] first = new boolean[n][SYMBOLS] ;
+		boolean[] nullable = new boolean[n] ;
+		boolean changed = true ;
+		while (changed)
+		{
+			changed = false ;
+			for (Rule rule : rules)
+				for (int[] rhs : encoded[rule.index])
+				{
+					boolean[] f = new boolean[SYMBOLS] ;
+					boolean n0 = firstOf(rhs, first, nullable, f) ;
+					for (int s = 0; s < SYMBOLS; s++)
+						if (f[s] && !first[rule.index][s])
+							changed = first[rule.index][s] = true ;
+					if (n0 && !nullable[rule.index])
+						changed = nullable[rule.index] = true ;
+				}
+		}
+
+		ArrayList<int[]> productionList = new ArrayList<int[]>() ;
+		ArrayList<String> messageList = new ArrayList<String>() ;
+		table = new int[n][SYMBOLS] ;
+		frames = new int[n] ;
+		for (Rule rule : rules)
+		{
+			int[] row = table[rule.index] ;
+			int base = productionList.size() ;
+			for (int[] rhs : encoded[rule.index])
+			{
+				int[] reversed = new int[rhs.length] ;
+				for (int i = 0; i < rhs.length; i++)
+					reversed[i] = rhs[rhs.length - 1 - i] ;
+				productionList.add(reversed) ;
+			}
+
+			int fallback ;
+			if (rule.otherwise >= 0)
+				fallback = base + rule.otherwise ;
+			else
+			{
+				fallback = -1 - messageList.size() ;
+				messageList.add(rule.errorMessage) ;
+			}
+			Arrays.fill(row, Integer.MIN_VALUE) ;
+
+			for (int a = 0; a < rule.alternatives.size(); a++)
+			{
+				if (a == rule.otherwise)
+					continue ;
+				boolean[] chosenBy = new boolean[SYMBOLS] ;
+				String lookahead = rule.lookaheads.get(a) ;
+				if (lookahead != null)
+				{
+					for (String t : lookahead.trim().split("\\s+"))
+						chosenBy[terminal(t, rule.name)] = true ;
+				}
+				else if (firstOf(encoded[rule.index][a], first, nullable, chosenBy))
+					throw new IllegalStateException("rule " + rule.name + " has an empty alternative with no lookahead") ;
+				for (int s = 0; s < SYMBOLS; s++)
+					if (chosenBy[s])
+					{
+						if (row[s] != Integer.MIN_VALUE)
+							throw new IllegalStateException("rule " + rule.name + " is not LL(1): two alternatives start with "
+									+ Token.getName(s)) ;
+						row[s] = base + a ;
+					}
+			}
+			for (int s = 0; s < SYMBOLS; s++)
+				if (row[s] == Integer.MIN_VALUE)
+					row[s] = fallback ;
+			frames[rule.index] = rule.frame ;
+		}
+		productions = productionList.toArray(new int[0][]) ;
+		messages = messageList.toArray(new String[0]) ;
+		return this ;
+	} // end of method build
+
+	/** Adds the FIRST set of a right hand side to f.  @return Whether it can derive nothing at all. */
+	private static boolean firstOf(int[] rhs, boolean[][] first, boolean[] nullable, boolean[] f)
+	{
+		for (int item : rhs)
+		{
+			int kind = item >>> KIND_SHIFT ;
+			int id = item & ID_MASK ;
+			if (kind == TERMINAL)
+			{
+				f[id] = true ;
+				return false ;
+			}
+			if (kind == RULE)
+			{
+				for (int s = 0; s < SYMBOLS; s++)
+					f[s] |= first[id][s] ;
+				if (!nullable[id])
+					return false ;
+			}
+		}
+		return true ;
+	} // end of method firstOf
+
+	/** @return The parse table, indexed by rule and then by token symbol. */
+	public int[][] table()
+	{
+		return table ;
+	} // end of method table
+
+	/** @return Every right hand side, reversed and encoded, indexed by table entries. */
+	public int[][] productions()
+	{
+		return productions ;
+	} // end of method productions
+
+	/** @return For each rule, the id of the nonterminal it is a frame for, or 0. */
+	public int[] frames()
+	{
+		return frames ;
+	} // end of method frames
+
+	/** @return The error messages, indexed by -1 - table entry. */
+	public String[] messages()
+	{
+		return messages ;
+	} // end of method messages
+} // end of class LL1Grammar
@@ -0,0 +1,120 @@
+/**
+ *
+ * A histogram of latencies in nanoseconds, laid out as HdrHistogram lays out
+ * its counts: every power of two range is split into the same number of
+ * equal buckets, so each bucket is at most 1/32 of its values wide and any
+ * value from 0 to Long.MAX_VALUE is recorded to within about 3% in a fixed
+ * array of counts.  Recording is a few shifts and an increment; percentiles
+ * are read back by walking the buckets.
+ *
+ **/
+
+import java.io.PrintStream;
+
+public class LatencyHistogram
+{
+    /** Each power of two range is split into 1 << SUB_BUCKET_BITS buckets. */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+    private long count;
+    private long max;
+    private double sum, sumOfSquares;
+
+    /** @return The bucket a value falls in. */
+    private static int bucket( long value ) {
+        if( value < 2 * SUB_BUCKETS )
+            return (int) value;
+        int shift = (63 - Long.numberOfLeadingZeros( value )) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /** @return The largest value that falls in a bucket. */
+    private static long highestValue( int bucket ) {
+        if( bucket < 2 * SUB_BUCKETS )
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket - shift * SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /** Records one value; negative values count as 0. */
+    public void record( long value ) {
+        value = Math.max( value, 0 );
+        counts[bucket( value )]++;
+        count++;
+        sum += value;
+        sumOfSquares += (double) value * value;
+        if( value > max )
+            max = value;
+    }
+
+    /** Adds every value recorded in another histogram to this one. */
+    public void add( LatencyHistogram other ) {
+        for( int i = 0; i < counts.length; i++ )
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        max = Math.max( max, other.max );
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return (count == 0) ? 0 : sum / count;
+    }
+
+    /** @return The value that the given percentage of the recorded values are at or below, to within
+      the width of its bucket, or 0 if nothing has been recorded. */
+    public long valueAtPercentile( double percentile ) {
+        if( count == 0 )
+            return 0;
+        long wanted = Math.max( 1, (long) Math.ceil( Math.min( percentile, 100 ) / 100 * count ) );
+        long seen = 0;
+        for( int i = 0; i < counts.length; i++ ) {
+            seen += counts[i];
+            if( seen >= wanted )
+                return Math.min( highestValue( i ), max );
+        }
+        return max;
+    }
+
+    /** Writes the percentile distribution in HdrHistogram's text format, as read by its plotting tools:
+      five rows for each halving of the distance to 100%, with the values divided by scale.
+
+      @param out Where to write the table.
+      @param scale The number of nanoseconds to a unit of the table, such as 1000.0 for microseconds.
+    */
+    public void writePercentiles( PrintStream out, double scale ) {
+        out.printf( "%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)" );
+        long seen = 0;
+        int i = 0;
+        for( int halving = 0; seen < count && halving < 62; halving++ ) {
+            double half = Math.pow( 0.5, halving + 1 );
+            for( int tick = 0; tick < 5 && seen < count; tick++ ) {
+                double fraction = 1 - 2 * half + half * tick / 5;
+                long wanted = Math.max( 1, (long) Math.ceil( fraction * count ) );
+                while( seen < wanted )
+                    seen += counts[i++];
+                double percentile = (double) seen / count;
+                double value = Math.min( highestValue( i - 1 ), max ) / scale;
+                if( seen < count )
+                    out.printf( "%12.3f %2.12f %10d %14.2f%n", value, percentile, seen, 1 / (1 - percentile) );
+                else
+                    out.printf( "%12.3f %2.12f %10d%n", value, percentile, seen );
+            }
+        }
+        double deviation = (count == 0) ? 0 : Math.sqrt( Math.max( 0, sumOfSquares / count - mean() * mean() ) );
+        out.printf( "#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", mean() / scale, deviation / scale );
+        out.printf( "#[Max     = %12.3f, Total count    = %12d]%n", max / scale, count );
+        out.printf( "#[Buckets = %12d, SubBuckets     = %12d]%n", counts.length / SUB_BUCKETS, SUB_BUCKETS );
+    }
+} // end of class LatencyHistogram
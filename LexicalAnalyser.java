@@ -1,342 +1,583 @@
-
-/**
- *
- * lexical analyser for 312 exercise.
- * 
- * This class has been provided to students
- *
- * Author: Roger Garside, John Mariani, John Vidler, Paul Rayson, Barry Porter
- *
- *
- **/
-import java.io.* ;
-
-public class LexicalAnalyser
-{
-
-	/** Represents a textual and symbolic reserved word. */
-	class ReservedWord
-	{
-		/** The text used in source. */
-		public String text ;
-		/** The type (one of the class constants from Token) of this word. */
-		public int symbol ;
-
-		/** Creates a new reserved word from the observed text and a given type.
-
-		  @param t The text as seen in source.
-		  @param s The type of this word, typically a class constant from Token
-		 */
-		public ReservedWord(String t, int s)
-		{
-			text = t ;
-			symbol = s ;
-		} // end of constructor method
-	} // end of class ReservedWord
-
-	/** The maximum number of identifiers to hold during compilation. */
-	private static final int maxTableSize = 200 ;
-	/** The EOF character. */
-	private static final char EOF = '\000' ;
-
-	/** A list of symbols. */
-	private ReservedWord[] symbols = new ReservedWord[maxTableSize] ;
-	/** Holds the current number of symbols held. */
-	private int noOfSymbols ;
-
-	/** Is this the first time we have been called? */
-	private boolean firstCall ;
-
-	/** An input stream from the filename mentioned above. */
-	private BufferedReader sourceFile ;
-
-	/* State-change character and offset counts. */
-	private char currentCharacter ;
-	private String currentLine ;
-	private int currentOffset,
-			currentLineNumber ;
-
-	/* input buffer */
-	private StringBuffer currentText = new StringBuffer() ;
-
-	/** Adds a reserved word to the internal symbol table.
-
-	  @param t The text as seen in source.
-	  @param s The type of this word, typically a class constant from Token
-	 */
-	private void setReservedWord(String t, int s)
-	{
-		symbols[noOfSymbols] = new ReservedWord(t, s) ;
-		noOfSymbols++ ;
-	} // end of method setReservedWord
-
-
-	/** Sets all initial variables and adds the language's reserved words to the symbol table. */
-	private void initialiseScanner()
-	{
-		noOfSymbols = 0 ;
-		setReservedWord("begin", Token.beginSymbol) ;
-		setReservedWord("call", Token.callSymbol) ;
-		setReservedWord("do", Token.doSymbol) ;
-		setReservedWord("else", Token.elseSymbol) ;
-		setReservedWord("end", Token.endSymbol) ;
-		setReservedWord("float", Token.floatSymbol) ;
-		setReservedWord("if", Token.ifSymbol) ;
-		setReservedWord("integer", Token.integerSymbol) ;
-		setReservedWord("is", Token.isSymbol) ;
-		setReservedWord("loop", Token.loopSymbol) ;
-		setReservedWord("procedure", Token.procedureSymbol) ;
-		setReservedWord("string", Token.stringSymbol) ;
-		setReservedWord("then", Token.thenSymbol) ;
-		setReservedWord("until", Token.untilSymbol) ;
-		setReservedWord("while", Token.whileSymbol) ;
-		setReservedWord("for", Token.forSymbol) ;
-	} // end of method initialiseScanner
-
-
-	/** Creates a new LexicalAnalyser which will run over the given file.
-
-	  @param fileName The file to read.
-	  @throws IOException if any read errors occur during parsing.
-	 */
-	public LexicalAnalyser(String fileName) throws IOException
-	{
-		initialiseScanner() ;
-
-		sourceFile = new BufferedReader(new FileReader(fileName)) ;
-		currentLine = sourceFile.readLine() ;
-		currentOffset = 0 ;
-		firstCall = true ;
-		currentLineNumber = 0 ;
-	} // end of constructor method
-
-	/** Loads the next character of the input into the buffer.
-
-	  @throws IOException in the event that something like velociraptor attack happens to the input stream.
-	 */
-	private void getNextCharacter() throws IOException
-	{
-		if (currentLine == null)
-			currentCharacter = EOF ;
-		else if (currentOffset >= currentLine.length())
-		{
-			currentLine = sourceFile.readLine() ;
-			currentOffset = 0 ;
-			currentCharacter = '\n' ;
-		}
-		else
-		{
-			currentCharacter = currentLine.charAt(currentOffset) ;
-			currentOffset++ ;
-		}
-	} // end of method getNextCharacter
-
-	/** Returns the next token from the source file.  Repeatedly calling this
-	  will return each token in the file, and eventually null.
-
-	  @throws IOException in the event that the file cannot be read.
-	  @return the next token from the source file.
-	 */
-	public Token getNextToken() throws IOException
-	{
-		if (firstCall)
-		{
-			getNextCharacter() ;
-			firstCall = false ;
-		}
-
-		while ((currentCharacter == ' ') || (currentCharacter == '\t') ||
-				(currentCharacter == '\n') || (currentCharacter == '-'))
-		{
-			if (currentCharacter == '-')
-			{
-				getNextCharacter() ;
-				if (currentCharacter == '-')
-				{
-					while (currentCharacter != '\n')
-						getNextCharacter() ;
-				}
-				else
-					return new Token(Token.minusSymbol, "-", currentLineNumber) ;
-			}
-
-			if (currentCharacter == '\n')
-				currentLineNumber++ ;
-			getNextCharacter() ;
-		}
-
-		if (Character.isLetter(currentCharacter))
-		{
-			currentText.setLength(0) ;
-			while ((Character.isLetter(currentCharacter)) ||
-					(Character.isDigit(currentCharacter)))
-			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-			}
-
-			int i = 0 ;
-			String t = (new String(currentText)).toLowerCase() ;
-			while ((i < noOfSymbols) &&
-					(!t.equals(symbols[i].text)))
-				i++ ;
-
-			if (i < noOfSymbols)
-				return new Token(symbols[i].symbol, currentText, currentLineNumber) ;
-			else
-				return new Token(Token.identifier, currentText, currentLineNumber) ;
-		}
-		else if (Character.isDigit(currentCharacter))
-		{
-			currentText.setLength(0);
-			while (Character.isDigit(currentCharacter))
-			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-			}
-			if (currentCharacter == '.')
-			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-				while (Character.isDigit(currentCharacter))
-				{
-					currentText.append(currentCharacter) ;
-					getNextCharacter() ;
-				}
-			}
-			return new Token(Token.numberConstant, currentText, currentLineNumber) ;
-		}
-		else if (currentCharacter == '"')
-		{
-			getNextCharacter() ;
-			currentText.setLength(0) ;
-			while (currentCharacter != '"')
-			{
-				currentText.append(currentCharacter) ;
-				getNextCharacter() ;
-			}
-			getNextCharacter() ;
-			return new Token(Token.stringConstant, currentText, currentLineNumber) ;
-		}
-		else if (currentCharacter == ':')
-		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
-			{
-				getNextCharacter() ;
-				return new Token(Token.becomesSymbol, ":=", currentLineNumber) ;
-			}
-			else
-				return new Token(Token.colonSymbol, ":", currentLineNumber) ;
-		}
-		else if (currentCharacter == '>')
-		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
-			{
-				getNextCharacter() ;
-				return new Token(Token.greaterEqualSymbol, ">=", currentLineNumber) ;
-			}
-			else
-				return new Token(Token.greaterThanSymbol, ">", currentLineNumber) ;
-		}
-		else if (currentCharacter == '<')
-		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
-			{
-				getNextCharacter() ;
-				return new Token(Token.lessEqualSymbol, "<=", currentLineNumber) ;
-			}
-			else
-				return new Token(Token.lessThanSymbol, "<", currentLineNumber) ;
-		}
-		else if (currentCharacter == '!')
-		{
-			getNextCharacter() ;
-			if (currentCharacter == '=')
-			{
-				getNextCharacter() ;
-				return new Token(Token.notEqualSymbol, "!=", currentLineNumber) ;
-			}
-			else
-			{
-			currentText = new StringBuffer(currentCharacter) ;
-			getNextCharacter() ;
-			return new Token(Token.errorSymbol, currentText, currentLineNumber) ;
-			}
-		}
-		else if (currentCharacter == '=')
-		{
-			getNextCharacter() ;
-			return new Token(Token.equalSymbol, "=", currentLineNumber) ;
-		}
-		else if (currentCharacter == ',')
-		{
-			getNextCharacter() ;
-			return new Token(Token.commaSymbol, ",", currentLineNumber) ;
-		}
-		else if (currentCharacter == ';')
-		{
-			getNextCharacter() ;
-			return new Token(Token.semicolonSymbol, ";", currentLineNumber) ;
-		}
-		else if (currentCharacter == '+')
-		{
-			getNextCharacter() ;
-			return new Token(Token.plusSymbol, "+", currentLineNumber) ;
-		}
-		else if (currentCharacter == '/')
-		{
-			getNextCharacter() ;
-			return new Token(Token.divideSymbol, "/", currentLineNumber) ;
-		}
-		else if (currentCharacter == '%')
-		{
-			getNextCharacter() ;
-			return new Token(Token.modSymbol, "%", currentLineNumber) ;
-		}
-		else if (currentCharacter == '*')
-		{
-			getNextCharacter() ;
-			return new Token(Token.timesSymbol, "*", currentLineNumber) ;
-		}
-		else if (currentCharacter == '(')
-		{
-			getNextCharacter() ;
-			return new Token(Token.leftParenthesis, "(", currentLineNumber) ;
-		}
-		else if (currentCharacter == ')')
-		{
-			getNextCharacter() ;
-			return new Token(Token.rightParenthesis, ")", currentLineNumber) ;
-		}
-		else if (currentCharacter == EOF)
-		{
-			return new Token(Token.eofSymbol, "", currentLineNumber) ;
-		}
-		else
-		{
-			currentText = new StringBuffer(currentCharacter) ;
-			getNextCharacter() ;
-			return new Token(Token.errorSymbol, currentText, currentLineNumber) ;
-		}
-	} // end of method getNextToken
-
-	/** Entry point to text Lexer */
-	public static void main(String[] args) throws IOException
-	{
-		BufferedReader din = new BufferedReader(new InputStreamReader(System.in)) ;
-		System.err.print("file? ") ;
-		System.err.flush() ;
-		String fileName = din.readLine().trim() ;
-		LexicalAnalyser lex = new LexicalAnalyser(fileName) ;
-		Token t = null ;
-		do
-		{
-			t = lex.getNextToken() ;
-			System.out.println(t) ;
-		}
-		while (t.symbol != Token.eofSymbol) ;
-	} // end of main method
-} // end of class LexicalAnalyser
+
+/**
+ *
+ * lexical analyser for 312 exercise.
+ * 
+ * This class has been provided to students
+ *
+ * Author: Roger Garside, John Mariani, John Vidler, Paul Rayson, Barry Porter
+ *
+ *
+ **/
+import java.io.* ;
+import java.nio.CharBuffer ;
+import java.nio.MappedByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.nio.charset.Charset ;
+import java.nio.charset.CodingErrorAction ;
+import java.util.Arrays ;
+
+public class LexicalAnalyser implements TokenSource
+{
+
+	/** The reserved words of the language, and the symbol each one stands for. */
+	private static final String[] reservedWords = {
+		"begin", "call", "do", "else", "end", "float", "if", "integer",
+		"is", "loop", "procedure", "string", "then", "until", "while", "for"
+	} ;
+	private static final int[] reservedSymbols = {
+		Token.beginSymbol, Token.callSymbol, Token.doSymbol, Token.elseSymbol,
+		Token.endSymbol, Token.floatSymbol, Token.ifSymbol, Token.integerSymbol,
+		Token.isSymbol, Token.loopSymbol, Token.procedureSymbol, Token.stringSymbol,
+		Token.thenSymbol, Token.untilSymbol, Token.whileSymbol, Token.forSymbol
+	} ;
+
+	/** Size of the reserved word hash table; must be a power of two. */
+	private static final int reservedTableSize = 32 ;
+	/** Reserved word text and symbol, indexed by reservedWordHash. */
+	private static final char[][] reservedTable = new char[reservedTableSize][] ;
+	private static final int[] reservedTableSymbols = new int[reservedTableSize] ;
+
+	static
+	{
+		for (int i = 0; i < reservedWords.length; i++)
+		{
+			char[] word = reservedWords[i].toCharArray() ;
+			int h = reservedWordHash(word.length, word[0], word[word.length - 1]) ;
+			if (reservedTable[h] != null)
+				throw new ExceptionInInitializerError("reserved word hash collision: " + reservedWords[i]) ;
+			reservedTable[h] = word ;
+			reservedTableSymbols[h] = reservedSymbols[i] ;
+		}
+	}
+
+	/** The EOF character. */
+	private static final char EOF = '\000' ;
+
+	/** Is this the first time we have been called? */
+	private boolean firstCall ;
+
+	/** An input stream from the filename mentioned above. */
+	private BufferedReader sourceFile ;
+
+	/** The whole source when running in buffer mode, otherwise null. */
+	private char[] source ;
+	/** Cursor into, and end of, the buffered source. */
+	private int sourceOffset,
+			sourceLimit ;
+	/** Has the current buffered line produced any characters yet? */
+	private boolean lineOpen ;
+	/** In buffer mode, the index of currentCharacter, and of the first char of the last token. */
+	private int currentCharacterOffset = -1,
+			tokenStartOffset = -1 ;
+
+	/* State-change character and offset counts. */
+	private char currentCharacter ;
+	private String currentLine ;
+	private int currentOffset,
+			currentLineNumber ;
+
+	/** The file being read, if any, and the number of tokens scanned from it, for LexerRefill events. */
+	private String fileName ;
+	private long tokensScanned ;
+
+	/** Has a string run into the end of the input without its closing quote? */
+	private boolean unterminatedString ;
+
+	/* input buffer */
+	private char[] currentText = new char[64] ;
+	private int currentTextLength ;
+
+	/** Hashes a candidate reserved word from its length and its first and last
+	  (lower case) characters.  The multipliers were chosen so that no two reserved
+	  words share a slot, making the table a perfect hash.
+	 */
+	private static int reservedWordHash(int length, char first, char last)
+	{
+		return (length + (first * 26) + last) & (reservedTableSize - 1) ;
+	} // end of method reservedWordHash
+
+	/** Folds an ASCII upper case letter to lower case, leaving everything else alone. */
+	private static char toLowerAscii(char c)
+	{
+		return ((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c ;
+	} // end of method toLowerAscii
+
+	/** Looks up a word case-insensitively in the reserved word table, without
+	  allocating.
+
+	  @param text The characters of the word.
+	  @param length The number of characters of text to consider.
+	  @return The reserved word's symbol, or Token.identifier if it is not reserved.
+	 */
+	static int reservedWordSymbol(char[] text, int length)
+	{
+		if (length < 2)
+			return Token.identifier ;
+
+		int h = reservedWordHash(length, toLowerAscii(text[0]), toLowerAscii(text[length - 1])) ;
+		char[] word = reservedTable[h] ;
+		if ((word == null) || (word.length != length))
+			return Token.identifier ;
+
+		for (int i = 0; i < length; i++)
+			if (toLowerAscii(text[i]) != word[i])
+				return Token.identifier ;
+		return reservedTableSymbols[h] ;
+	} // end of method reservedWordSymbol
+
+	/** Appends the current character to the input buffer. */
+	private void appendCurrentCharacter()
+	{
+		if (currentTextLength == currentText.length)
+			currentText = Arrays.copyOf(currentText, currentTextLength * 2) ;
+		currentText[currentTextLength++] = currentCharacter ;
+	} // end of method appendCurrentCharacter
+
+	/** Returns the contents of the input buffer as a string. */
+	private String currentTextString()
+	{
+		return new String(currentText, 0, currentTextLength) ;
+	} // end of method currentTextString
+
+
+	/** Creates a new LexicalAnalyser which will run over the given file.
+
+	  @param fileName The file to read.
+	  @throws IOException if any read errors occur during parsing.
+	 */
+	public LexicalAnalyser(String fileName) throws IOException
+	{
+		if (fileName != null)
+		{
+			this.fileName = fileName ;
+			sourceFile = new BufferedReader(new FileReader(fileName)) ;
+			currentLine = readLine(0) ;
+		}
+		currentOffset = 0 ;
+		firstCall = true ;
+		currentLineNumber = 0 ;
+	} // end of constructor method
+
+	/** Creates a new LexicalAnalyser which will run over the given file, optionally
+	  mapping the whole file into memory and scanning it with a single cursor rather
+	  than reading it a line at a time.  Both modes produce the same tokens.
+
+	  @param fileName The file to read.
+	  @param wholeBuffer Whether to map the file into one buffer.
+	  @throws IOException if any read errors occur during parsing.
+	 */
+	public LexicalAnalyser(String fileName, boolean wholeBuffer) throws IOException
+	{
+		this(wholeBuffer ? null : fileName) ;
+		if (wholeBuffer)
+		{
+			this.fileName = fileName ;
+			CompilerEvents.LexerRefill event = new CompilerEvents.LexerRefill() ;
+			event.begin() ;
+			CharBuffer chars = readSource(fileName) ;
+			setSource(chars.array(), chars.arrayOffset() + chars.position(),
+					chars.arrayOffset() + chars.limit(), false) ;
+			event.end() ;
+			if (event.shouldCommit())
+			{
+				// Counting the lines costs a pass over the text, so it is only done while recording.
+				int lines = 0 ;
+				for (int i = sourceOffset; i < sourceLimit; i++)
+					if (source[i] == '\n')
+						lines++ ;
+				event.file = fileName ;
+				event.lastLine = lines ;
+				event.chars = sourceLimit - sourceOffset ;
+				event.commit() ;
+			}
+		}
+	} // end of constructor method
+
+	/** Reads the next line of the file, recording a LexerRefill event for it.
+
+	  @param lineNumber The number the line will have.
+	  @throws IOException if the line cannot be read.
+	  @return The line, or null at the end of the file.
+	 */
+	private String readLine(int lineNumber) throws IOException
+	{
+		CompilerEvents.LexerRefill event = new CompilerEvents.LexerRefill() ;
+		event.begin() ;
+		String line = sourceFile.readLine() ;
+		if (event.shouldCommit())
+		{
+			event.file = fileName ;
+			event.firstLine = lineNumber ;
+			event.lastLine = lineNumber ;
+			event.tokens = tokensScanned ;
+			event.chars = (line == null) ? 0 : line.length() ;
+			event.commit() ;
+		}
+		return line ;
+	} // end of method readLine
+
+	/** Reads a whole file into memory, by mapping it and decoding it in one go.
+
+	  @param fileName The file to read.
+	  @throws IOException if any read errors occur.
+	  @return The text of the file, in a buffer backed by an array.
+	 */
+	static CharBuffer readSource(String fileName) throws IOException
+	{
+		try (FileChannel channel = new FileInputStream(fileName).getChannel())
+		{
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) ;
+			return Charset.defaultCharset().newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+					.decode(bytes) ;
+		}
+	} // end of method readSource
+
+	/** Creates a new LexicalAnalyser which will run over part of a buffer of source
+	  text, as if the text before it had already been scanned.
+
+	  @param text The source text.
+	  @param offset The index of the first char to scan; this should not be part way through a token.
+	  @param limit The index just past the last char to scan, normally text.length.
+	  @param firstLineNumber The line number the text at offset is on.
+	 */
+	public LexicalAnalyser(char[] text, int offset, int limit, int firstLineNumber)
+	{
+		firstCall = true ;
+		currentLineNumber = firstLineNumber ;
+		// Starting part way through a line, that line still needs its '\n' at the end.
+		setSource(text, offset, limit,
+				(offset > 0) && (text[offset - 1] != '\n') && (text[offset - 1] != '\r')) ;
+	} // end of constructor method
+
+	/** Switches to buffer mode over the given range of text. */
+	private void setSource(char[] text, int offset, int limit, boolean midLine)
+	{
+		source = text ;
+		sourceOffset = offset ;
+		sourceLimit = limit ;
+		lineOpen = midLine ;
+	} // end of method setSource
+
+	/** Loads the next character of the input into the buffer.
+
+	  @throws IOException in the event that something like velociraptor attack happens to the input stream.
+	 */
+	private void getNextCharacter() throws IOException
+	{
+		if (source != null)
+		{
+			// Line terminators are folded to '\n' exactly as readLine() would see them,
+			// including the '\n' after an unterminated last line.
+			currentCharacterOffset = sourceOffset ;
+			if (sourceOffset < sourceLimit)
+			{
+				currentCharacter = source[sourceOffset++] ;
+				if (currentCharacter == '\r')
+				{
+					if ((sourceOffset < sourceLimit) && (source[sourceOffset] == '\n'))
+						sourceOffset++ ;
+					currentCharacter = '\n' ;
+				}
+				lineOpen = (currentCharacter != '\n') ;
+			}
+			else if (lineOpen)
+			{
+				currentCharacter = '\n' ;
+				lineOpen = false ;
+			}
+			else
+				currentCharacter = EOF ;
+		}
+		else if (currentLine == null)
+			currentCharacter = EOF ;
+		else if (currentOffset >= currentLine.length())
+		{
+			currentLine = readLine(currentLineNumber + 1) ;
+			currentOffset = 0 ;
+			currentCharacter = '\n' ;
+		}
+		else
+		{
+			currentCharacter = currentLine.charAt(currentOffset) ;
+			currentOffset++ ;
+		}
+	} // end of method getNextCharacter
+
+	/** Returns the next token from the source file.  Repeatedly calling this
+	  will return each token in the file, and eventually null.
+
+	  @throws IOException in the event that the file cannot be read.
+	  @return the next token from the source file.
+	 */
+	public Token getNextToken() throws IOException
+	{
+		int symbol = nextSymbol() ;
+		return new Token(symbol, tokenText(symbol), currentLineNumber) ;
+	} // end of method getNextToken
+
+	/** Scans the next token from the source file without building a Token for it.
+	  The token's text, if it has any, is left in the input buffer (see tokenChars
+	  and tokenLength) and its line number in tokenLineNumber.
+
+	  @throws IOException in the event that the file cannot be read.
+	  @return the symbol of the next token, one of the class constants from Token.
+	 */
+	int nextSymbol() throws IOException
+	{
+		if (firstCall)
+		{
+			getNextCharacter() ;
+			firstCall = false ;
+		}
+
+		currentTextLength = 0 ;
+		tokensScanned++ ;
+
+		while ((currentCharacter == ' ') || (currentCharacter == '\t') ||
+				(currentCharacter == '\n') || (currentCharacter == '-'))
+		{
+			if (currentCharacter == '-')
+			{
+				tokenStartOffset = currentCharacterOffset ;
+				getNextCharacter() ;
+				if (currentCharacter == '-')
+				{
+					while (currentCharacter != '\n')
+						getNextCharacter() ;
+				}
+				else
+					return Token.minusSymbol ;
+			}
+
+			if (currentCharacter == '\n')
+				currentLineNumber++ ;
+			getNextCharacter() ;
+		}
+
+		tokenStartOffset = currentCharacterOffset ;
+		if (Character.isLetter(currentCharacter))
+		{
+			currentTextLength = 0 ;
+			while ((Character.isLetter(currentCharacter)) ||
+					(Character.isDigit(currentCharacter)))
+			{
+				appendCurrentCharacter() ;
+				getNextCharacter() ;
+			}
+
+			return reservedWordSymbol(currentText, currentTextLength) ;
+		}
+		else if (Character.isDigit(currentCharacter))
+		{
+			currentTextLength = 0 ;
+			while (Character.isDigit(currentCharacter))
+			{
+				appendCurrentCharacter() ;
+				getNextCharacter() ;
+			}
+			if (currentCharacter == '.')
+			{
+				appendCurrentCharacter() ;
+				getNextCharacter() ;
+				while (Character.isDigit(currentCharacter))
+				{
+					appendCurrentCharacter() ;
+					getNextCharacter() ;
+				}
+			}
+			return Token.numberConstant ;
+		}
+		else if (currentCharacter == '"')
+		{
+			getNextCharacter() ;
+			currentTextLength = 0 ;
+			// A string left open runs to the end of the input, rather than appending EOF forever.
+			while ((currentCharacter != '"') && (currentCharacter != EOF))
+			{
+				appendCurrentCharacter() ;
+				getNextCharacter() ;
+			}
+			if (currentCharacter == EOF)
+				unterminatedString = true ;
+			else
+				getNextCharacter() ;
+			return Token.stringConstant ;
+		}
+		else if (currentCharacter == ':')
+		{
+			getNextCharacter() ;
+			if (currentCharacter == '=')
+			{
+				getNextCharacter() ;
+				return Token.becomesSymbol ;
+			}
+			else
+				return Token.colonSymbol ;
+		}
+		else if (currentCharacter == '>')
+		{
+			getNextCharacter() ;
+			if (currentCharacter == '=')
+			{
+				getNextCharacter() ;
+				return Token.greaterEqualSymbol ;
+			}
+			else
+				return Token.greaterThanSymbol ;
+		}
+		else if (currentCharacter == '<')
+		{
+			getNextCharacter() ;
+			if (currentCharacter == '=')
+			{
+				getNextCharacter() ;
+				return Token.lessEqualSymbol ;
+			}
+			else
+				return Token.lessThanSymbol ;
+		}
+		else if (currentCharacter == '!')
+		{
+			getNextCharacter() ;
+			if (currentCharacter == '=')
+			{
+				getNextCharacter() ;
+				return Token.notEqualSymbol ;
+			}
+			else
+			{
+			getNextCharacter() ;
+			return Token.errorSymbol ;
+			}
+		}
+		else if (currentCharacter == '=')
+		{
+			getNextCharacter() ;
+			return Token.equalSymbol ;
+		}
+		else if (currentCharacter == ',')
+		{
+			getNextCharacter() ;
+			return Token.commaSymbol ;
+		}
+		else if (currentCharacter == ';')
+		{
+			getNextCharacter() ;
+			return Token.semicolonSymbol ;
+		}
+		else if (currentCharacter == '+')
+		{
+			getNextCharacter() ;
+			return Token.plusSymbol ;
+		}
+		else if (currentCharacter == '/')
+		{
+			getNextCharacter() ;
+			return Token.divideSymbol ;
+		}
+		else if (currentCharacter == '%')
+		{
+			getNextCharacter() ;
+			return Token.modSymbol ;
+		}
+		else if (currentCharacter == '*')
+		{
+			getNextCharacter() ;
+			return Token.timesSymbol ;
+		}
+		else if (currentCharacter == '(')
+		{
+			getNextCharacter() ;
+			return Token.leftParenthesis ;
+		}
+		else if (currentCharacter == ')')
+		{
+			getNextCharacter() ;
+			return Token.rightParenthesis ;
+		}
+		else if (currentCharacter == EOF)
+		{
+			return Token.eofSymbol ;
+		}
+		else
+		{
+			getNextCharacter() ;
+			return Token.errorSymbol ;
+		}
+	} // end of method nextSymbol
+
+	/** Returns the text of the token last scanned by nextSymbol.
+
+	  @param symbol The symbol nextSymbol returned.
+	  @return The text of the token as it appeared in the source.
+	 */
+	String tokenText(int symbol)
+	{
+		if ((currentTextLength > 0) || (symbol == Token.stringConstant))
+			return currentTextString() ;
+		else if ((symbol == Token.errorSymbol) || (symbol == Token.eofSymbol))
+			return "" ;
+		else
+			return Token.getName(symbol) ;
+	} // end of method tokenText
+
+	/** @return The input buffer holding the text of the token last scanned by nextSymbol. */
+	char[] tokenChars()
+	{
+		return currentText ;
+	} // end of method tokenChars
+
+	/** @return The number of characters of tokenChars belonging to the last token. */
+	int tokenLength()
+	{
+		return currentTextLength ;
+	} // end of method tokenLength
+
+	/** @return In buffer mode, the index in the source of the first char of the
+	  token last scanned by nextSymbol; -1 when reading a file a line at a time. */
+	int tokenStartOffset()
+	{
+		return tokenStartOffset ;
+	} // end of method tokenStartOffset
+
+	/** @return In buffer mode, the index in the source of the char after the
+	  token last scanned by nextSymbol, which the scanner has already looked at;
+	  -1 when reading a file a line at a time. */
+	int tokenEndOffset()
+	{
+		return currentCharacterOffset ;
+	} // end of method tokenEndOffset
+
+	/** @return Whether a string has run into the end of the input without its
+	  closing quote; if so, it was the last token before eofSymbol. */
+	boolean unterminatedString()
+	{
+		return unterminatedString ;
+	} // end of method unterminatedString
+
+	/** @return The line number of the token last scanned by nextSymbol. */
+	int tokenLineNumber()
+	{
+		return currentLineNumber ;
+	} // end of method tokenLineNumber
+
+	/** Entry point to text Lexer */
+	public static void main(String[] args) throws IOException
+	{
+		BufferedReader din = new BufferedReader(new InputStreamReader(System.in)) ;
+		System.err.print("file? ") ;
+		System.err.flush() ;
+		String fileName = din.readLine().trim() ;
+		LexicalAnalyser lex = new LexicalAnalyser(fileName) ;
+		Token t = null ;
+		do
+		{
+			t = lex.getNextToken() ;
+			System.out.println(t) ;
+		}
+		while (t.symbol != Token.eofSymbol) ;
+	} // end of main method
+} // end of class LexicalAnalyser
@@ -0,0 +1,151 @@
+/**
+ *
+ * Moves assignments whose value is the same every time round a loop out of
+ * it, so they run once.  An assignment v := e in the body of a while, for or
+ * do ... until loop moves when
+ *
+ *   - it is in the body itself, not inside an if or an inner loop, so it runs
+ *     every time the body does;
+ *   - nothing else in the loop stores into v, and nothing else in the loop
+ *     stores into a variable e reads;
+ *   - nothing earlier in the body reads v, which would see the value v had
+ *     before the loop on the first time round.
+ *
+ * A do ... until body always runs, so the assignment simply goes in front of
+ * the loop.  A while or for loop may not run at all, and then v must keep its
+ * old value, so the assignment goes in front of the loop inside an if on the
+ * loop's own condition, and v must not be read by that condition either.  A
+ * for loop becomes its initial assignment, then a while loop with the step at
+ * the end of its body.  Inner loops are done first, so an assignment can move
+ * out through several loops over the rounds of the pass manager.
+ *
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class LoopInvariantCodeMotion extends OptimizationPass
+{
+    private int variables;
+
+    public String name() {
+        return "loop-invariant code motion";
+    }
+
+    protected LoweredProgram.Statement[] optimize( LoweredProgram program ) {
+        variables = program.variables.length;
+        return block( program.body );
+    }
+
+    private LoweredProgram.Statement[] block( LoweredProgram.Statement[] statements ) {
+        ArrayList<LoweredProgram.Statement> result = new ArrayList<LoweredProgram.Statement>();
+        boolean changed = false;
+        for( LoweredProgram.Statement s : statements ) {
+            LoweredProgram.Statement t = statement( s, result );
+            changed |= (t != s);
+        }
+        return changed ? result.toArray( new LoweredProgram.Statement[0] ) : statements;
+    }
+
+    /** Adds a statement, rewritten, to a block.  @return The statement as added, or s unchanged. */
+    private LoweredProgram.Statement statement( LoweredProgram.Statement s, ArrayList<LoweredProgram.Statement> out ) {
+        if( s instanceof LoweredProgram.If ) {
+            LoweredProgram.If i = (LoweredProgram.If) s;
+            LoweredProgram.Statement[] thenPart = block( i.thenPart ), elsePart = block( i.elsePart );
+            if( thenPart != i.thenPart || elsePart != i.elsePart )
+                s = new LoweredProgram.If( i.condition, thenPart, elsePart );
+        } else if( s instanceof LoweredProgram.While ) {
+            LoweredProgram.While w = (LoweredProgram.While) s;
+            LoweredProgram.Statement[] body = block( w.body );
+            ArrayList<LoweredProgram.Statement> hoisted = new ArrayList<LoweredProgram.Statement>();
+            body = hoist( body, null, w.condition, hoisted );
+            if( !hoisted.isEmpty() ) {
+                hoisted.add( new LoweredProgram.While( w.condition, body ) );
+                s = guard( w.condition, hoisted );
+            } else if( body != w.body ) {
+                s = new LoweredProgram.While( w.condition, body );
+            }
+        } else if( s instanceof LoweredProgram.For ) {
+            LoweredProgram.For f = (LoweredProgram.For) s;
+            LoweredProgram.Statement[] body = block( f.body );
+            ArrayList<LoweredProgram.Statement> hoisted = new ArrayList<LoweredProgram.Statement>();
+            body = hoist( body, f.step, f.condition, hoisted );
+            if( !hoisted.isEmpty() ) {
+                LoweredProgram.Statement[] loop = Arrays.copyOf( body, body.length + 1 );
+                loop[body.length] = f.step;
+                hoisted.add( new LoweredProgram.While( f.condition, loop ) );
+                out.add( f.initial );
+                s = guard( f.condition, hoisted );
+            } else if( body != f.body ) {
+                s = new LoweredProgram.For( f.initial, f.condition, f.step, body );
+            }
+        } else if( s instanceof LoweredProgram.DoUntil ) {
+            LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+            LoweredProgram.Statement[] body = block( d.body );
+            body = hoist( body, null, null, out );
+            if( body != d.body )
+                s = new LoweredProgram.DoUntil( body, d.condition );
+        }
+        out.add( s );
+        return s;
+    }
+
+    private static LoweredProgram.If guard( LoweredProgram.Condition condition,
+            ArrayList<LoweredProgram.Statement> statements ) {
+        return new LoweredProgram.If( condition, statements.toArray( new LoweredProgram.Statement[0] ),
+                new LoweredProgram.Statement[0] );
+    }
+
+    /** Moves the invariant assignments out of a loop body.
+
+      @param step The step of a for loop, which is part of the loop, or null.
+      @param condition A condition evaluated before the body first runs, which must not read a
+        variable that is moved, or null.
+      @param hoisted Where to add the assignments moved.
+      @return The body without them.
+     */
+    private LoweredProgram.Statement[] hoist( LoweredProgram.Statement[] body, LoweredProgram.Assign step,
+            LoweredProgram.Condition condition, ArrayList<LoweredProgram.Statement> hoisted ) {
+        int[] stores = new int[variables];
+        stores( body, stores );
+        if( step != null )
+            stores( step, stores );
+        BitSet readBefore = new BitSet( variables );
+        if( condition != null )
+            reads( condition, readBefore );
+
+        ArrayList<LoweredProgram.Statement> kept = new ArrayList<LoweredProgram.Statement>();
+        for( LoweredProgram.Statement s : body ) {
+            int variable = -1;
+            BitSet operands = new BitSet( variables );
+            if( s instanceof LoweredProgram.Assign ) {
+                variable = ((LoweredProgram.Assign) s).variable;
+                reads( ((LoweredProgram.Assign) s).value, operands );
+            } else if( s instanceof LoweredProgram.AssignString ) {
+                variable = ((LoweredProgram.AssignString) s).variable;
+            }
+            if( variable >= 0 && stores[variable] == 1 && !readBefore.get( variable ) && invariant( operands, stores ) ) {
+                rewritten();
+                hoisted.add( s );
+                // It is no longer in the loop, so what reads it may move too.
+                stores[variable] = 0;
+            } else {
+                reads( s, readBefore );
+                kept.add( s );
+            }
+        }
+        if( kept.size() == body.length )
+            return body;
+        return kept.toArray( new LoweredProgram.Statement[0] );
+    }
+
+    /** @return Whether none of some variables is stored into in the loop. */
+    private static boolean invariant( BitSet operands, int[] stores ) {
+        for( int v = operands.nextSetBit( 0 ); v >= 0; v = operands.nextSetBit( v + 1 ) ) {
+            if( stores[v] > 0 )
+                return false;
+        }
+        return true;
+    }
+} // end of class LoopInvariantCodeMotion
@@ -0,0 +1,413 @@
+/**
+ *
+ * A parsed program lowered to a form that can be run: statements and
+ * expressions as small objects, with variables resolved to numbers and the
+ * punctuation of the parse gone.  This is what the back ends (BytecodeGenerator,
+ * ProgramInterpreter and RegisterProgram) work from.
+ *
+ * Values are numbers (doubles) or strings.  A variable is a string variable if
+ * a string constant is ever assigned to it, and a number otherwise; using one
+ * kind where the other is needed is an error here rather than when the program
+ * runs.  Every variable starts as 0 or "".  Chains of operators are
+ * left-associative, whichever shape the parser sent them in, so a - b + c is
+ * (a - b) + c.  The only procedures are get, which reads a value into each of
+ * its arguments, and put, which writes its arguments out on one line.
+ *
+ **/
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class LoweredProgram
+{
+    /** A statement. */
+    public abstract static class Statement {
+    }
+
+    /** variable := expression, for a number variable. */
+    public static final class Assign extends Statement {
+        public final int variable;
+        public final Expression value;
+
+        public Assign( int variable, Expression value ) {
+            this.variable = variable;
+            this.value = value;
+        }
+    }
+
+    /** variable := "text", for a string variable. */
+    public static final class AssignString extends Statement {
+        public final int variable;
+        public final String value;
+
+        public AssignString( int variable, String value ) {
+            this.variable = variable;
+            this.value = value;
+        }
+    }
+
+    /** call get(...): reads a value into each variable in turn. */
+    public static final class Get extends Statement {
+        public final int[] variables;
+
+        public Get( int[] variables ) {
+            this.variables = variables;
+        }
+    }
+
+    /** call put(...): writes each variable's value, then ends the line. */
+    public static final class Put extends Statement {
+        public final int[] variables;
+
+        public Put( int[] variables ) {
+            this.variables = variables;
+        }
+    }
+
+    public static final class If extends Statement {
+        public final Condition condition;
+        public final Statement[] thenPart;
+        /** Empty if there is no else. */
+        public final Statement[] elsePart;
+
+        public If( Condition condition, Statement[] thenPart, Statement[] elsePart ) {
+            this.condition = condition;
+            this.thenPart = thenPart;
+            this.elsePart = elsePart;
+        }
+    }
+
+    public static final class While extends Statement {
+        public final Condition condition;
+        public final Statement[] body;
+
+        public While( Condition condition, Statement[] body ) {
+            this.condition = condition;
+            this.body = body;
+        }
+    }
+
+    /** do body until condition: the body runs at least once. */
+    public static final class DoUntil extends Statement {
+        public final Statement[] body;
+        public final Condition condition;
+
+        public DoUntil( Statement[] body, Condition condition ) {
+            this.body = body;
+            this.condition = condition;
+        }
+    }
+
+    /** for (initial; condition; step) do body: a while loop with the step at the end of the body. */
+    public static final class For extends Statement {
+        public final Assign initial;
+        public final Condition condition;
+        public final Assign step;
+        public final Statement[] body;
+
+        public For( Assign initial, Condition condition, Assign step, Statement[] body ) {
+            this.initial = initial;
+            this.condition = condition;
+            this.step = step;
+            this.body = body;
+        }
+    }
+
+    /** A number-valued expression. */
+    public abstract static class Expression {
+    }
+
+    public static final class Constant extends Expression {
+        public final double value;
+
+        public Constant( double value ) {
+            this.value = value;
+        }
+    }
+
+    public static final class Variable extends Expression {
+        public final int variable;
+
+        public Variable( int variable ) {
+            this.variable = variable;
+        }
+    }
+
+    /** left operator right, where operator is one of Token's plus, minus, times, divide and mod symbols. */
+    public static final class Binary extends Expression {
+        public final int operator;
+        public final Expression left;
+        public final Expression right;
+
+        public Binary( int operator, Expression left, Expression right ) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    /** left relation right, where relation is one of Token's comparison symbols.  Comparisons
+      involving NaN are false, except for != which is true, as in Java. */
+    public static final class Condition {
+        public final Expression left;
+        public final int relation;
+        public final Expression right;
+
+        public Condition( Expression left, int relation, Expression right ) {
+            this.left = left;
+            this.relation = relation;
+            this.right = right;
+        }
+    }
+
+    /** The name of each variable, by number. */
+    public final String[] variables;
+    /** Whether each variable holds a string. */
+    public final boolean[] isString;
+    public final Statement[] body;
+    /** The name of the program's file. */
+    public final String fileName;
+
+    public LoweredProgram( String fileName, String[] variables, boolean[] isString, Statement[] body ) {
+        this.fileName = fileName;
+        this.variables = variables;
+        this.isString = isString;
+        this.body = body;
+    }
+
+    /** Parses and lowers a program file.
+
+      @throws CompilationException if the program has a syntax error, or a variable is used as
+        both a string and a number, or a procedure other than get or put is called.
+     */
+    public static LoweredProgram read( String fileName ) throws IOException, CompilationException {
+        return parse( TokenBuffer.read( fileName ), fileName );
+    }
+
+    /** Parses and lowers an already lexed program.
+
+      @param fileName The name to report errors against.
+     */
+    public static LoweredProgram parse( TokenBuffer tokens, String fileName ) throws IOException, CompilationException {
+        SyntaxTreeGenerate generate = new SyntaxTreeGenerate() {
+            @Override
+            public void reportError( Token token, String explanatoryMessage ) throws CompilationException {
+                throw new CompilationException( "Syntax Error on line " + token.lineNumber + ": " + explanatoryMessage );
+            }
+        };
+        SyntaxAnalyser parser = new SyntaxAnalyser( tokens, fileName );
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        parser.parse( new PrintStream( errors ), generate );
+        if( errors.size() > 0 )
+            throw new CompilationException( errors.toString().trim() );
+        return lower( generate.getTree(), fileName );
+    }
+
+    /** Lowers the tree of a program that parsed without errors, in either expression shape. */
+    public static LoweredProgram lower( SyntaxTree tree, String fileName ) throws CompilationException {
+        return new Lowering( tree, fileName ).lower();
+    }
+
+    /** The state of one lowering. */
+    private static final class Lowering {
+        private final SyntaxTree tree;
+        private final TokenBuffer tokens;
+        private final String fileName;
+        private final HashMap<String, Integer> numbers = new HashMap<String, Integer>();
+        private final ArrayList<String> names = new ArrayList<String>();
+        /** For each variable, 1 if it has been used as a number, 2 as a string, 3 as both; get and put
+          are either. */
+        private final ArrayList<Integer> uses = new ArrayList<Integer>();
+        /** For each variable, the line it was first given a string, or first used as a number. */
+        private final ArrayList<Integer> stringLines = new ArrayList<Integer>();
+        private final ArrayList<Integer> numberLines = new ArrayList<Integer>();
+
+        Lowering( SyntaxTree tree, String fileName ) {
+            this.tree = tree;
+            this.tokens = tree.tokens();
+            this.fileName = fileName;
+        }
+
+        LoweredProgram lower() throws CompilationException {
+            int root = tree.root();
+            if( root == SyntaxTree.NONE || tree.kind( root ) != Nonterminal.statementPart )
+                throw new CompilationException( "Nothing to lower: the program did not parse. FILE: " + fileName );
+            Statement[] body = statements( child( root, Nonterminal.statementList ) );
+
+            int n = names.size();
+            boolean[] isString = new boolean[n];
+            for( int v = 0; v < n; v++ ) {
+                if( uses.get( v ) == 3 )
+                    throw new CompilationException( "Variable " + names.get( v ) + " is given a string on line "
+                            + stringLines.get( v ) + " but used as a number on line " + numberLines.get( v )
+                            + ". FILE: " + fileName );
+                isString[v] = (uses.get( v ) == 2);
+            }
+            return new LoweredProgram( fileName, names.toArray( new String[0] ), isString, body );
+        }
+
+        private int variable( int node, int use ) {
+            String name = tokens.text( tree.token( node ) );
+            Integer v = numbers.get( name );
+            if( v == null ) {
+                v = names.size();
+                numbers.put( name, v );
+                names.add( name );
+                uses.add( 0 );
+                stringLines.add( -1 );
+                numberLines.add( -1 );
+            }
+            int line = tokens.line( tree.token( node ) );
+            if( use == 1 && numberLines.get( v ) < 0 )
+                numberLines.set( v, line );
+            if( use == 2 && stringLines.get( v ) < 0 )
+                stringLines.set( v, line );
+            uses.set( v, uses.get( v ) | use );
+            return v;
+        }
+
+        /** @return The first child of node of the given kind, or NONE. */
+        private int child( int node, int kind ) {
+            for( int c = tree.firstChild( node ); c != SyntaxTree.NONE; c = tree.nextSibling( c ) )
+                if( tree.kind( c ) == kind )
+                    return c;
+            return SyntaxTree.NONE;
+        }
+
+        /** @return The n'th child of node. */
+        private int nth( int node, int n ) {
+            int c = tree.firstChild( node );
+            for( int i = 0; i < n; i++ )
+                c = tree.nextSibling( c );
+            return c;
+        }
+
+        private int symbolOf( int node ) {
+            return tokens.symbol( tree.token( node ) );
+        }
+
+        /** A statement list, which nests once for each statement after the first. */
+        private Statement[] statements( int list ) throws CompilationException {
+            ArrayList<Statement> statements = new ArrayList<Statement>();
+            while( list != SyntaxTree.NONE ) {
+                statements.add( statement( tree.firstChild( child( list, Nonterminal.statement ) ) ) );
+                list = child( list, Nonterminal.statementList );
+            }
+            return statements.toArray( new Statement[0] );
+        }
+
+        private Statement statement( int node ) throws CompilationException {
+            switch( tree.kind( node ) ) {
+                case Nonterminal.assignmentStatement: {
+                    int value = nth( node, 2 );
+                    if( tree.kind( value ) == SyntaxTree.TERMINAL )
+                        return new AssignString( variable( nth( node, 0 ), 2 ), tokens.text( tree.token( value ) ) );
+                    return assignment( node, 0 );
+                }
+                case Nonterminal.ifStatement: {
+                    Condition condition = condition( child( node, Nonterminal.condition ) );
+                    int thenList = SyntaxTree.NONE, elseList = SyntaxTree.NONE;
+                    boolean afterElse = false;
+                    for( int c = tree.firstChild( node ); c != SyntaxTree.NONE; c = tree.nextSibling( c ) ) {
+                        if( tree.kind( c ) == SyntaxTree.TERMINAL && symbolOf( c ) == Token.elseSymbol )
+                            afterElse = true;
+                        else if( tree.kind( c ) == Nonterminal.statementList ) {
+                            if( afterElse )
+                                elseList = c;
+                            else
+                                thenList = c;
+                        }
+                    }
+                    return new If( condition, statements( thenList ), statements( elseList ) );
+                }
+                case Nonterminal.whileStatement:
+                    return new While( condition( child( node, Nonterminal.condition ) ),
+                            statements( child( node, Nonterminal.statementList ) ) );
+                case Nonterminal.doUntilStatement:
+                    return new DoUntil( statements( child( node, Nonterminal.statementList ) ),
+                            condition( child( node, Nonterminal.condition ) ) );
+                case Nonterminal.forStatement: {
+                    // for ( id := Expression ; Condition ; id := Expression ) do ...
+                    Assign initial = assignment( node, 2 );
+                    Assign step = assignment( node, 8 );
+                    return new For( initial, condition( child( node, Nonterminal.condition ) ), step,
+                            statements( child( node, Nonterminal.statementList ) ) );
+                }
+                default:
+                    return procedure( node );
+            }
+        }
+
+        /** The assignment whose identifier is the given child of node, followed by := and an Expression. */
+        private Assign assignment( int node, int identifier ) {
+            int target = nth( node, identifier );
+            return new Assign( variable( target, 1 ), expression( tree.nextSibling( tree.nextSibling( target ) ) ) );
+        }
+
+        private Statement procedure( int node ) throws CompilationException {
+            int nameNode = nth( node, 1 );
+            String name = tokens.text( tree.token( nameNode ) );
+            ArrayList<Integer> arguments = new ArrayList<Integer>();
+            int list = child( node, Nonterminal.argumentList );
+            for( int c = tree.firstChild( list ); c != SyntaxTree.NONE; c = tree.nextSibling( c ) )
+                if( tree.kind( c ) == SyntaxTree.TERMINAL && symbolOf( c ) == Token.identifier )
+                    arguments.add( variable( c, 0 ) );
+            int[] variables = new int[arguments.size()];
+            for( int i = 0; i < variables.length; i++ )
+                variables[i] = arguments.get( i );
+            if( name.equals( "get" ) )
+                return new Get( variables );
+            if( name.equals( "put" ) )
+                return new Put( variables );
+            throw new CompilationException( "Unknown procedure " + name + " on line " + tokens.line( tree.token( nameNode ) )
+                    + "; only get and put can be called. FILE: " + fileName );
+        }
+
+        private Condition condition( int node ) {
+            Expression left = new Variable( variable( nth( node, 0 ), 1 ) );
+            int relation = symbolOf( tree.firstChild( nth( node, 1 ) ) );
+            int operand = nth( node, 2 );
+            Expression right = (symbolOf( operand ) == Token.identifier)
+                    ? new Variable( variable( operand, 1 ) )
+                    : new Constant( Double.parseDouble( tokens.text( tree.token( operand ) ) ) );
+            return new Condition( left, relation, right );
+        }
+
+        /** An Expression or Term node, nested or flat: its operands and operators, folded to the left. */
+        private Expression expression( int node ) {
+            int kind = tree.kind( node );
+            Expression result = null;
+            int operator = 0;
+            while( node != SyntaxTree.NONE ) {
+                int next = SyntaxTree.NONE;
+                for( int c = tree.firstChild( node ); c != SyntaxTree.NONE; c = tree.nextSibling( c ) ) {
+                    if( tree.kind( c ) == SyntaxTree.TERMINAL ) {
+                        operator = symbolOf( c );
+                    } else if( tree.kind( c ) == kind ) {
+                        // the rest of a nested chain
+                        next = c;
+                    } else {
+                        Expression operand = (kind == Nonterminal.term) ? factor( c ) : expression( c );
+                        result = (result == null) ? operand : new Binary( operator, result, operand );
+                    }
+                }
+                node = next;
+            }
+            return result;
+        }
+
+        private Expression factor( int node ) {
+            int first = tree.firstChild( node );
+            switch( symbolOf( first ) ) {
+                case Token.identifier:
+                    return new Variable( variable( first, 1 ) );
+                case Token.numberConstant:
+                    return new Constant( Double.parseDouble( tokens.text( tree.token( first ) ) ) );
+                default:
+                    // ( Expression )
+                    return expression( tree.nextSibling( first ) );
+            }
+        }
+    }
+} // end of class LoweredProgram
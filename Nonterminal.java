@@ -0,0 +1,62 @@
+/**
+ *
+ * Integer identities for the nonterminals of the 312 grammar, so that tools
+ * working on the parse can use them in place of their names.
+ *
+ **/
+public class Nonterminal
+{
+
+	public static final int statementPart = 1 ;
+	public static final int statementList = 2 ;
+	public static final int statement = 3 ;
+	public static final int assignmentStatement = 4 ;
+	public static final int ifStatement = 5 ;
+	public static final int whileStatement = 6 ;
+	public static final int procedureStatement = 7 ;
+	public static final int doUntilStatement = 8 ;
+	public static final int forStatement = 9 ;
+	public static final int argumentList = 10 ;
+	public static final int condition = 11 ;
+	public static final int conditionalOperator = 12 ;
+	public static final int expression = 13 ;
+	public static final int term = 14 ;
+	public static final int factor = 15 ;
+
+	private static final String[] names = {
+		"StatementPart",      "StatementList",       "Statement",
+		"AssignmentStatement", "IfStatement",        "WhileStatement",
+		"ProcedureStatement", "DoUntilStatement",    "ForStatement",
+		"ArgumentList",       "Condition",           "ConditionalOperator",
+		"Expression",         "Term",                "Factor"
+	} ;
+
+	/** The number of nonterminals; ids run from 1 to count inclusive. */
+	public static final int count = names.length ;
+
+	/** Returns the name of a nonterminal, as passed to commenceNonterminal.
+
+	  @param i The id of a nonterminal, typically as a class constant from Nonterminal.
+	  @return The name of this nonterminal.
+	 */
+	public static String getName(int i)
+	{
+		if ((i < 1) || (i > names.length))
+			return "UNKNOWN" ;
+		else
+			return names[i - 1] ;
+	} // end of method getName
+
+	/** Returns the id of a nonterminal from its name.
+
+	  @param name The name of the nonterminal, as passed to commenceNonterminal.
+	  @return The id of the nonterminal, or 0 if there is no such nonterminal.
+	 */
+	public static int getId(String name)
+	{
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equals(name))
+				return i + 1 ;
+		return 0 ;
+	} // end of method getId
+} // end of class Nonterminal
@@ -0,0 +1,19 @@
+
+/**
+ *
+ * Discards every 312 event, for when only the parse itself matters.
+ *
+ **/
+
+public class NullEventSink implements EventSink
+{
+    public void terminal( int symbol, String text, int lineNumber ) { }
+
+    public void beginNonterminal( String name ) { }
+
+    public void endNonterminal( String name ) { }
+
+    public void success() { }
+
+    public void flush() { }
+} // end of class NullEventSink
@@ -0,0 +1,149 @@
+/**
+ *
+ * One pass of the optimizer run by PassManager: a rewrite of a LoweredProgram
+ * that leaves what it does, its output for any input, unchanged.  A pass
+ * counts its rewrites as it makes them, so the manager knows when a round of
+ * passes has changed nothing.
+ *
+ * Expressions have no side effects here (dividing by zero gives an infinity
+ * or NaN rather than an exception), so a pass may drop, move or repeat the
+ * evaluation of one freely; only get and put, and the order of stores and
+ * loads of variables, have to be kept.
+ *
+ **/
+
+import java.util.BitSet;
+
+public abstract class OptimizationPass
+{
+    private int rewrites;
+
+    /** @return The name of the pass, for reports. */
+    public abstract String name();
+
+    /** @return The body of the program rewritten, counting each rewrite with rewritten(). */
+    protected abstract LoweredProgram.Statement[] optimize( LoweredProgram program );
+
+    /** Runs the pass.  @return The program rewritten, or the same program if nothing was. */
+    public final LoweredProgram run( LoweredProgram program ) {
+        rewrites = 0;
+        LoweredProgram.Statement[] body = optimize( program );
+        if( rewrites == 0 )
+            return program;
+        return new LoweredProgram( program.fileName, program.variables, program.isString, body );
+    }
+
+    /** @return The rewrites made by the last run. */
+    public int rewrites() {
+        return rewrites;
+    }
+
+    protected void rewritten() {
+        rewrites++;
+    }
+
+    /** @return The operators of a chain from the bottom of its left spine up: the first one's left
+      operand is the chain's leftmost operand, and the last one is the chain itself. */
+    static LoweredProgram.Binary[] spine( LoweredProgram.Binary e ) {
+        int length = 0;
+        for( LoweredProgram.Expression node = e; node instanceof LoweredProgram.Binary;
+                node = ((LoweredProgram.Binary) node).left )
+            length++;
+        LoweredProgram.Binary[] spine = new LoweredProgram.Binary[length];
+        LoweredProgram.Expression node = e;
+        for( int i = length - 1; i >= 0; i-- ) {
+            spine[i] = (LoweredProgram.Binary) node;
+            node = spine[i].left;
+        }
+        return spine;
+    }
+
+    /** Adds the variables an expression reads to a set. */
+    static void reads( LoweredProgram.Expression e, BitSet variables ) {
+        if( e instanceof LoweredProgram.Variable ) {
+            variables.set( ((LoweredProgram.Variable) e).variable );
+        } else if( e instanceof LoweredProgram.Binary ) {
+            LoweredProgram.Binary[] spine = spine( (LoweredProgram.Binary) e );
+            reads( spine[0].left, variables );
+            for( LoweredProgram.Binary b : spine )
+                reads( b.right, variables );
+        }
+    }
+
+    static void reads( LoweredProgram.Condition c, BitSet variables ) {
+        reads( c.left, variables );
+        reads( c.right, variables );
+    }
+
+    /** Adds the variables a block reads, at any depth, to a set. */
+    static void reads( LoweredProgram.Statement[] block, BitSet variables ) {
+        for( LoweredProgram.Statement s : block )
+            reads( s, variables );
+    }
+
+    static void reads( LoweredProgram.Statement s, BitSet variables ) {
+        if( s instanceof LoweredProgram.Assign ) {
+            reads( ((LoweredProgram.Assign) s).value, variables );
+        } else if( s instanceof LoweredProgram.Put ) {
+            for( int v : ((LoweredProgram.Put) s).variables )
+                variables.set( v );
+        } else if( s instanceof LoweredProgram.If ) {
+            LoweredProgram.If i = (LoweredProgram.If) s;
+            reads( i.condition, variables );
+            reads( i.thenPart, variables );
+            reads( i.elsePart, variables );
+        } else if( s instanceof LoweredProgram.While ) {
+            LoweredProgram.While w = (LoweredProgram.While) s;
+            reads( w.condition, variables );
+            reads( w.body, variables );
+        } else if( s instanceof LoweredProgram.DoUntil ) {
+            LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+            reads( d.body, variables );
+            reads( d.condition, variables );
+        } else if( s instanceof LoweredProgram.For ) {
+            LoweredProgram.For f = (LoweredProgram.For) s;
+            reads( f.initial, variables );
+            reads( f.condition, variables );
+            reads( f.body, variables );
+            reads( f.step, variables );
+        }
+    }
+
+    /** Adds to counts[v] the number of statements in a block, at any depth, that store into v. */
+    static void stores( LoweredProgram.Statement[] block, int[] counts ) {
+        for( LoweredProgram.Statement s : block )
+            stores( s, counts );
+    }
+
+    static void stores( LoweredProgram.Statement s, int[] counts ) {
+        if( s instanceof LoweredProgram.Assign ) {
+            counts[((LoweredProgram.Assign) s).variable]++;
+        } else if( s instanceof LoweredProgram.AssignString ) {
+            counts[((LoweredProgram.AssignString) s).variable]++;
+        } else if( s instanceof LoweredProgram.Get ) {
+            for( int v : ((LoweredProgram.Get) s).variables )
+                counts[v]++;
+        } else if( s instanceof LoweredProgram.If ) {
+            LoweredProgram.If i = (LoweredProgram.If) s;
+            stores( i.thenPart, counts );
+            stores( i.elsePart, counts );
+        } else if( s instanceof LoweredProgram.While ) {
+            stores( ((LoweredProgram.While) s).body, counts );
+        } else if( s instanceof LoweredProgram.DoUntil ) {
+            stores( ((LoweredProgram.DoUntil) s).body, counts );
+        } else if( s instanceof LoweredProgram.For ) {
+            LoweredProgram.For f = (LoweredProgram.For) s;
+            stores( f.initial, counts );
+            stores( f.body, counts );
+            stores( f.step, counts );
+        }
+    }
+
+    /** @return The value of a condition whose operands are both constants, or null if either is not. */
+    static Boolean constantValue( LoweredProgram.Condition c ) {
+        if( !(c.left instanceof LoweredProgram.Constant) || !(c.right instanceof LoweredProgram.Constant) )
+            return null;
+        return ProgramInterpreter.compare( c.relation, ((LoweredProgram.Constant) c.left).value,
+                ((LoweredProgram.Constant) c.right).value );
+    }
+} // end of class OptimizationPass
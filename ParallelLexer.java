@@ -0,0 +1,264 @@
+/**
+ *
+ * Lexes one large source in parallel.  The text is cut into chunks just after
+ * a newline and every chunk is lexed at once, each on the guess that it starts
+ * between tokens on line 0.  A comment always ends at its newline, so the only
+ * token that can cross a cut is a string, and a chunk whose last token is a
+ * string still open at its end shows the guess for the next chunk was wrong.
+ * The chunks are then stitched together in order, moving each one's line
+ * numbers down by the lines before it, and wherever a string was left open the
+ * text from the start of that string to the end of the next chunk is lexed
+ * again, this time from the right state.  The result is the same token stream,
+ * with the same line numbers, as lexing the whole text in one go.
+ *
+ **/
+import java.io.* ;
+import java.nio.CharBuffer ;
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.concurrent.ForkJoinPool ;
+import java.util.concurrent.ForkJoinTask ;
+
+public class ParallelLexer
+{
+	/** The default smallest chunk, in chars; smaller sources are lexed in one piece. */
+	public static final int MINIMUM_CHUNK = 1 << 18 ;
+
+	/** The pool the chunks are lexed on. */
+	private final ForkJoinPool pool ;
+	/** The smallest chunk to cut, in chars. */
+	private final int minimumChunk ;
+
+	/** The number of chunks the last source was cut into, and how many of them were lexed again. */
+	private int chunks,
+			relexed ;
+
+	/** How lexing one chunk ended. */
+	private static class Chunk
+	{
+		/** The tokens of the chunk, without its eofSymbol. */
+		final TokenBuffer tokens ;
+		/** The line number the chunk ended on. */
+		int endLine ;
+		/** If the last token is a string still open at the end of the chunk, the index of its opening quote, else -1. */
+		int openString = -1 ;
+
+		Chunk(TokenBuffer tokens)
+		{
+			this.tokens = tokens ;
+		} // end of constructor method
+	} // end of class Chunk
+
+	/** Creates a parallel lexer that uses the common pool. */
+	public ParallelLexer()
+	{
+		this(ForkJoinPool.commonPool(), MINIMUM_CHUNK) ;
+	} // end of constructor method
+
+	/** Creates a parallel lexer.
+
+	  @param pool The pool to lex chunks on.
+	  @param minimumChunk The smallest chunk to cut, in chars.
+	 */
+	public ParallelLexer(ForkJoinPool pool, int minimumChunk)
+	{
+		this.pool = pool ;
+		this.minimumChunk = Math.max(minimumChunk, 1) ;
+	} // end of constructor method
+
+	/** Lexes a whole file into a new buffer.
+
+	  @param fileName The file to read.
+	  @throws IOException if any read errors occur.
+	  @return A buffer holding every token of the file, ending with eofSymbol.
+	 */
+	public TokenBuffer read(String fileName) throws IOException
+	{
+		CharBuffer text = LexicalAnalyser.readSource(fileName) ;
+		return lex(text.array(), text.arrayOffset() + text.position(), text.arrayOffset() + text.limit()) ;
+	} // end of method read
+
+	/** Lexes part of a buffer of source text.
+
+	  @param text The source text.
+	  @param offset The index of the first char to lex, at the start of a line.
+	  @param limit The index just past the last char to lex.
+	  @throws IOException if any read errors occur.
+	  @return A buffer holding every token of the text, ending with eofSymbol.
+	 */
+	public TokenBuffer lex(char[] text, int offset, int limit) throws IOException
+	{
+		int[] cuts = cut(text, offset, limit) ;
+		chunks = cuts.length - 1 ;
+		relexed = 0 ;
+
+		ArrayList<ForkJoinTask<Chunk>> pending = new ArrayList<ForkJoinTask<Chunk>>(chunks) ;
+		for (int i = 1; i < chunks; i++)
+		{
+			int start = cuts[i], end = cuts[i + 1] ;
+			pending.add(pool.submit(() -> lexChunk(text, start, end, 0, new TokenBuffer((end - start) / 8)))) ;
+		}
+		// The first chunk is known to start in the right state, so it is lexed here, straight
+		// into the result, while the others run.
+		TokenBuffer result = new TokenBuffer() ;
+		Chunk chunk = lexChunk(text, cuts[0], cuts[1], 0, result) ;
+		int line = chunk.endLine ;
+
+		for (int i = 1; i < chunks; i++)
+		{
+			if (chunk.openString >= 0)
+			{
+				// This chunk was lexed from the wrong state, so lex it again, from the start of the open string.
+				int stringLine = result.line(result.size() - 1) ;
+				result.truncate(result.size() - 1) ;
+				pending.get(i - 1).cancel(false) ;
+				relexed++ ;
+				chunk = lexChunk(text, chunk.openString, cuts[i + 1], stringLine, result) ;
+				line = chunk.endLine ;
+			}
+			else
+			{
+				chunk = pending.get(i - 1).join() ;
+				result.addAll(chunk.tokens, 0, chunk.tokens.size(), line) ;
+				line += chunk.endLine ;
+			}
+		}
+		result.add(Token.eofSymbol, text, 0, 0, line) ;
+		return result ;
+	} // end of method lex
+
+	/** Chooses where to cut the text: about four chunks for each worker in the pool, but
+	  none smaller than minimumChunk, and each one ending just after a newline.  With only
+	  one worker there is nothing to gain, so the text is left in one piece.
+
+	  @return The index of the start of each chunk, followed by limit.
+	 */
+	private int[] cut(char[] text, int offset, int limit)
+	{
+		int length = limit - offset ;
+		int workers = pool.getParallelism() ;
+		int wanted = (workers > 1) ? (int) Math.min(workers * 4L, length / minimumChunk) : 1 ;
+		int size = (wanted > 1) ? length / wanted : length ;
+
+		int[] cuts = new int[Math.max(wanted, 1) + 1] ;
+		int n = 0 ;
+		cuts[n++] = offset ;
+		int at = offset + size ;
+		while ((at < limit) && (n < cuts.length - 1))
+		{
+			while ((at < limit) && (text[at - 1] != '\n'))
+				at++ ;
+			if (at >= limit)
+				break ;
+			cuts[n++] = at ;
+			at += size ;
+		}
+		cuts[n++] = limit ;
+		return Arrays.copyOf(cuts, n) ;
+	} // end of method cut
+
+	/** Lexes one chunk of text, starting between tokens.
+
+	  @param firstLineNumber The line number the chunk starts on.
+	  @param tokens The buffer to append the tokens to, without eofSymbol.
+	  @throws IOException if any read errors occur.
+	 */
+	private static Chunk lexChunk(char[] text, int start, int end, int firstLineNumber, TokenBuffer tokens) throws IOException
+	{
+		LexicalAnalyser lex = new LexicalAnalyser(text, start, end, firstLineNumber) ;
+		Chunk chunk = new Chunk(tokens) ;
+		int symbol ;
+		int tokenStart = -1 ;
+		while ((symbol = lex.nextSymbol()) != Token.eofSymbol)
+		{
+			tokenStart = lex.tokenStartOffset() ;
+			tokens.add(symbol, lex.tokenChars(), 0, lex.tokenLength(), lex.tokenLineNumber()) ;
+		}
+		chunk.endLine = lex.tokenLineNumber() ;
+		if (lex.unterminatedString())
+			chunk.openString = tokenStart ;
+		return chunk ;
+	} // end of method lexChunk
+
+	/** @return The number of chunks the last source lexed was cut into. */
+	public int chunks()
+	{
+		return chunks ;
+	} // end of method chunks
+
+	/** @return The number of chunks of the last source that had to be lexed again. */
+	public int relexedChunks()
+	{
+		return relexed ;
+	} // end of method relexedChunks
+
+	/** Lexes a file both in parallel and in one piece, checks the tokens are the same,
+	  and reports how long each took.
+
+	  usage: java ParallelLexer [-jobs N] [-chunk chars] [-repeat N] file
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int jobs = Runtime.getRuntime().availableProcessors() ;
+		int minimumChunk = MINIMUM_CHUNK ;
+		int repeat = 5 ;
+		String fileName = null ;
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-jobs") && (i + 1 < args.length))
+				jobs = Integer.parseInt(args[++i]) ;
+			else if (args[i].equals("-chunk") && (i + 1 < args.length))
+				minimumChunk = Integer.parseInt(args[++i]) ;
+			else if (args[i].equals("-repeat") && (i + 1 < args.length))
+				repeat = Integer.parseInt(args[++i]) ;
+			else
+				fileName = args[i] ;
+		}
+		if (fileName == null)
+		{
+			System.err.println("usage: java ParallelLexer [-jobs N] [-chunk chars] [-repeat N] file") ;
+			System.exit(1) ;
+		}
+
+		CharBuffer source = LexicalAnalyser.readSource(fileName) ;
+		char[] text = source.array() ;
+		int offset = source.arrayOffset() + source.position(), limit = source.arrayOffset() + source.limit() ;
+		ForkJoinPool pool = new ForkJoinPool(jobs) ;
+		ParallelLexer parallel = new ParallelLexer(pool, minimumChunk) ;
+
+		TokenBuffer expected = null, actual = null ;
+		long sequentialTime = Long.MAX_VALUE, parallelTime = Long.MAX_VALUE ;
+		for (int r = 0; r < repeat; r++)
+		{
+			long start = System.nanoTime() ;
+			expected = new TokenBuffer() ;
+			expected.fill(new LexicalAnalyser(text, offset, limit, 0)) ;
+			sequentialTime = Math.min(sequentialTime, System.nanoTime() - start) ;
+
+			start = System.nanoTime() ;
+			actual = parallel.lex(text, offset, limit) ;
+			parallelTime = Math.min(parallelTime, System.nanoTime() - start) ;
+		}
+		pool.shutdown() ;
+
+		int mismatch = firstDifference(expected, actual) ;
+		System.out.printf("%d tokens, %d chunks, %d lexed again%n", expected.size(), parallel.chunks(), parallel.relexedChunks()) ;
+		System.out.printf("sequential %.3f ms, parallel %.3f ms on %d workers%n",
+				sequentialTime / 1e6, parallelTime / 1e6, jobs) ;
+		if (mismatch >= 0)
+		{
+			System.out.println("tokens differ at index " + mismatch) ;
+			System.exit(1) ;
+		}
+	} // end of main method
+
+	/** @return The index of the first token where two buffers differ, or -1 if they are the same. */
+	private static int firstDifference(TokenBuffer a, TokenBuffer b)
+	{
+		int n = Math.min(a.size(), b.size()) ;
+		for (int i = 0; i < n; i++)
+			if ((a.symbol(i) != b.symbol(i)) || (a.line(i) != b.line(i)) || !a.text(i).equals(b.text(i)))
+				return i ;
+		return (a.size() == b.size()) ? -1 : n ;
+	} // end of method firstDifference
+} // end of class ParallelLexer
@@ -0,0 +1,142 @@
+/**
+ *
+ * Checks that TableDrivenParser and SyntaxAnalyser agree: every event, every
+ * error message and every frame of every error, on each program given.
+ *
+ * Usage: java ParserCrossCheck [-flat] [-generate N] [-seed N] [-statements N] [-errors N] [file ...]
+ *
+ * checks the named files, or with none the programs in "Programs Folder", and
+ * then N programs from ProgramGenerator, seeded one after another from the
+ * given seed, with the given number of statements and of broken statements.
+ * With -flat both parsers send flat chains of operators (see
+ * AbstractSyntaxAnalyser.setFlatExpressions).  Exits with status 1 if the
+ * parsers disagree on any program.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+public class ParserCrossCheck
+{
+    /** A Generate that collects the events, and keeps the messages of errors rather than printing them. */
+    private static class Recording extends Generate {
+        final CollectingEventSink events = new CollectingEventSink();
+        final StringBuilder errors = new StringBuilder();
+
+        Recording() {
+            setSink( events );
+        }
+
+        @Override
+        public void reportError( Token token, String explanatoryMessage ) throws CompilationException {
+            String message = "Syntax Error on line " + token.lineNumber + ": " + explanatoryMessage;
+            errors.append( message ).append( '\n' );
+            throw new CompilationException( message );
+        }
+    }
+
+    private boolean flat;
+    private int programs, failures;
+    private long tokens, descentNanos, tableNanos;
+
+    /** Parses one program with both parsers and reports any difference. */
+    private void check( String name, char[] text ) throws IOException {
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.fill( new LexicalAnalyser( text, 0, text.length, 0 ) );
+        tokens += buffer.size();
+
+        Recording descent = new Recording();
+        ByteArrayOutputStream descentDiagnostics = new ByteArrayOutputStream();
+        SyntaxAnalyser descentParser = new SyntaxAnalyser( buffer, name );
+        descentParser.setFlatExpressions( flat );
+        long start = System.nanoTime();
+        descentParser.parse( new PrintStream( descentDiagnostics ), descent );
+        descentNanos += System.nanoTime() - start;
+
+        Recording table = new Recording();
+        ByteArrayOutputStream tableDiagnostics = new ByteArrayOutputStream();
+        TableDrivenParser tableParser = new TableDrivenParser( buffer, name );
+        tableParser.setFlatExpressions( flat );
+        start = System.nanoTime();
+        tableParser.parse( new PrintStream( tableDiagnostics ), table );
+        tableNanos += System.nanoTime() - start;
+
+        programs++;
+        String difference = null;
+        List<String> a = descent.events.getLines(), b = table.events.getLines();
+        int n = Math.min( a.size(), b.size() );
+        for( int i = 0; i < n && difference == null; i++ ) {
+            if( !a.get( i ).equals( b.get( i ) ) )
+                difference = "event " + i + ": descent '" + a.get( i ) + "', table '" + b.get( i ) + "'";
+        }
+        if( difference == null && a.size() != b.size() )
+            difference = "descent sent " + a.size() + " events, table " + b.size();
+        if( difference == null && !descent.errors.toString().equals( table.errors.toString() ) )
+            difference = "errors differ:\n" + descent.errors + "---\n" + table.errors;
+        if( difference == null && !descentDiagnostics.toString().equals( tableDiagnostics.toString() ) )
+            difference = "diagnostics differ:\n" + descentDiagnostics + "---\n" + tableDiagnostics;
+        if( difference != null ) {
+            failures++;
+            System.out.println( name + ": " + difference );
+        }
+    }
+
+    public static void main( String[] args ) throws IOException {
+        long seed = 312;
+        int generate = 0;
+        long statements = 200;
+        long errors = 1;
+        ParserCrossCheck checker = new ParserCrossCheck();
+        boolean anyFiles = false;
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals( "-flat" ) ) {
+                checker.flat = true;
+            } else if( args[i].equals( "-generate" ) && i + 1 < args.length ) {
+                generate = Integer.parseInt( args[++i] );
+            } else if( args[i].equals( "-seed" ) && i + 1 < args.length ) {
+                seed = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-statements" ) && i + 1 < args.length ) {
+                statements = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-errors" ) && i + 1 < args.length ) {
+                errors = Long.parseLong( args[++i] );
+            } else if( !args[i].startsWith( "-" ) ) {
+                File file = new File( args[i] );
+                checker.check( file.getPath(), read( file ) );
+                anyFiles = true;
+            } else {
+                System.err.println( "usage: java ParserCrossCheck [-flat] [-generate N] [-seed N] [-statements N] [-errors N] [file ...]" );
+                System.exit( 1 );
+            }
+        }
+
+        if( !anyFiles ) {
+            for( int n = 0; ; n++ ) {
+                File file = new File( "Programs Folder", "program" + n );
+                if( !file.exists() )
+                    break;
+                checker.check( file.getPath(), read( file ) );
+            }
+        }
+
+        for( int i = 0; i < generate; i++ ) {
+            ProgramGenerator generator = new ProgramGenerator( seed + i );
+            // Every other program is valid, so that both success and failure are covered.
+            generator.setErrors( (i % 2 == 0) ? 0 : errors );
+            StringBuilder text = new StringBuilder();
+            generator.write( text, statements );
+            checker.check( "generated(seed " + (seed + i) + ")", text.toString().toCharArray() );
+        }
+
+        System.out.printf( "%d programs, %d tokens, %d disagreements; descent %.1f ms, table %.1f ms%n",
+                checker.programs, checker.tokens, checker.failures, checker.descentNanos / 1e6, checker.tableNanos / 1e6 );
+        if( checker.failures > 0 )
+            System.exit( 1 );
+    }
+
+    private static char[] read( File file ) throws IOException {
+        return new String( Files.readAllBytes( file.toPath() ), Charset.defaultCharset() ).toCharArray();
+    }
+} // end of class ParserCrossCheck
@@ -0,0 +1,61 @@
+/**
+ *
+ * Optimizes a LoweredProgram before it is run, by running a list of passes in
+ * rounds until a round in which none of them rewrites anything: each pass can
+ * open the way for another (folding makes a condition constant, removing its
+ * branch leaves a store dead, and so on), so one round is not enough.  The
+ * time each pass takes and the rewrites it makes are added up over the rounds,
+ * for report().
+ *
+ **/
+
+import java.io.PrintStream;
+
+public class PassManager
+{
+    /** The most rounds run, in case passes should ever undo each other's work. */
+    private static final int MAX_ROUNDS = 100;
+
+    private final OptimizationPass[] passes;
+    private final long[] nanoseconds;
+    private final int[] rewrites;
+    private int rounds;
+
+    public PassManager( OptimizationPass... passes ) {
+        this.passes = passes;
+        nanoseconds = new long[passes.length];
+        rewrites = new int[passes.length];
+    }
+
+    /** @return A manager with every pass: constant folding, unreachable branch removal, loop-invariant
+      code motion and dead store elimination, in that order. */
+    public static PassManager standard() {
+        return new PassManager( new ConstantFolding(), new UnreachableBranchRemoval(),
+                new LoopInvariantCodeMotion(), new DeadStoreElimination() );
+    }
+
+    /** @return The program optimized. */
+    public LoweredProgram optimize( LoweredProgram program ) {
+        for( int round = 0; round < MAX_ROUNDS; round++ ) {
+            rounds++;
+            int changes = 0;
+            for( int i = 0; i < passes.length; i++ ) {
+                long start = System.nanoTime();
+                program = passes[i].run( program );
+                nanoseconds[i] += System.nanoTime() - start;
+                rewrites[i] += passes[i].rewrites();
+                changes += passes[i].rewrites();
+            }
+            if( changes == 0 )
+                break;
+        }
+        return program;
+    }
+
+    /** Writes the rewrites and time of each pass, and the number of rounds run. */
+    public void report( PrintStream out ) {
+        for( int i = 0; i < passes.length; i++ )
+            out.printf( "%-28s %8d rewrites %10.3f ms%n", passes[i].name(), rewrites[i], nanoseconds[i] / 1e6 );
+        out.println( rounds + (rounds == 1 ? " round" : " rounds") );
+    }
+} // end of class PassManager
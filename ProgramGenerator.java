@@ -0,0 +1,311 @@
+/**
+ *
+ * Generates random programs in the language SyntaxAnalyser accepts, for
+ * testing and benchmarking the compiler at scale.
+ *
+ * Programs are written as they are generated, so there is no limit on their
+ * size besides the disk.  Statements nest (if, while, for and do-until) to at
+ * most the requested depth, and expressions, conditions, string assignments
+ * and procedure calls all appear.  A number of deliberately broken statements
+ * can be asked for; each holds exactly one syntax error.  The same seed and
+ * settings always give the same program.
+ *
+ * Usage: java ProgramGenerator [-seed N] [-statements N] [-depth N] [-errors N] [file]
+ *
+ * writes to standard output if no file is given.  At the default depth a
+ * statement averages under 40 bytes, so -statements 27000000 gives about a
+ * gigabyte.
+ *
+ **/
+
+import java.io.*;
+import java.util.SplittableRandom;
+
+public class ProgramGenerator
+{
+    private static final String[] RELATIONS = { "=", "!=", "<", "<=", ">", ">=" };
+    private static final char[] ADDING = { '+', '-' };
+    private static final char[] MULTIPLYING = { '*', '/', '%' };
+
+    /** How many variable and procedure names the program uses. */
+    private static final int NAMES = 64;
+    /** How deep parenthesised expressions nest. */
+    private static final int MAX_EXPRESSION_DEPTH = 2;
+
+    private final SplittableRandom random;
+    private int maxDepth = 3;
+    private long errors;
+
+    private Appendable out;
+    /** The statements, and the broken ones among them, still to write. */
+    private long statementsLeft, errorsLeft;
+
+    /** Creates a generator whose programs are decided entirely by the seed and settings. */
+    public ProgramGenerator( long seed ) {
+        random = new SplittableRandom( seed );
+    }
+
+    /** Sets how deeply statements may nest inside one another; 0 means none do. */
+    public void setMaxDepth( int maxDepth ) {
+        this.maxDepth = maxDepth;
+    }
+
+    /** Sets how many of the statements are broken, each with one syntax error. */
+    public void setErrors( long errors ) {
+        this.errors = errors;
+    }
+
+    /** Writes a whole program.
+
+      @param out Where to write it.
+      @param statements The number of statements, counting each nested one.
+      @throws IOException if writing fails.
+     */
+    public void write( Appendable out, long statements ) throws IOException {
+        this.out = out;
+        statementsLeft = Math.max( statements, 1 );
+        errorsLeft = Math.min( errors, statementsLeft );
+        out.append( "begin\n" );
+        boolean first = true;
+        while( statementsLeft > 0 ) {
+            if( !first )
+                out.append( " ;\n" );
+            first = false;
+            statement( 0 );
+        }
+        out.append( "\nend\n" );
+    }
+
+    private void name( char prefix ) throws IOException {
+        out.append( prefix ).append( Integer.toString( random.nextInt( NAMES ) ) );
+    }
+
+    private void indent( int depth ) throws IOException {
+        for( int i = 0; i < depth; i++ )
+            out.append( "  " );
+    }
+
+    /** Writes a list of statements, one per line, separated by semicolons. */
+    private void statementList( int depth, int count ) throws IOException {
+        for( int i = 0; i < count; i++ ) {
+            if( i > 0 )
+                out.append( " ;\n" );
+            statement( depth );
+        }
+        out.append( '\n' );
+    }
+
+    /** Writes one statement and any nested in it. */
+    private void statement( int depth ) throws IOException {
+        indent( depth );
+        boolean broken = (errorsLeft > 0) && (random.nextLong( statementsLeft ) < errorsLeft);
+        statementsLeft--;
+        if( broken ) {
+            errorsLeft--;
+            brokenStatement();
+            return;
+        }
+
+        // Nested statements are only possible while there are statements left to put in them.
+        int body = (depth < maxDepth) ? (int) Math.min( statementsLeft, 1 + random.nextInt( 4 ) ) : 0;
+        int kind = random.nextInt( (body > 0) ? 10 : 4 );
+        switch( kind ) {
+            case 0:
+            case 1:
+                assignment();
+                break;
+            case 2:
+                out.append( "call " );
+                name( 'p' );
+                argumentList();
+                break;
+            case 3:
+                name( 'x' );
+                out.append( " := \"text " ).append( Integer.toString( random.nextInt( 1000 ) ) ).append( '"' );
+                break;
+            case 4:
+            case 5:
+                out.append( "if " );
+                condition();
+                out.append( " then\n" );
+                if( body > 1 && random.nextBoolean() ) {
+                    int thenPart = 1 + random.nextInt( body - 1 );
+                    statementList( depth + 1, thenPart );
+                    indent( depth );
+                    out.append( "else\n" );
+                    statementList( depth + 1, body - thenPart );
+                } else {
+                    statementList( depth + 1, body );
+                }
+                indent( depth );
+                out.append( "end if" );
+                break;
+            case 6:
+            case 7:
+                out.append( "while " );
+                condition();
+                out.append( " loop\n" );
+                statementList( depth + 1, body );
+                indent( depth );
+                out.append( "end loop" );
+                break;
+            case 8:
+                out.append( "for (" );
+                assignment();
+                out.append( "; " );
+                condition();
+                out.append( "; " );
+                assignment();
+                out.append( ") do\n" );
+                statementList( depth + 1, body );
+                indent( depth );
+                out.append( "end loop" );
+                break;
+            default:
+                out.append( "do\n" );
+                statementList( depth + 1, body );
+                indent( depth );
+                out.append( "until " );
+                condition();
+                break;
+        }
+    }
+
+    /** Writes a short statement holding exactly one syntax error. */
+    private void brokenStatement() throws IOException {
+        switch( random.nextInt( 6 ) ) {
+            case 0:
+                // '=' for ':='
+                name( 'x' );
+                out.append( " = " );
+                expression( 0 );
+                break;
+            case 1:
+                // an unclosed parenthesis
+                name( 'x' );
+                out.append( " := (" );
+                expression( 1 );
+                break;
+            case 2:
+                // no relational operator
+                out.append( "if " );
+                name( 'x' );
+                out.append( ' ' ).append( Integer.toString( random.nextInt( 100 ) ) ).append( " then " );
+                assignment();
+                out.append( " end if" );
+                break;
+            case 3:
+                // a misspelt reserved word, which reads as an identifier
+                out.append( "whiel " );
+                condition();
+                out.append( " loop " );
+                assignment();
+                out.append( " end loop" );
+                break;
+            case 4:
+                // a missing semicolon
+                assignment();
+                out.append( ' ' );
+                assignment();
+                break;
+            default:
+                // an argument that is not an identifier
+                out.append( "call " );
+                name( 'p' );
+                out.append( "(" ).append( Integer.toString( random.nextInt( 100 ) ) ).append( ")" );
+                break;
+        }
+    }
+
+    private void assignment() throws IOException {
+        name( 'x' );
+        out.append( " := " );
+        expression( 0 );
+    }
+
+    private void argumentList() throws IOException {
+        out.append( '(' );
+        int arguments = random.nextInt( 4 );
+        for( int i = 0; i < arguments; i++ ) {
+            if( i > 0 )
+                out.append( ", " );
+            name( 'x' );
+        }
+        out.append( ')' );
+    }
+
+    private void condition() throws IOException {
+        name( 'x' );
+        out.append( ' ' ).append( RELATIONS[random.nextInt( RELATIONS.length )] ).append( ' ' );
+        if( random.nextBoolean() )
+            name( 'y' );
+        else
+            out.append( Integer.toString( random.nextInt( 100 ) ) );
+    }
+
+    private void expression( int depth ) throws IOException {
+        int terms = 1 + random.nextInt( 3 );
+        for( int i = 0; i < terms; i++ ) {
+            if( i > 0 )
+                out.append( ' ' ).append( ADDING[random.nextInt( 2 )] ).append( ' ' );
+            term( depth );
+        }
+    }
+
+    private void term( int depth ) throws IOException {
+        int factors = 1 + random.nextInt( 2 );
+        for( int i = 0; i < factors; i++ ) {
+            if( i > 0 )
+                out.append( ' ' ).append( MULTIPLYING[random.nextInt( 3 )] ).append( ' ' );
+            factor( depth );
+        }
+    }
+
+    private void factor( int depth ) throws IOException {
+        int kind = random.nextInt( (depth < MAX_EXPRESSION_DEPTH) ? 5 : 4 );
+        if( kind < 2 ) {
+            name( 'y' );
+        } else if( kind == 2 ) {
+            out.append( Integer.toString( random.nextInt( 1000 ) ) );
+        } else if( kind == 3 ) {
+            out.append( Integer.toString( random.nextInt( 100 ) ) ).append( '.' )
+                .append( Integer.toString( random.nextInt( 10 ) ) );
+        } else {
+            out.append( '(' );
+            expression( depth + 1 );
+            out.append( ')' );
+        }
+    }
+
+    public static void main( String[] args ) throws IOException {
+        long seed = 312;
+        long statements = 1000;
+        int depth = 3;
+        long errors = 0;
+        String fileName = null;
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals( "-seed" ) && i + 1 < args.length ) {
+                seed = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-statements" ) && i + 1 < args.length ) {
+                statements = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-depth" ) && i + 1 < args.length ) {
+                depth = Integer.parseInt( args[++i] );
+            } else if( args[i].equals( "-errors" ) && i + 1 < args.length ) {
+                errors = Long.parseLong( args[++i] );
+            } else if( fileName == null && !args[i].startsWith( "-" ) ) {
+                fileName = args[i];
+            } else {
+                System.err.println( "usage: java ProgramGenerator [-seed N] [-statements N] [-depth N] [-errors N] [file]" );
+                System.exit( 1 );
+            }
+        }
+
+        ProgramGenerator generator = new ProgramGenerator( seed );
+        generator.setMaxDepth( depth );
+        generator.setErrors( errors );
+        OutputStream stream = (fileName == null) ? System.out : new FileOutputStream( fileName );
+        try( Writer out = new BufferedWriter( new OutputStreamWriter( stream ), 1 << 16 ) ) {
+            generator.write( out, statements );
+        }
+    }
+} // end of class ProgramGenerator
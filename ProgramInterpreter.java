@@ -0,0 +1,149 @@
+/**
+ *
+ * Runs a LoweredProgram by walking its statements and expressions directly,
+ * as the baseline the compiled back ends are measured against.
+ *
+ **/
+
+import java.io.IOException;
+
+public class ProgramInterpreter implements ExecutableProgram
+{
+    private final LoweredProgram program;
+    private double[] numbers;
+    private String[] strings;
+
+    public ProgramInterpreter( LoweredProgram program ) {
+        this.program = program;
+    }
+
+    public void run( ProgramRuntime runtime ) throws IOException {
+        int n = program.variables.length;
+        numbers = new double[n];
+        strings = new String[n];
+        for( int v = 0; v < n; v++ )
+            strings[v] = "";
+        execute( program.body, runtime );
+        runtime.flush();
+    }
+
+    private void execute( LoweredProgram.Statement[] block, ProgramRuntime runtime ) throws IOException {
+        for( LoweredProgram.Statement s : block ) {
+            if( s instanceof LoweredProgram.Assign ) {
+                LoweredProgram.Assign a = (LoweredProgram.Assign) s;
+                numbers[a.variable] = evaluate( a.value );
+            } else if( s instanceof LoweredProgram.AssignString ) {
+                LoweredProgram.AssignString a = (LoweredProgram.AssignString) s;
+                strings[a.variable] = a.value;
+            } else if( s instanceof LoweredProgram.While ) {
+                LoweredProgram.While w = (LoweredProgram.While) s;
+                while( test( w.condition ) )
+                    execute( w.body, runtime );
+            } else if( s instanceof LoweredProgram.If ) {
+                LoweredProgram.If i = (LoweredProgram.If) s;
+                execute( test( i.condition ) ? i.thenPart : i.elsePart, runtime );
+            } else if( s instanceof LoweredProgram.For ) {
+                LoweredProgram.For f = (LoweredProgram.For) s;
+                numbers[f.initial.variable] = evaluate( f.initial.value );
+                while( test( f.condition ) ) {
+                    execute( f.body, runtime );
+                    numbers[f.step.variable] = evaluate( f.step.value );
+                }
+            } else if( s instanceof LoweredProgram.DoUntil ) {
+                LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+                do {
+                    execute( d.body, runtime );
+                } while( !test( d.condition ) );
+            } else if( s instanceof LoweredProgram.Get ) {
+                for( int v : ((LoweredProgram.Get) s).variables ) {
+                    if( program.isString[v] )
+                        strings[v] = runtime.readString();
+                    else
+                        numbers[v] = runtime.readNumber();
+                }
+            } else {
+                for( int v : ((LoweredProgram.Put) s).variables ) {
+                    if( program.isString[v] )
+                        runtime.putString( strings[v] );
+                    else
+                        runtime.putNumber( numbers[v] );
+                }
+                runtime.endLine();
+            }
+        }
+    }
+
+    private boolean test( LoweredProgram.Condition c ) {
+        return compare( c.relation, evaluate( c.left ), evaluate( c.right ) );
+    }
+
+    static boolean compare( int relation, double left, double right ) {
+        switch( relation ) {
+            case Token.equalSymbol:
+                return left == right;
+            case Token.notEqualSymbol:
+                return left != right;
+            case Token.lessThanSymbol:
+                return left < right;
+            case Token.lessEqualSymbol:
+                return left <= right;
+            case Token.greaterThanSymbol:
+                return left > right;
+            default:
+                return left >= right;
+        }
+    }
+
+    /** How deep evaluation recurses before following the left operands of a chain in a loop instead. */
+    private static final int MAX_RECURSION = 500;
+
+    private double evaluate( LoweredProgram.Expression e ) {
+        return evaluate( e, 0 );
+    }
+
+    private double evaluate( LoweredProgram.Expression e, int depth ) {
+        if( e instanceof LoweredProgram.Constant )
+            return ((LoweredProgram.Constant) e).value;
+        if( e instanceof LoweredProgram.Variable )
+            return numbers[((LoweredProgram.Variable) e).variable];
+        LoweredProgram.Binary b = (LoweredProgram.Binary) e;
+        if( depth < MAX_RECURSION )
+            return apply( b.operator, evaluate( b.left, depth + 1 ), evaluate( b.right, depth + 1 ) );
+        return evaluateChain( b );
+    }
+
+    /** Evaluates a long chain of operators, which leans to the left, without recursing down it. */
+    private double evaluateChain( LoweredProgram.Binary e ) {
+        int length = 0;
+        LoweredProgram.Expression leftmost = e;
+        while( leftmost instanceof LoweredProgram.Binary ) {
+            leftmost = ((LoweredProgram.Binary) leftmost).left;
+            length++;
+        }
+        LoweredProgram.Binary[] spine = new LoweredProgram.Binary[length];
+        LoweredProgram.Expression node = e;
+        for( int i = length - 1; i >= 0; i-- ) {
+            spine[i] = (LoweredProgram.Binary) node;
+            node = spine[i].left;
+        }
+        double value = evaluate( leftmost, 0 );
+        for( LoweredProgram.Binary b : spine )
+            value = apply( b.operator, value, evaluate( b.right, 0 ) );
+        return value;
+    }
+
+    static double apply( int operator, double left, double right ) {
+        switch( operator ) {
+            case Token.plusSymbol:
+                return left + right;
+            case Token.minusSymbol:
+                return left - right;
+            case Token.timesSymbol:
+                return left * right;
+            case Token.divideSymbol:
+                return left / right;
+            default:
+                return ProgramRuntime.remainder( left, right );
+        }
+    }
+} // end of class ProgramInterpreter
@@ -0,0 +1,137 @@
+/**
+ *
+ * The input and output of a running 312 program, shared by every back end so
+ * that they all behave the same: compiled classes call these methods directly.
+ *
+ * get reads whitespace separated words, as numbers or, for string variables,
+ * as they are; once the input is used up every read gives 0 or "".  put writes
+ * its values separated by spaces, and a number with no fractional part is
+ * written without one.  Input and output go through buffers of their own,
+ * which cost nothing until the program first reads or writes, so a short
+ * program starts quickly.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.Charset;
+
+public final class ProgramRuntime
+{
+    private final InputStream in;
+    private final OutputStream out;
+    /** Input read but not yet used, allocated on the first get. */
+    private byte[] input;
+    private int inputPosition, inputLimit;
+    private final ByteArrayOutputStream word = new ByteArrayOutputStream();
+    /** Output not yet written. */
+    private final StringBuilder output = new StringBuilder();
+    /** Whether put has written anything on the current line. */
+    private boolean midLine;
+
+    /** @param in Where get reads from; it is read through a buffer here.
+      @param out Where put writes to; it is written through a buffer here. */
+    public ProgramRuntime( InputStream in, OutputStream out ) {
+        this.in = in;
+        this.out = out;
+    }
+
+    /** @return The next byte of input, or -1 at the end. */
+    private int read() throws IOException {
+        if( inputPosition == inputLimit ) {
+            if( input == null )
+                input = new byte[8192];
+            inputLimit = in.read( input, 0, input.length );
+            inputPosition = 0;
+            if( inputLimit <= 0 ) {
+                inputLimit = 0;
+                return -1;
+            }
+        }
+        return input[inputPosition++] & 0xff;
+    }
+
+    private static boolean isSpace( int c ) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0b;
+    }
+
+    /** @return The next whitespace separated word of input, or null at the end.  Only ASCII
+      whitespace separates words, so the bytes of any other character are never split. */
+    private String readWord() throws IOException {
+        word.reset();
+        int c;
+        do {
+            c = read();
+        } while( c >= 0 && isSpace( c ) );
+        while( c >= 0 && !isSpace( c ) ) {
+            word.write( c );
+            c = read();
+        }
+        return (word.size() == 0) ? null : word.toString( Charset.defaultCharset() );
+    }
+
+    /** Reads a number for get.  @throws NumberFormatException if the next word is not one. */
+    public double readNumber() throws IOException {
+        String w = readWord();
+        return (w == null) ? 0 : Double.parseDouble( w );
+    }
+
+    /** Reads a word for get into a string variable. */
+    public String readString() throws IOException {
+        String w = readWord();
+        return (w == null) ? "" : w;
+    }
+
+    private void separate() {
+        if( midLine )
+            output.append( ' ' );
+        midLine = true;
+    }
+
+    /** Writes a number for put. */
+    public void putNumber( double value ) {
+        separate();
+        output.append( format( value ) );
+    }
+
+    /** Writes a string for put. */
+    public void putString( String value ) {
+        separate();
+        output.append( value );
+    }
+
+    /** Ends the line of a put, writing out the output so far once there is enough of it. */
+    public void endLine() throws IOException {
+        output.append( '\n' );
+        midLine = false;
+        if( output.length() >= 8192 )
+            flush();
+    }
+
+    /** Writes out everything put so far. */
+    public void flush() throws IOException {
+        out.write( output.toString().getBytes( Charset.defaultCharset() ) );
+        output.setLength( 0 );
+        out.flush();
+    }
+
+    /** The % operator, exactly as Java's remainder on doubles, but much quicker for whole numbers
+      (the usual case), for which it is a remainder on longs. */
+    public static double remainder( double a, double b ) {
+        if( Math.abs( a ) < 0x1p53 && Math.abs( b ) < 0x1p53 ) {
+            long la = (long) a, lb = (long) b;
+            if( la == a && lb == b && lb != 0 ) {
+                long r = la % lb;
+                // keeping the sign of a zero result, which the long has lost
+                return (r == 0) ? Math.copySign( 0.0, a ) : r;
+            }
+        }
+        return a % b;
+    }
+
+    /** @return A number as put writes it: whole numbers without a fraction, others as Double.toString. */
+    public static String format( double value ) {
+        if( value == Math.rint( value ) && Math.abs( value ) < 1e15 )
+            return Long.toString( (long) value );
+        return Double.toString( value );
+    }
+} // end of class ProgramRuntime
@@ -0,0 +1,122 @@
+/**
+ *
+ * Runs a RegisterProgram: one loop that switches on each opcode in turn.  It
+ * has no class to generate and load, so it starts as quickly as
+ * ProgramInterpreter, but it neither walks a tree nor looks anything up while
+ * it runs, and its loop is small enough for the JIT to compile well.
+ *
+ **/
+
+import java.io.IOException;
+
+public class RegisterInterpreter implements ExecutableProgram
+{
+    private final RegisterProgram program;
+
+    public RegisterInterpreter( RegisterProgram program ) {
+        this.program = program;
+    }
+
+    public void run( ProgramRuntime runtime ) throws IOException {
+        final int[] code = program.code;
+        final double[] r = program.numbers.clone();
+        final String[] s = program.strings.clone();
+        int pc = 0;
+        for( ;; ) {
+            switch( code[pc] ) {
+                case RegisterProgram.ADD:
+                    r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case RegisterProgram.SUBTRACT:
+                    r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case RegisterProgram.MULTIPLY:
+                    r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case RegisterProgram.DIVIDE:
+                    r[code[pc + 1]] = r[code[pc + 2]] / r[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case RegisterProgram.REMAINDER:
+                    r[code[pc + 1]] = ProgramRuntime.remainder( r[code[pc + 2]], r[code[pc + 3]] );
+                    pc += 4;
+                    break;
+                case RegisterProgram.MOVE:
+                    r[code[pc + 1]] = r[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case RegisterProgram.MOVE_STRING:
+                    s[code[pc + 1]] = s[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case RegisterProgram.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case RegisterProgram.GET_NUMBER:
+                    r[code[pc + 1]] = runtime.readNumber();
+                    pc += 2;
+                    break;
+                case RegisterProgram.GET_STRING:
+                    s[code[pc + 1]] = runtime.readString();
+                    pc += 2;
+                    break;
+                case RegisterProgram.PUT_NUMBER:
+                    runtime.putNumber( r[code[pc + 1]] );
+                    pc += 2;
+                    break;
+                case RegisterProgram.PUT_STRING:
+                    runtime.putString( s[code[pc + 1]] );
+                    pc += 2;
+                    break;
+                case RegisterProgram.END_LINE:
+                    runtime.endLine();
+                    pc += 1;
+                    break;
+                case RegisterProgram.HALT:
+                    runtime.flush();
+                    return;
+                case RegisterProgram.IF_EQUAL:
+                    pc = (r[code[pc + 1]] == r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.IF_NOT_EQUAL:
+                    pc = (r[code[pc + 1]] != r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.IF_LESS:
+                    pc = (r[code[pc + 1]] < r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.IF_LESS_EQUAL:
+                    pc = (r[code[pc + 1]] <= r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.IF_GREATER:
+                    pc = (r[code[pc + 1]] > r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.IF_GREATER_EQUAL:
+                    pc = (r[code[pc + 1]] >= r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.UNLESS_EQUAL:
+                    pc = !(r[code[pc + 1]] == r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.UNLESS_NOT_EQUAL:
+                    pc = !(r[code[pc + 1]] != r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.UNLESS_LESS:
+                    pc = !(r[code[pc + 1]] < r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.UNLESS_LESS_EQUAL:
+                    pc = !(r[code[pc + 1]] <= r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.UNLESS_GREATER:
+                    pc = !(r[code[pc + 1]] > r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                case RegisterProgram.UNLESS_GREATER_EQUAL:
+                    pc = !(r[code[pc + 1]] >= r[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                    break;
+                default:
+                    throw new IllegalStateException( "bad opcode " + code[pc] + " at " + pc );
+            }
+        }
+    }
+} // end of class RegisterInterpreter
@@ -0,0 +1,323 @@
+/**
+ *
+ * A LoweredProgram flattened into register code for RegisterInterpreter: one
+ * int array of instructions, each an opcode followed by its operands, with
+ * every variable, constant and intermediate value in a numbered register and
+ * every jump already resolved to the index of its target.
+ *
+ * Numbers are kept in one array of registers: the variables first, by their
+ * LoweredProgram numbers, then each distinct constant, then the temporaries
+ * that expressions need.  Strings are kept in another: the string variables,
+ * by the same numbers, then the string constants.  Both arrays are filled
+ * in here with the starting values (0, "" and the constants), so that running
+ * a program starts with a copy of them and never loads a constant.
+ *
+ * Instructions, where d is the register written, a and b registers read and
+ * t the index of an instruction:
+ *
+ *   ADD d a b, SUBTRACT d a b, MULTIPLY d a b, DIVIDE d a b, REMAINDER d a b
+ *   MOVE d a              number register a to d
+ *   MOVE_STRING d a       string register a to d
+ *   JUMP t
+ *   IF_EQUAL a b t ...    jump if a = b, and likewise for the other relations
+ *   UNLESS_EQUAL a b t ...  jump if not a = b; with NaN this is not the
+ *                           same as IF_NOT_EQUAL
+ *   GET_NUMBER d, GET_STRING d, PUT_NUMBER a, PUT_STRING a, END_LINE
+ *   HALT
+ *
+ **/
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class RegisterProgram
+{
+    public static final int ADD = 0, SUBTRACT = 1, MULTIPLY = 2, DIVIDE = 3, REMAINDER = 4, MOVE = 5,
+        MOVE_STRING = 6, JUMP = 7, GET_NUMBER = 8, GET_STRING = 9, PUT_NUMBER = 10, PUT_STRING = 11,
+        END_LINE = 12, HALT = 13;
+    // Each relation in the order equal, not equal, less, less or equal, greater, greater or equal.
+    public static final int IF_EQUAL = 14, IF_NOT_EQUAL = 15, IF_LESS = 16, IF_LESS_EQUAL = 17, IF_GREATER = 18,
+        IF_GREATER_EQUAL = 19;
+    public static final int UNLESS_EQUAL = 20, UNLESS_NOT_EQUAL = 21, UNLESS_LESS = 22, UNLESS_LESS_EQUAL = 23,
+        UNLESS_GREATER = 24, UNLESS_GREATER_EQUAL = 25;
+
+    private static final String[] NAMES = {
+        "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "REMAINDER", "MOVE", "MOVE_STRING", "JUMP", "GET_NUMBER",
+        "GET_STRING", "PUT_NUMBER", "PUT_STRING", "END_LINE", "HALT", "IF_EQUAL", "IF_NOT_EQUAL", "IF_LESS",
+        "IF_LESS_EQUAL", "IF_GREATER", "IF_GREATER_EQUAL", "UNLESS_EQUAL", "UNLESS_NOT_EQUAL", "UNLESS_LESS",
+        "UNLESS_LESS_EQUAL", "UNLESS_GREATER", "UNLESS_GREATER_EQUAL"
+    };
+
+    /** The number of ints each instruction takes, by opcode. */
+    static final int[] LENGTHS = { 4, 4, 4, 4, 4, 3, 3, 2, 2, 2, 2, 2, 1, 1, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4 };
+
+    /** The instructions. */
+    public final int[] code;
+    /** The starting values of the number registers. */
+    public final double[] numbers;
+    /** The starting values of the string registers. */
+    public final String[] strings;
+    /** The names of the variables, which are the first registers of each kind. */
+    public final String[] variables;
+    public final String fileName;
+
+    private RegisterProgram( int[] code, double[] numbers, String[] strings, String[] variables, String fileName ) {
+        this.code = code;
+        this.numbers = numbers;
+        this.strings = strings;
+        this.variables = variables;
+        this.fileName = fileName;
+    }
+
+    /** @return The register code for a program. */
+    public static RegisterProgram compile( LoweredProgram program ) {
+        return new Assembler( program ).assemble();
+    }
+
+    /** @return The instructions, one to a line, with their indices. */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for( int pc = 0; pc < code.length; pc += LENGTHS[code[pc]] ) {
+            text.append( pc ).append( ": " ).append( NAMES[code[pc]] );
+            for( int i = 1; i < LENGTHS[code[pc]]; i++ )
+                text.append( ' ' ).append( code[pc + i] );
+            text.append( '\n' );
+        }
+        return text.toString();
+    }
+
+    /** Writes the instructions for a LoweredProgram. */
+    private static final class Assembler {
+        private final LoweredProgram program;
+        private int[] code = new int[256];
+        private int length;
+        /** The number registers holding constants, by the bits of the constant. */
+        private final HashMap<Long, Integer> constants = new HashMap<Long, Integer>();
+        private final HashMap<String, Integer> stringConstants = new HashMap<String, Integer>();
+        private double[] constantValues = new double[16];
+        private String[] stringValues = new String[16];
+        /** The temporaries used, counting from 0 for the first. */
+        private int temporaries;
+
+        Assembler( LoweredProgram program ) {
+            this.program = program;
+        }
+
+        RegisterProgram assemble() {
+            block( program.body );
+            emit( HALT );
+            int n = program.variables.length;
+            // Temporaries come after the constants, which are only known now, so move them there.
+            int firstTemporary = n + constants.size();
+            for( int pc = 0; pc < length; pc += LENGTHS[code[pc]] )
+                relocateTemporaries( pc, firstTemporary );
+
+            double[] numbers = new double[firstTemporary + temporaries];
+            System.arraycopy( constantValues, 0, numbers, n, constants.size() );
+            String[] strings = new String[n + stringConstants.size()];
+            Arrays.fill( strings, 0, n, "" );
+            System.arraycopy( stringValues, 0, strings, n, stringConstants.size() );
+            return new RegisterProgram( Arrays.copyOf( code, length ), numbers, strings, program.variables,
+                    program.fileName );
+        }
+
+        /** Until assembly ends, temporary registers are written as -1 - the temporary's number. */
+        private void relocateTemporaries( int pc, int firstTemporary ) {
+            int op = code[pc];
+            if( op == JUMP || op == MOVE_STRING || op == GET_STRING || op == PUT_STRING )
+                return;
+            int registers = (op >= IF_EQUAL) ? 2 : LENGTHS[op] - 1;
+            for( int i = 1; i <= registers; i++ ) {
+                if( code[pc + i] < 0 )
+                    code[pc + i] = firstTemporary - 1 - code[pc + i];
+            }
+        }
+
+        private void emit( int... instruction ) {
+            if( length + instruction.length > code.length )
+                code = Arrays.copyOf( code, Math.max( code.length * 2, length + instruction.length ) );
+            System.arraycopy( instruction, 0, code, length, instruction.length );
+            length += instruction.length;
+        }
+
+        private int constant( double value ) {
+            Long bits = Double.doubleToRawLongBits( value );
+            Integer register = constants.get( bits );
+            if( register == null ) {
+                int index = constants.size();
+                if( index == constantValues.length )
+                    constantValues = Arrays.copyOf( constantValues, index * 2 );
+                constantValues[index] = value;
+                register = program.variables.length + index;
+                constants.put( bits, register );
+            }
+            return register;
+        }
+
+        private int stringConstant( String value ) {
+            Integer register = stringConstants.get( value );
+            if( register == null ) {
+                int index = stringConstants.size();
+                if( index == stringValues.length )
+                    stringValues = Arrays.copyOf( stringValues, index * 2 );
+                stringValues[index] = value;
+                register = program.variables.length + index;
+                stringConstants.put( value, register );
+            }
+            return register;
+        }
+
+        private void block( LoweredProgram.Statement[] statements ) {
+            for( LoweredProgram.Statement s : statements )
+                statement( s );
+        }
+
+        private void statement( LoweredProgram.Statement s ) {
+            if( s instanceof LoweredProgram.Assign ) {
+                assign( (LoweredProgram.Assign) s );
+            } else if( s instanceof LoweredProgram.AssignString ) {
+                LoweredProgram.AssignString a = (LoweredProgram.AssignString) s;
+                emit( MOVE_STRING, a.variable, stringConstant( a.value ) );
+            } else if( s instanceof LoweredProgram.While ) {
+                // The test is at the bottom, so each time round the loop takes one jump.
+                LoweredProgram.While w = (LoweredProgram.While) s;
+                int jump = length;
+                emit( JUMP, 0 );
+                int top = length;
+                block( w.body );
+                code[jump + 1] = length;
+                condition( w.condition, IF_EQUAL, top );
+            } else if( s instanceof LoweredProgram.If ) {
+                LoweredProgram.If i = (LoweredProgram.If) s;
+                int test = condition( i.condition, UNLESS_EQUAL, 0 );
+                block( i.thenPart );
+                if( i.elsePart.length > 0 ) {
+                    int jump = length;
+                    emit( JUMP, 0 );
+                    code[test] = length;
+                    block( i.elsePart );
+                    code[jump + 1] = length;
+                } else {
+                    code[test] = length;
+                }
+            } else if( s instanceof LoweredProgram.For ) {
+                LoweredProgram.For f = (LoweredProgram.For) s;
+                assign( f.initial );
+                int jump = length;
+                emit( JUMP, 0 );
+                int top = length;
+                block( f.body );
+                assign( f.step );
+                code[jump + 1] = length;
+                condition( f.condition, IF_EQUAL, top );
+            } else if( s instanceof LoweredProgram.DoUntil ) {
+                LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+                int top = length;
+                block( d.body );
+                condition( d.condition, UNLESS_EQUAL, top );
+            } else if( s instanceof LoweredProgram.Get ) {
+                for( int v : ((LoweredProgram.Get) s).variables )
+                    emit( program.isString[v] ? GET_STRING : GET_NUMBER, v );
+            } else {
+                for( int v : ((LoweredProgram.Put) s).variables )
+                    emit( program.isString[v] ? PUT_STRING : PUT_NUMBER, v );
+                emit( END_LINE );
+            }
+        }
+
+        private void assign( LoweredProgram.Assign a ) {
+            int value = expression( a.value, 0, a.variable );
+            if( value != a.variable )
+                emit( MOVE, a.variable, value );
+        }
+
+        /** Writes a jump on a condition.
+
+          @param kind IF_EQUAL to jump if the condition holds, UNLESS_EQUAL if it does not.
+          @return The index of the jump's target, for filling in later.
+         */
+        private int condition( LoweredProgram.Condition c, int kind, int target ) {
+            int left = expression( c.left, 0, -1 );
+            int right = expression( c.right, 1, -2 );
+            int relation;
+            switch( c.relation ) {
+                case Token.equalSymbol:
+                    relation = 0;
+                    break;
+                case Token.notEqualSymbol:
+                    relation = 1;
+                    break;
+                case Token.lessThanSymbol:
+                    relation = 2;
+                    break;
+                case Token.lessEqualSymbol:
+                    relation = 3;
+                    break;
+                case Token.greaterThanSymbol:
+                    relation = 4;
+                    break;
+                default:
+                    relation = 5;
+                    break;
+            }
+            emit( kind + relation, left, right, target );
+            return length - 1;
+        }
+
+        /** Writes the code for an expression.
+
+          @param temporary The first temporary the code may use; those before it hold values still needed.
+          @param into Where to put the value if it has to be computed: a register, or a temporary
+            written as -1 - its number.
+          @return The register holding the value: into, or the variable or constant's own register.
+         */
+        private int expression( LoweredProgram.Expression e, int temporary, int into ) {
+            if( e instanceof LoweredProgram.Constant )
+                return constant( ((LoweredProgram.Constant) e).value );
+            if( e instanceof LoweredProgram.Variable )
+                return ((LoweredProgram.Variable) e).variable;
+
+            // Chains of operators lean to the left, so the left operands are followed in a loop, and
+            // only right operands are compiled by recursion.
+            int chain = 0;
+            LoweredProgram.Expression leftmost = e;
+            while( leftmost instanceof LoweredProgram.Binary ) {
+                leftmost = ((LoweredProgram.Binary) leftmost).left;
+                chain++;
+            }
+            LoweredProgram.Binary[] spine = new LoweredProgram.Binary[chain];
+            LoweredProgram.Expression node = e;
+            for( int i = chain - 1; i >= 0; i-- ) {
+                spine[i] = (LoweredProgram.Binary) node;
+                node = spine[i].left;
+            }
+            // The running value is kept in one temporary, and the right operands worked out in the next.
+            int accumulator = -1 - temporary;
+            int value = expression( leftmost, temporary, accumulator );
+            for( int i = 0; i < chain; i++ ) {
+                int right = expression( spine[i].right, temporary + 1, -2 - temporary );
+                int target = (i == chain - 1) ? into : accumulator;
+                emit( operation( spine[i].operator ), target, value, right );
+                value = target;
+            }
+            temporaries = Math.max( temporaries, temporary + 2 );
+            return value;
+        }
+
+        private static int operation( int operator ) {
+            switch( operator ) {
+                case Token.plusSymbol:
+                    return ADD;
+                case Token.minusSymbol:
+                    return SUBTRACT;
+                case Token.timesSymbol:
+                    return MULTIPLY;
+                case Token.divideSymbol:
+                    return DIVIDE;
+                default:
+                    return REMAINDER;
+            }
+        }
+    }
+} // end of class RegisterProgram
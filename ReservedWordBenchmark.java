@@ -0,0 +1,123 @@
+/**
+ *
+ * Benchmark for reserved word recognition in the lexical analyser.
+ *
+ * Compares the original lookup (lower-case a new String, then compare it
+ * against each reserved word in turn) with the perfect hash used by
+ * LexicalAnalyser, and measures end-to-end lexing throughput on an
+ * identifier-heavy source.
+ *
+ * Usage: java ReservedWordBenchmark [words] [rounds]
+ *
+ **/
+import java.io.* ;
+import java.util.Random ;
+
+public class ReservedWordBenchmark
+{
+	/** The words checked by the original linear lookup, in its order. */
+	private static final String[] legacyWords = {
+		"begin", "call", "do", "else", "end", "float", "if", "integer",
+		"is", "loop", "procedure", "string", "then", "until", "while", "for"
+	} ;
+
+	/** Defeats dead code elimination of the measured loops. */
+	private static int sink ;
+
+	/** The lookup as it was before the perfect hash: two allocations and a linear scan. */
+	private static int legacyLookup(char[] text, int length)
+	{
+		String t = (new String(text, 0, length)).toLowerCase() ;
+		int i = 0 ;
+		while ((i < legacyWords.length) && (!t.equals(legacyWords[i])))
+			i++ ;
+		return (i < legacyWords.length) ? i : -1 ;
+	} // end of method legacyLookup
+
+	/** Builds a list of words, roughly one in four of them reserved and in mixed case. */
+	private static char[][] makeWords(int count, Random random)
+	{
+		String[] identifiers = { "x1", "total", "counter", "i", "result", "value2", "tmp", "Doing", "ender", "iffy" } ;
+		char[][] words = new char[count][] ;
+		for (int i = 0; i < count; i++)
+		{
+			String w ;
+			if (random.nextInt(4) == 0)
+			{
+				w = legacyWords[random.nextInt(legacyWords.length)] ;
+				if (random.nextBoolean())
+					w = w.toUpperCase() ;
+			}
+			else
+				w = identifiers[random.nextInt(identifiers.length)] ;
+			words[i] = w.toCharArray() ;
+		}
+		return words ;
+	} // end of method makeWords
+
+	/** Times one pass of the given lookup over all words, in nanoseconds. */
+	private static long timeLookups(char[][] words, boolean legacy)
+	{
+		long start = System.nanoTime() ;
+		int acc = 0 ;
+		for (char[] w : words)
+			acc += legacy ? legacyLookup(w, w.length) : LexicalAnalyser.reservedWordSymbol(w, w.length) ;
+		sink += acc ;
+		return System.nanoTime() - start ;
+	} // end of method timeLookups
+
+	/** Writes the words out as a program-like source file. */
+	private static File writeSource(char[][] words) throws IOException
+	{
+		File file = File.createTempFile("identifiers", ".312") ;
+		file.deleteOnExit() ;
+		try (Writer out = new BufferedWriter(new FileWriter(file)))
+		{
+			for (int i = 0; i < words.length; i++)
+			{
+				out.write(words[i]) ;
+				out.write(((i % 12) == 11) ? "\n" : " ") ;
+			}
+		}
+		return file ;
+	} // end of method writeSource
+
+	/** Lexes the whole file and returns the number of tokens seen. */
+	private static int lexAll(File file) throws IOException
+	{
+		LexicalAnalyser lex = new LexicalAnalyser(file.getPath(), true) ;
+		int count = 0 ;
+		while (lex.getNextToken().symbol != Token.eofSymbol)
+			count++ ;
+		return count ;
+	} // end of method lexAll
+
+	public static void main(String[] args) throws IOException
+	{
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000 ;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10 ;
+		char[][] words = makeWords(count, new Random(312)) ;
+
+		long legacy = Long.MAX_VALUE, hashed = Long.MAX_VALUE ;
+		for (int r = 0; r < rounds; r++)
+		{
+			legacy = Math.min(legacy, timeLookups(words, true)) ;
+			hashed = Math.min(hashed, timeLookups(words, false)) ;
+		}
+		System.out.printf("lookup  legacy: %6.1f ns/word   perfect hash: %6.1f ns/word%n",
+				(double) legacy / count, (double) hashed / count) ;
+
+		File file = writeSource(words) ;
+		long best = Long.MAX_VALUE ;
+		int tokens = 0 ;
+		for (int r = 0; r < rounds; r++)
+		{
+			long start = System.nanoTime() ;
+			tokens = lexAll(file) ;
+			best = Math.min(best, System.nanoTime() - start) ;
+		}
+		System.out.printf("lexing  %d tokens: %.1f Mtokens/s%n", tokens, tokens * 1000.0 / best) ;
+		if (sink == 42)
+			System.out.println() ;
+	} // end of main method
+} // end of class ReservedWordBenchmark
@@ -0,0 +1,93 @@
+/**
+ *
+ * Runs a 312 program, reading the input for get from standard input and
+ * writing what put writes to standard output.
+ *
+ * Usage: java RunProgram [-interpret | -registers] [-optimize] [-report] [-save directory]
+ *                        [-repeat N] file
+ *
+ * compiles the program to a class with BytecodeGenerator, or with -interpret
+ * walks it with ProgramInterpreter instead, or with -registers runs it as
+ * register code with RegisterInterpreter.  -optimize runs the passes of
+ * PassManager over the program first, and -report does so and writes what
+ * each pass did, and how long it took, to standard error.  -save also writes the class file
+ * to a directory.  -repeat runs the program N times on the same input, showing
+ * the output of the first run only, and reports the time per run on standard
+ * error, for comparing the back ends.
+ *
+ **/
+
+import java.io.*;
+
+public class RunProgram
+{
+    public static void main( String[] args ) throws IOException {
+        boolean interpret = false, registers = false, optimize = false, report = false;
+        String saveDirectory = null;
+        int repeat = 0;
+        String fileName = null;
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals( "-interpret" ) ) {
+                interpret = true;
+            } else if( args[i].equals( "-registers" ) ) {
+                registers = true;
+            } else if( args[i].equals( "-optimize" ) ) {
+                optimize = true;
+            } else if( args[i].equals( "-report" ) ) {
+                optimize = report = true;
+            } else if( args[i].equals( "-save" ) && i + 1 < args.length ) {
+                saveDirectory = args[++i];
+            } else if( args[i].equals( "-repeat" ) && i + 1 < args.length ) {
+                repeat = Integer.parseInt( args[++i] );
+            } else if( fileName == null && !args[i].startsWith( "-" ) ) {
+                fileName = args[i];
+            } else {
+                fileName = null;
+                break;
+            }
+        }
+        if( fileName == null || (interpret && registers) ) {
+            System.err.println( "usage: java RunProgram [-interpret | -registers] [-optimize] [-report] [-save directory]"
+                    + " [-repeat N] file" );
+            System.exit( 1 );
+        }
+
+        ExecutableProgram executable;
+        try {
+            LoweredProgram program = LoweredProgram.read( fileName );
+            if( optimize ) {
+                PassManager passes = PassManager.standard();
+                program = passes.optimize( program );
+                if( report )
+                    passes.report( System.err );
+            }
+            if( interpret ) {
+                executable = new ProgramInterpreter( program );
+            } else if( registers ) {
+                executable = new RegisterInterpreter( RegisterProgram.compile( program ) );
+            } else {
+                String className = BytecodeGenerator.classNameFor( fileName );
+                byte[] classFile = new BytecodeGenerator( program, className ).generate();
+                if( saveDirectory != null )
+                    BytecodeGenerator.save( className, classFile, new File( saveDirectory ) );
+                executable = BytecodeGenerator.load( className, classFile );
+            }
+        } catch( CompilationException e ) {
+            System.err.println( e.getMessage() );
+            System.exit( 1 );
+            return;
+        }
+
+        if( repeat <= 0 ) {
+            executable.run( new ProgramRuntime( System.in, System.out ) );
+            return;
+        }
+        byte[] input = System.in.readAllBytes();
+        executable.run( new ProgramRuntime( new ByteArrayInputStream( input ), System.out ) );
+        long start = System.nanoTime();
+        for( int i = 1; i < repeat; i++ )
+            executable.run( new ProgramRuntime( new ByteArrayInputStream( input ), OutputStream.nullOutputStream() ) );
+        if( repeat > 1 )
+            System.err.printf( "%.3f ms per run%n", (System.nanoTime() - start) / 1e6 / (repeat - 1) );
+    }
+} // end of class RunProgram
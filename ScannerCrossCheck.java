@@ -0,0 +1,153 @@
+/**
+ *
+ * Checks that DfaScanner and LexicalAnalyser agree, token for token: the
+ * symbol, text and line of every token, where in the source it starts and
+ * ends, and whether a string was left open, on each program given.
+ *
+ * Usage: java ScannerCrossCheck [-generate N] [-seed N] [-statements N] [-noise N] [file ...]
+ *
+ * checks the named files, or with none the programs in "Programs Folder", and
+ * then N programs from ProgramGenerator, seeded one after another from the
+ * given seed.  Each program is checked as it is, again with N in every
+ * thousand of its chars replaced by ones chosen to catch the scanners out
+ * (line terminators of every kind, NUL, stray quotes and operators, letters
+ * and digits outside ASCII), and again scanned from part way through.  Exits
+ * with status 1 if the scanners disagree on any program.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class ScannerCrossCheck
+{
+    /** The chars that mutated programs are salted with. */
+    private static final char[] NOISE = {
+        '\r', '\n', '\r', '\t', '\000', '"', '-', '-', '!', '=', ':', '<', '>', '.', '.', '0', '7', 'x', ' ', '\f', '#',
+        '\u00e9', '\u0416', '\u0663', '\u00b2', '\u00a0', '\u2028', '\ud835', '\uffff', '\u00ff'
+    };
+
+    private int programs, failures;
+    private long tokens, chainNanos, dfaNanos;
+
+    /** Scans one program with both scanners, from offset, and reports any difference. */
+    private void check( String name, char[] text, int offset, int firstLine ) throws IOException {
+        // Timed apart from the comparison, so that the times are those of scanning alone.
+        long start = System.nanoTime();
+        new TokenBuffer().fill( new LexicalAnalyser( text, offset, text.length, firstLine ) );
+        chainNanos += System.nanoTime() - start;
+        start = System.nanoTime();
+        new TokenBuffer().fill( new DfaScanner( text, offset, text.length, firstLine ) );
+        dfaNanos += System.nanoTime() - start;
+
+        LexicalAnalyser chain = new LexicalAnalyser( text, offset, text.length, firstLine );
+        LexicalAnalyser dfa = new DfaScanner( text, offset, text.length, firstLine );
+        programs++;
+        String difference = null;
+        for( int i = 0; difference == null; i++ ) {
+            int a = chain.nextSymbol(), b = dfa.nextSymbol();
+            String textA = chain.tokenText( a ), textB = dfa.tokenText( b );
+            tokens++;
+            if( a != b || !textA.equals( textB ) || chain.tokenLineNumber() != dfa.tokenLineNumber() )
+                difference = "token " + i + ": chain " + describe( a, textA, chain.tokenLineNumber() )
+                        + ", dfa " + describe( b, textB, dfa.tokenLineNumber() );
+            else if( chain.tokenStartOffset() != dfa.tokenStartOffset() || chain.tokenEndOffset() != dfa.tokenEndOffset() )
+                difference = "token " + i + " " + describe( a, textA, chain.tokenLineNumber() ) + ": chain at "
+                        + chain.tokenStartOffset() + ".." + chain.tokenEndOffset() + ", dfa at "
+                        + dfa.tokenStartOffset() + ".." + dfa.tokenEndOffset();
+            else if( chain.unterminatedString() != dfa.unterminatedString() )
+                difference = "token " + i + ": unterminated string, chain " + chain.unterminatedString()
+                        + ", dfa " + dfa.unterminatedString();
+            else if( a == Token.eofSymbol )
+                break;
+        }
+        if( difference != null ) {
+            failures++;
+            System.out.println( name + ": " + difference );
+        }
+    }
+
+    private static String describe( int symbol, String text, int line ) {
+        StringBuilder s = new StringBuilder( Token.getName( symbol ) ).append( " '" );
+        for( int i = 0; i < text.length(); i++ ) {
+            char c = text.charAt( i );
+            if( c < ' ' || c > '~' )
+                s.append( String.format( "\\u%04x", (int) c ) );
+            else
+                s.append( c );
+        }
+        return s.append( "' line " ).append( line ).toString();
+    }
+
+    /** Checks a program as it is, salted with noise, and from a random point part way through. */
+    private void checkAll( String name, char[] text, Random random, int noise ) throws IOException {
+        check( name, text, 0, 0 );
+        char[] salted = text.clone();
+        for( int i = 0; i < salted.length; i++ ) {
+            if( random.nextInt( 1000 ) < noise )
+                salted[i] = NOISE[random.nextInt( NOISE.length )];
+        }
+        check( name + " with noise", salted, 0, 0 );
+        if( salted.length > 0 ) {
+            int offset = random.nextInt( salted.length + 1 );
+            check( name + " with noise from " + offset, salted, offset, random.nextInt( 100 ) );
+        }
+    }
+
+    public static void main( String[] args ) throws IOException {
+        long seed = 312;
+        int generate = 0;
+        long statements = 200;
+        int noise = 20;
+        ScannerCrossCheck checker = new ScannerCrossCheck();
+        boolean anyFiles = false;
+        Random random = new Random( seed );
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals( "-generate" ) && i + 1 < args.length ) {
+                generate = Integer.parseInt( args[++i] );
+            } else if( args[i].equals( "-seed" ) && i + 1 < args.length ) {
+                seed = Long.parseLong( args[++i] );
+                random = new Random( seed );
+            } else if( args[i].equals( "-statements" ) && i + 1 < args.length ) {
+                statements = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-noise" ) && i + 1 < args.length ) {
+                noise = Integer.parseInt( args[++i] );
+            } else if( !args[i].startsWith( "-" ) ) {
+                File file = new File( args[i] );
+                checker.checkAll( file.getPath(), read( file ), random, noise );
+                anyFiles = true;
+            } else {
+                System.err.println( "usage: java ScannerCrossCheck [-generate N] [-seed N] [-statements N] [-noise N] [file ...]" );
+                System.exit( 1 );
+            }
+        }
+
+        if( !anyFiles ) {
+            for( int n = 0; ; n++ ) {
+                File file = new File( "Programs Folder", "program" + n );
+                if( !file.exists() )
+                    break;
+                checker.checkAll( file.getPath(), read( file ), random, noise );
+            }
+        }
+
+        for( int i = 0; i < generate; i++ ) {
+            ProgramGenerator generator = new ProgramGenerator( seed + i );
+            generator.setErrors( (i % 2 == 0) ? 0 : 1 );
+            StringBuilder text = new StringBuilder();
+            generator.write( text, statements );
+            checker.checkAll( "generated(seed " + (seed + i) + ")", text.toString().toCharArray(), random, noise );
+        }
+
+        System.out.printf( "%d scans, %d tokens, %d disagreements; chain %.1f ms, dfa %.1f ms%n",
+                checker.programs, checker.tokens, checker.failures, checker.chainNanos / 1e6, checker.dfaNanos / 1e6 );
+        if( checker.failures > 0 )
+            System.exit( 1 );
+    }
+
+    private static char[] read( File file ) throws IOException {
+        return new String( Files.readAllBytes( file.toPath() ), Charset.defaultCharset() ).toCharArray();
+    }
+} // end of class ScannerCrossCheck
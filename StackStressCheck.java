@@ -0,0 +1,110 @@
+/**
+ *
+ * Checks that the parsers' use of the stack does not grow with the length of
+ * a statement list, by parsing one very long generated program on a thread
+ * with a small stack.  SyntaxAnalyser reads a statement list in a loop rather
+ * than by recursion, and TableDrivenParser keeps its own stack on the heap;
+ * if either came to recurse once per statement, this would overflow.
+ *
+ * Usage: java StackStressCheck [-seed N] [-statements N] [-depth N] [-stack K]
+ *
+ * generates a valid program of N statements (a million by default), nested
+ * no deeper than the given depth, and parses it with both parsers on a
+ * thread whose stack is K kilobytes (256 by default, as under -Xss256k).
+ * Exits with status 1 if either parser overflows the stack, or does not
+ * parse the program successfully.
+ *
+ **/
+
+import java.io.*;
+
+public class StackStressCheck
+{
+    /** A Generate that throws the events away, counting only successes. */
+    private static class Counting extends Generate {
+        int successes;
+
+        Counting() {
+            setSink( new NullEventSink() {
+                @Override
+                public void success() {
+                    successes++;
+                }
+            } );
+        }
+    }
+
+    private int failures;
+
+    /** Parses the tokens with one parser, on a thread with the given stack, and reports the outcome. */
+    private void check( String name, AbstractSyntaxAnalyser parser, long stackBytes ) throws InterruptedException {
+        Counting generate = new Counting();
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread( null, () -> {
+            try {
+                parser.parse( new PrintStream( diagnostics ), generate );
+            } catch( Throwable t ) {
+                thrown[0] = t;
+            }
+        }, "stress " + name, stackBytes );
+        long start = System.nanoTime();
+        thread.start();
+        thread.join();
+        long nanos = System.nanoTime() - start;
+
+        String failure = null;
+        if( thrown[0] instanceof StackOverflowError )
+            failure = "overflowed a stack of " + stackBytes / 1024 + "K";
+        else if( thrown[0] != null )
+            failure = "threw " + thrown[0];
+        else if( diagnostics.size() > 0 )
+            failure = "reported errors:\n" + diagnostics;
+        else if( generate.successes != 1 )
+            failure = "reported success " + generate.successes + " times";
+        if( failure != null ) {
+            failures++;
+            System.out.println( name + ": " + failure );
+        } else {
+            System.out.printf( "%s: parsed in %.1f ms%n", name, nanos / 1e6 );
+        }
+    }
+
+    public static void main( String[] args ) throws IOException, InterruptedException {
+        long seed = 312;
+        long statements = 1000000;
+        int depth = 3;
+        long stack = 256;
+        for( int i = 0; i < args.length; i++ ) {
+            if( args[i].equals( "-seed" ) && i + 1 < args.length ) {
+                seed = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-statements" ) && i + 1 < args.length ) {
+                statements = Long.parseLong( args[++i] );
+            } else if( args[i].equals( "-depth" ) && i + 1 < args.length ) {
+                depth = Integer.parseInt( args[++i] );
+            } else if( args[i].equals( "-stack" ) && i + 1 < args.length ) {
+                stack = Long.parseLong( args[++i] );
+            } else {
+                System.err.println( "usage: java StackStressCheck [-seed N] [-statements N] [-depth N] [-stack K]" );
+                System.exit( 1 );
+            }
+        }
+
+        ProgramGenerator generator = new ProgramGenerator( seed );
+        generator.setMaxDepth( depth );
+        generator.setErrors( 0 );
+        StringBuilder text = new StringBuilder();
+        generator.write( text, statements );
+        char[] chars = text.toString().toCharArray();
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.fill( new LexicalAnalyser( chars, 0, chars.length, 0 ) );
+        System.out.printf( "%d statements, %d tokens, %dK stack%n", statements, buffer.size(), stack );
+
+        String name = "generated(seed " + seed + ")";
+        StackStressCheck checker = new StackStressCheck();
+        checker.check( name + " descent", new SyntaxAnalyser( buffer, name ), stack * 1024 );
+        checker.check( name + " table", new TableDrivenParser( buffer, name ), stack * 1024 );
+        if( checker.failures > 0 )
+            System.exit( 1 );
+    }
+} // end of class StackStressCheck
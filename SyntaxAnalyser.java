@@ -10,18 +10,57 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         lex = new LexicalAnalyser(filename);
         this.filename = filename;
     }
+
+    // Parses an already lexed token stream, reusing one Token object rather than allocating one per token.
+    public SyntaxAnalyser(TokenBuffer tokens, String filename) {
+        lex = tokens.cursor();
+        this.filename = filename;
+    }
+
+    // Parses tokens from any other source, such as a TokenPipeline lexing on another thread.
+    public SyntaxAnalyser(TokenSource tokens, String filename) {
+        lex = tokens;
+        this.filename = filename;
+    }
     
+    @Override
+    String fileName() {
+        return filename;
+    }
+
+    // Records the nonterminal being compiled on the error's chain of frames; the text is only built once, by
+    // CompilationException.toTraceString(). A read error becomes the start of a new chain.
+    private CompilationException frame(Exception e, String nonterminal) {
+        CompilationException ce = (e instanceof CompilationException)
+            ? (CompilationException) e
+            : new CompilationException(String.valueOf(e.getMessage()));
+        return ce.addFrame(nonterminal, nextToken.lineNumber);
+    }
+
+    // As above, for an error leaving the given number of the nonterminal begun but not finished. In recovery mode
+    // they are finished as the error passes out through them, innermost first, so that however far out it is
+    // recovered from, every nonterminal begun is also finished and the events stay balanced.
+    private CompilationException frame(Exception e, String nonterminal, int open) {
+        if (recoverErrors) {
+            for (; open > 0; open--) {
+                myGenerate.finishNonterminal(nonterminal);
+            }
+        }
+        return frame(e, nonterminal);
+    }
+
     public void acceptTerminal(int symbol) throws IOException, CompilationException {
         try{
             if (nextToken.symbol == symbol) {
                 myGenerate.insertTerminal(nextToken);
+                tokensAccepted++;
+                lastLine = nextToken.lineNumber;
                 nextToken = lex.getNextToken();
             } else {
-                myGenerate.reportError(nextToken, "Expected " + Token.getName(symbol) + " but found '" + nextToken.text + "' FILE: " + filename);
+                myGenerate.reportError(nextToken, "Expected " + Token.getName(symbol) + " but found '" + nextToken.getText() + "' FILE: " + filename);
             }
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling AcceptTerminal");
-            throw new CompilationException("Caused by error whilst compiling Terminal on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "Terminal");
         }
     }
 
@@ -38,31 +77,166 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         acceptTerminal(Token.endSymbol);
             myGenerate.finishNonterminal("StatementPart");
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling StatementPart");
-            throw new CompilationException("Caused by error whilst compiling StatementPart on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "StatementPart", 1);
+        }
+    }
+
+    // Parses just one statement, starting from the next token; used to re-parse a single edited statement.
+    void parseStatement(Generate generate) throws IOException, CompilationException {
+        myGenerate = generate;
+        nextToken = lex.getNextToken();
+        // The statement is not at the top level of the program, and nor are any inside it.
+        listDepth++;
+        try {
+            _statement_();
+        } finally {
+            listDepth--;
         }
     }
 
     // Parses line by line in the file.
+    // Every statement followed by a ';' opens a further StatementList nested inside the last one, as the grammar's
+    // right recursion would. Rather than recursing for each one, they are counted and all finished together at the
+    // end, so the stack depth does not grow with the length of the program.
     private void _statementList_() throws IOException, CompilationException {
+        // Only the statements of the outermost list are recorded as ParseStatement events.
+        boolean topLevel = (listDepth++ == 0);
+        int open = 0;
         try{
-            while (nextToken.symbol != Token.endSymbol && nextToken.symbol != Token.eofSymbol && nextToken.symbol != Token.elseSymbol) {
+            // A list runs up to the 'end', 'else' or 'until' that closes the statement it belongs to, or to end of file.
+            while (nextToken.symbol != Token.endSymbol && nextToken.symbol != Token.eofSymbol && nextToken.symbol != Token.elseSymbol
+                && nextToken.symbol != Token.untilSymbol) {
                 myGenerate.commenceNonterminal("StatementList");
-                
-                _statement_();
-        
+                open++;
+
+                CompilerEvents.ParseStatement event = null;
+                long firstToken = tokensAccepted;
+                if (topLevel) {
+                    statementLine = nextToken.lineNumber;
+                    event = new CompilerEvents.ParseStatement();
+                    event.begin();
+                }
+                if (recoverErrors) {
+                    try {
+                        _statement_();
+                    } catch (CompilationException e) {
+                        // Panic mode: note the error and throw away the rest of the statement.
+                        recordDiagnostic(e);
+                        skipTo(STATEMENT_FOLLOW);
+                        if (nextToken.symbol != Token.semicolonSymbol) {
+                            commitStatement(event, firstToken);
+                            break;
+                        }
+                    }
+                } else {
+                    _statement_();
+                }
+                commitStatement(event, firstToken);
+
                 if (nextToken.symbol == Token.semicolonSymbol) {
                     acceptTerminal(Token.semicolonSymbol);
-                    _statementList_();
-                } else if (nextToken.symbol != Token.endSymbol && nextToken.symbol != Token.elseSymbol && nextToken.symbol != Token.semicolonSymbol) {
+                } else if (nextToken.symbol == Token.endSymbol || nextToken.symbol == Token.elseSymbol
+                    || nextToken.symbol == Token.untilSymbol) {
+                    // The last statement of a list needs no ';' before the word that closes it.
+                    break;
+                } else if (!recoverErrors) {
                     myGenerate.reportError(nextToken, "Expected ';' or 'end'. FILE: " + filename);
+                    break;
+                } else {
+                    // Note the missing ';' and carry on from the next statement as if it were there, or give up on the list.
+                    try {
+                        myGenerate.reportError(nextToken, "Expected ';' or 'end'. FILE: " + filename);
+                    } catch (CompilationException e) {
+                        recordDiagnostic(e);
+                    }
+                    while (!startsStatement(nextToken.symbol) && !isIn(nextToken.symbol, STATEMENT_FOLLOW)) {
+                        nextToken = lex.getNextToken();
+                    }
+                    if (nextToken.symbol == Token.semicolonSymbol) {
+                        acceptTerminal(Token.semicolonSymbol);
+                    } else if (!startsStatement(nextToken.symbol)) {
+                        break;
+                    }
                 }
-        
+            }
+
+            for (; open > 0; open--) {
                 myGenerate.finishNonterminal("StatementList");
             }
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling StatementList");
-            throw new CompilationException("Caused by error whilst compiling StatementList on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "StatementList", open);
+        } finally {
+            listDepth--;
+        }
+    }
+
+    // The depth of nested statement lists being parsed.
+    private int listDepth;
+
+    // Records a top level statement, from the line it started on to that of its last token.
+    private void commitStatement(CompilerEvents.ParseStatement event, long firstToken) {
+        if (event != null && event.shouldCommit()) {
+            event.file = filename;
+            event.firstLine = statementLine;
+            event.lastLine = lastLine;
+            event.tokens = tokensAccepted - firstToken;
+            event.commit();
+        }
+    }
+
+    // Tokens that may follow a statement, where parsing can safely pick up again after an error.
+    private static final int[] STATEMENT_FOLLOW = {
+        Token.semicolonSymbol, Token.endSymbol, Token.elseSymbol, Token.untilSymbol, Token.eofSymbol
+    };
+
+    // Tokens that may follow a while loop's condition, and an if statement's.
+    private static final int[] WHILE_CONDITION_FOLLOW = {
+        Token.loopSymbol, Token.semicolonSymbol, Token.endSymbol, Token.eofSymbol
+    };
+    private static final int[] IF_CONDITION_FOLLOW = {
+        Token.thenSymbol, Token.semicolonSymbol, Token.endSymbol, Token.eofSymbol
+    };
+
+    private static boolean startsStatement(int symbol) {
+        return symbol == Token.identifier || symbol == Token.callSymbol || symbol == Token.ifSymbol
+            || symbol == Token.whileSymbol || symbol == Token.forSymbol || symbol == Token.doSymbol;
+    }
+
+    // Keeps a recovered error for reporting at the end of the parse, or gives up on the file once there are too many.
+    private void recordDiagnostic(CompilationException e) throws CompilationException {
+        if (diagnostics.size() >= maxDiagnostics) {
+            throw e;
+        }
+        addDiagnostic(e);
+    }
+
+    private static boolean isIn(int symbol, int[] symbols) {
+        for (int s : symbols) {
+            if (s == symbol) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Discards tokens, without generating anything for them, until one in the given set.
+    private void skipTo(int[] follow) throws IOException {
+        while (!isIn(nextToken.symbol, follow)) {
+            nextToken = lex.getNextToken();
+        }
+    }
+
+    // A condition which, in recovery mode, is skipped up to the keyword that should follow it if it is wrong.
+    private void _recoverableCondition_(int[] follow) throws IOException, CompilationException {
+        if (!recoverErrors) {
+            _condition_();
+            return;
+        }
+        try {
+            _condition_();
+        } catch (CompilationException e) {
+            recordDiagnostic(e);
+            skipTo(follow);
         }
     }
 
@@ -99,8 +273,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             }
             myGenerate.finishNonterminal("Statement");
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling Statement");
-            throw new CompilationException("Caused by error whilst compiling Statement on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "Statement", 1);
         }
     }
 
@@ -122,8 +295,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
 
             myGenerate.finishNonterminal("AssignmentStatement");
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling AssignmentStatement");
-            throw new CompilationException("Caused by error whilst compiling AssignmentStatement on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "AssignmentStatement", 1);
         }
     }
 
@@ -135,7 +307,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             // Should always start with 'if':
             acceptTerminal(Token.ifSymbol);
 
-            _condition_();
+            _recoverableCondition_(IF_CONDITION_FOLLOW);
 
             // After condition comes 'then':
             acceptTerminal(Token.thenSymbol);
@@ -155,8 +327,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         
             myGenerate.finishNonterminal("IfStatement");
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling IfStatement");
-            throw new CompilationException("Caused by error whilst compiling IfStatement on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "IfStatement", 1);
         }
     }
     
@@ -168,7 +339,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             // Very similar logic to If Statement:
             acceptTerminal(Token.whileSymbol);
 
-            _condition_();
+            _recoverableCondition_(WHILE_CONDITION_FOLLOW);
 
             acceptTerminal(Token.loopSymbol);
 
@@ -180,8 +351,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             myGenerate.finishNonterminal("WhileStatement");
 
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling WhileStatement");
-            throw new CompilationException("Caused by error whilst compiling WhileStatement on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "WhileStatement", 1);
         }
     }
 
@@ -198,8 +368,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
 
             myGenerate.finishNonterminal("ProcedureStatement");
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling ProcedureStatement");
-            throw new CompilationException("Caused by error whilst compiling ProcedureStatement on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "ProcedureStatement", 1);
         }
     }   
 
@@ -220,8 +389,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             myGenerate.finishNonterminal("DoUntilStatement");
 
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling DoUntilStatement");
-            throw new CompilationException("Caused by error whilst compiling DoUntilStatement on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "DoUntilStatement", 1);
         }
     }
     
@@ -262,16 +430,18 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         
             myGenerate.finishNonterminal("ForStatement");
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling ForStatement");
-            throw new CompilationException("Caused by error whilst compiling ForStatement on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "ForStatement", 1);
         }
     }
     
     // Gets the list of arguments in any procedure call. Seems like there's never more than one, but just in case.
     private void _argumentList_() throws IOException, CompilationException {
+        // Opened after the '(' and, unless there are no arguments, finished before the ')'.
+        int open = 0;
         try{
             acceptTerminal(Token.leftParenthesis);
             myGenerate.commenceNonterminal("ArgumentList");
+            open++;
         
             // No arguments:
             if (nextToken.symbol == Token.rightParenthesis) {
@@ -298,11 +468,11 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         
                 // Ensure that the next token after the arguments is a closing parenthesis
                 myGenerate.finishNonterminal("ArgumentList");
+                open--;
                 acceptTerminal(Token.rightParenthesis);
             }
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling ArgumentList");
-            throw new CompilationException("Caused by error whilst compiling ArgumentList on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "ArgumentList", open);
         }
     }
 
@@ -327,8 +497,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             myGenerate.finishNonterminal("Condition");
 
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling Condition");
-            throw new CompilationException("Caused by error whilst compiling Condition on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "Condition", 1);
         }
     }
     
@@ -350,58 +519,69 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
                     myGenerate.finishNonterminal("ConditionalOperator");
                     break;
                 default:
-                    myGenerate.reportError(nextToken, "Expected a comparison operator but found '" + nextToken.text + "' FILE: " + filename);
+                    myGenerate.reportError(nextToken, "Expected a comparison operator but found '" + nextToken.getText() + "' FILE: " + filename);
                     break;
             }
 
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling Conditional Operator");
-            throw new CompilationException("Caused by error whilst compiling ConditionalOperator on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "ConditionalOperator", 1);
+        }
+    }
+
+    // Binary operators by precedence level: the adding operators join Terms into an Expression, and the
+    // multiplying operators join Factors into a Term.
+    private static final String[] LEVEL_NAMES = {"Expression", "Term"};
+
+    private static int precedence(int symbol) {
+        switch (symbol) {
+            case Token.plusSymbol:
+            case Token.minusSymbol:
+                return 0;
+            case Token.timesSymbol:
+            case Token.divideSymbol:
+            case Token.modSymbol:
+                return 1;
+            default:
+                return -1;
         }
     }
 
     // A list of terms, used for variable assignment:
     private void _expression_() throws IOException, CompilationException {
-        try{
-            myGenerate.commenceNonterminal("Expression");
-
-            _term_();
-            while (nextToken.symbol == Token.plusSymbol || nextToken.symbol == Token.minusSymbol) {
-                acceptTerminal(nextToken.symbol);
-                _expression_();
-            }
-
-            myGenerate.finishNonterminal("Expression");
-
-        } catch (IOException | CompilationException e){
-            System.err.println("While compiling Expression");
-            throw new CompilationException("Caused by error whilst compiling Expression on line " + nextToken.lineNumber + "\n" + e.getMessage());
-        }
+        _operands_(0);
     }
 
-    // A smaller part of an expression, handling the multiplicative operations.
-    private void _term_() throws IOException, CompilationException {
+    // Precedence climbing, with one loop per level: operands of the level above, joined by this level's operators.
+    // Nested, as the grammar's right recursion would have it, each operator opens a further nonterminal inside the
+    // last, and they are all finished together at the end; flat, every operand of the loop belongs to one nonterminal.
+    // Either way the Java stack only grows with the number of levels and with parentheses.
+    private void _operands_(int level) throws IOException, CompilationException {
+        String name = LEVEL_NAMES[level];
+        int open = 0;
         try{
-            myGenerate.commenceNonterminal("Term");
-
-            // Should start with a number, string or variable:
-            _factor_();
+            while (true) {
+                if (open == 0 || !flatExpressions) {
+                    myGenerate.commenceNonterminal(name);
+                    open++;
+                }
 
-            // Then, should be a symbol such as listed below:
-            while (nextToken.symbol == Token.timesSymbol
-                || nextToken.symbol == Token.divideSymbol 
-                || nextToken.symbol == Token.modSymbol) {
+                if (level + 1 < LEVEL_NAMES.length) {
+                    _operands_(level + 1);
+                } else {
+                    _factor_();
+                }
+                if (precedence(nextToken.symbol) != level) {
+                    break;
+                }
                 acceptTerminal(nextToken.symbol);
-
-                // Then it should be succeeded by another term, and loop back round:
-                _term_();
             }
 
-            myGenerate.finishNonterminal("Term");
+            for (; open > 0; open--) {
+                myGenerate.finishNonterminal(name);
+            }
 
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling Term");
-            throw new CompilationException("Caused by error whilst compiling Term on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, name, open);
         }
     }
 
@@ -436,8 +616,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             myGenerate.finishNonterminal("Factor");
 
         } catch (IOException | CompilationException e){
-            System.err.println("While compiling Factor");
-            throw new CompilationException("Caused by error whilst compiling Factor on line " + nextToken.lineNumber + "\n" + e.getMessage());
+            throw frame(e, "Factor", 1);
         }
     }
 }
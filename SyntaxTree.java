@@ -0,0 +1,254 @@
+/**
+ *
+ * A parse tree held in a flat arena of parallel int arrays rather than one
+ * object per node.  Each node has a kind (a Nonterminal id, or TERMINAL), its
+ * first child, its next sibling and, for terminals, the index of its token in
+ * tokens().  Node 0 is the first top-level node (normally StatementPart); any
+ * further top-level nodes, such as the EOF terminal, are its siblings.
+ *
+ * A node is "finished" if its finishNonterminal event was seen.  SyntaxAnalyser
+ * does not always send one (an empty ArgumentList, for instance), and replay()
+ * reproduces the events exactly as they were received.
+ *
+ **/
+import java.util.Arrays ;
+
+public class SyntaxTree
+{
+	/** The kind of a terminal node. */
+	public static final int TERMINAL = 0 ;
+	/** The index used for "no node". */
+	public static final int NONE = -1 ;
+
+	/** Receives the nodes of a tree, in order, from walk(). */
+	public interface Visitor
+	{
+		/** A nonterminal node is entered; its children follow. */
+		void enter(int node, int kind) ;
+		/** A terminal node is visited. */
+		void terminal(int node, int token) ;
+		/** A nonterminal node is left. */
+		void exit(int node, int kind) ;
+	} // end of interface Visitor
+
+	/** Parallel per-node arrays. */
+	private int[] kinds ;
+	private int[] firstChildren ;
+	private int[] lastChildren ;
+	private int[] nextSiblings ;
+	private int[] tokenIndexes ;
+	private boolean[] finished ;
+	/** The number of nodes in use. */
+	private int count ;
+	/** The last top-level node. */
+	private int lastTopLevel = NONE ;
+
+	/** The tokens the terminal nodes refer to. */
+	private final TokenBuffer tokens = new TokenBuffer() ;
+
+	/** Scratch stack for walk(), kept to avoid allocating on every walk. */
+	private int[] stack = new int[64] ;
+
+	/** Creates an empty tree. */
+	public SyntaxTree()
+	{
+		int capacity = 256 ;
+		kinds = new int[capacity] ;
+		firstChildren = new int[capacity] ;
+		lastChildren = new int[capacity] ;
+		nextSiblings = new int[capacity] ;
+		tokenIndexes = new int[capacity] ;
+		finished = new boolean[capacity] ;
+	} // end of constructor method
+
+	/** Adds a nonterminal node as the last child of parent.
+
+	  @param parent The parent node, or NONE for a top-level node.
+	  @param kind The Nonterminal id of the new node.
+	  @return The new node.
+	 */
+	public int addNonterminal(int parent, int kind)
+	{
+		return addNode(parent, kind, NONE) ;
+	} // end of method addNonterminal
+
+	/** Adds a terminal node as the last child of parent.
+
+	  @param parent The parent node, or NONE for a top-level node.
+	  @param token The token the node stands for.
+	  @return The new node.
+	 */
+	public int addTerminal(int parent, Token token)
+	{
+		tokens.add(token) ;
+		return addNode(parent, TERMINAL, tokens.size() - 1) ;
+	} // end of method addTerminal
+
+	/** Marks a nonterminal node as having had its finishNonterminal event. */
+	public void finish(int node)
+	{
+		finished[node] = true ;
+	} // end of method finish
+
+	private int addNode(int parent, int kind, int token)
+	{
+		if (count == kinds.length)
+		{
+			int capacity = count * 2 ;
+			kinds = Arrays.copyOf(kinds, capacity) ;
+			firstChildren = Arrays.copyOf(firstChildren, capacity) ;
+			lastChildren = Arrays.copyOf(lastChildren, capacity) ;
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity) ;
+			tokenIndexes = Arrays.copyOf(tokenIndexes, capacity) ;
+			finished = Arrays.copyOf(finished, capacity) ;
+		}
+		int node = count++ ;
+		kinds[node] = kind ;
+		firstChildren[node] = NONE ;
+		lastChildren[node] = NONE ;
+		nextSiblings[node] = NONE ;
+		tokenIndexes[node] = token ;
+		finished[node] = false ;
+
+		if (parent == NONE)
+		{
+			if (lastTopLevel != NONE)
+				nextSiblings[lastTopLevel] = node ;
+			lastTopLevel = node ;
+		}
+		else
+		{
+			if (firstChildren[parent] == NONE)
+				firstChildren[parent] = node ;
+			else
+				nextSiblings[lastChildren[parent]] = node ;
+			lastChildren[parent] = node ;
+		}
+		return node ;
+	} // end of method addNode
+
+	/** @return The number of nodes. */
+	public int size()
+	{
+		return count ;
+	} // end of method size
+
+	/** @return The first top-level node, or NONE if the tree is empty. */
+	public int root()
+	{
+		return (count == 0) ? NONE : 0 ;
+	} // end of method root
+
+	/** @return The kind of a node: a Nonterminal id, or TERMINAL. */
+	public int kind(int node)
+	{
+		return kinds[node] ;
+	} // end of method kind
+
+	/** @return The first child of a node, or NONE. */
+	public int firstChild(int node)
+	{
+		return firstChildren[node] ;
+	} // end of method firstChild
+
+	/** @return The next sibling of a node, or NONE. */
+	public int nextSibling(int node)
+	{
+		return nextSiblings[node] ;
+	} // end of method nextSibling
+
+	/** @return The index in tokens() of a terminal node's token, or NONE for a nonterminal. */
+	public int token(int node)
+	{
+		return tokenIndexes[node] ;
+	} // end of method token
+
+	/** @return Whether a nonterminal node received its finishNonterminal event. */
+	public boolean isFinished(int node)
+	{
+		return finished[node] ;
+	} // end of method isFinished
+
+	/** @return The tokens of the terminal nodes. */
+	public TokenBuffer tokens()
+	{
+		return tokens ;
+	} // end of method tokens
+
+	/** Walks the whole tree depth first, in source order.  Once the internal
+	  stack has grown to the depth of the tree no further allocation happens.
+
+	  @param visitor The visitor to receive the nodes.
+	 */
+	public void walk(Visitor visitor)
+	{
+		if (count == 0)
+			return ;
+
+		// Each entry is a node; a node still to be exited is pushed as ~node.
+		int top = pushSiblings(0, 0) ;
+		while (top > 0)
+		{
+			int node = stack[--top] ;
+			if (node < 0)
+				visitor.exit(~node, kinds[~node]) ;
+			else if (kinds[node] == TERMINAL)
+				visitor.terminal(node, tokenIndexes[node]) ;
+			else
+			{
+				visitor.enter(node, kinds[node]) ;
+				stack = ensureStack(top + 1) ;
+				stack[top++] = ~node ;
+				top = pushSiblings(firstChildren[node], top) ;
+			}
+		}
+	} // end of method walk
+
+	/** Pushes a node and its following siblings on the walk stack, last first.
+
+	  @return The new top of the stack.
+	 */
+	private int pushSiblings(int first, int top)
+	{
+		int n = 0 ;
+		for (int c = first; c != NONE; c = nextSiblings[c])
+			n++ ;
+		stack = ensureStack(top + n) ;
+		top += n ;
+		int c = first ;
+		for (int i = 1; i <= n; i++, c = nextSiblings[c])
+			stack[top - i] = c ;
+		return top ;
+	} // end of method pushSiblings
+
+	private int[] ensureStack(int size)
+	{
+		return (size <= stack.length) ? stack : Arrays.copyOf(stack, Math.max(stack.length * 2, size)) ;
+	} // end of method ensureStack
+
+	/** Sends the events the tree was built from to a sink, exactly as they were received.
+
+	  @param sink The sink to receive the events.
+	 */
+	public void replay(final EventSink sink)
+	{
+		walk(new Visitor()
+		{
+			public void enter(int node, int kind)
+			{
+				sink.beginNonterminal(Nonterminal.getName(kind)) ;
+			}
+
+			public void terminal(int node, int token)
+			{
+				sink.terminal(tokens.symbol(token), tokens.text(token), tokens.line(token)) ;
+			}
+
+			public void exit(int node, int kind)
+			{
+				if (finished[node])
+					sink.endNonterminal(Nonterminal.getName(kind)) ;
+			}
+		}) ;
+	} // end of method replay
+} // end of class SyntaxTree
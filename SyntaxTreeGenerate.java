@@ -0,0 +1,57 @@
+import java.util.Arrays;
+
+// A Generate that builds a SyntaxTree from the parse events. Events are still passed to the sink, which discards them unless replaced.
+public class SyntaxTreeGenerate extends Generate {
+    private final SyntaxTree tree = new SyntaxTree();
+
+    // Nonterminal nodes that have begun but not yet finished, innermost last.
+    private int[] open = new int[64];
+    private int depth = 0;
+
+    public SyntaxTreeGenerate() {
+        setSink(new NullEventSink());
+    }
+
+    public SyntaxTree getTree() {
+        return tree;
+    }
+
+    private int current() {
+        return (depth == 0) ? SyntaxTree.NONE : open[depth - 1];
+    }
+
+    @Override
+    public void commenceNonterminal(String name) {
+        int kind = Nonterminal.getId(name);
+        if (kind == 0) {
+            throw new IllegalArgumentException("Unknown nonterminal " + name);
+        }
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+        }
+        open[depth] = tree.addNonterminal(current(), kind);
+        depth++;
+        super.commenceNonterminal(name);
+    }
+
+    @Override
+    public void insertTerminal(Token token) {
+        tree.addTerminal(current(), token);
+        super.insertTerminal(token);
+    }
+
+    // Nonterminals that never got their own finish (e.g. an empty ArgumentList) are closed along with their parent.
+    @Override
+    public void finishNonterminal(String name) {
+        int kind = Nonterminal.getId(name);
+        int d = depth;
+        while (d > 0 && tree.kind(open[d - 1]) != kind) {
+            d--;
+        }
+        if (d > 0) {
+            tree.finish(open[d - 1]);
+            depth = d - 1;
+        }
+        super.finishNonterminal(name);
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ *
+ * A table driven LL(1) parser for the 312 language, an alternative to the
+ * recursive descent of SyntaxAnalyser.
+ *
+ * The grammar is declared below as data, in the form LL1Grammar reads, and
+ * turned into a parse table once when the class is loaded.  Parsing is then a
+ * loop over an explicit stack of ints: a terminal on top is matched against
+ * the next token, a rule is replaced by the production its table row gives for
+ * the next token, and the begin and end markers of the visible nonterminals
+ * are sent to the code generator, by name, as they are popped.  The depth of
+ * the Java stack does not depend on the program at all.
+ *
+ * The grammar is written to send exactly the events SyntaxAnalyser does, in
+ * the same order, and to fail with the same message and chain of frames: a
+ * rule with a frame leaves a marker under its production, and the markers
+ * still on the stack when an error happens are the frames, innermost first.
+ * Hidden rules with no events or frame stand for the loops of the hand written
+ * parser, which is why a statement list or an expression nests to the right.
+ *
+ * There are two tables, differing only in whether chains of adding and
+ * multiplying operators nest (see setFlatExpressions).  This parser always
+ * stops at the first syntax error; it has no recovery.
+ *
+ **/
+import java.io.IOException ;
+
+public class TableDrivenParser extends AbstractSyntaxAnalyser
+{
+	private static final LL1Grammar NESTED = grammar(false) ;
+	private static final LL1Grammar FLAT = grammar(true) ;
+
+	/** Declares the grammar, with flat or nested chains of operators, and builds its table. */
+	private static LL1Grammar grammar(boolean flat)
+	{
+		LL1Grammar g = new LL1Grammar() ;
+		g.rule("statementPart", "StatementPart", "<StatementPart begin statements end StatementPart>") ;
+
+		// A statement list nests once for each statement after the first.
+		g.rule("statements", "StatementList")
+				.on("end else until EOF", "")
+				.otherwise("statementList") ;
+		g.rule("statementList", null, "<StatementList statement listTail StatementList>") ;
+		g.rule("listTail")
+				.alt("; moreStatements")
+				.on("end else until", "")
+				.error("Expected ';' or 'end'.") ;
+		g.rule("moreStatements")
+				.on("end else until EOF", "")
+				.otherwise("statementList") ;
+
+		g.rule("statement", "Statement", "<Statement statementBody Statement>") ;
+		g.rule("statementBody")
+				.alt("procedureStatement")
+				.alt("assignmentStatement")
+				.alt("whileStatement")
+				.alt("forStatement")
+				.alt("ifStatement")
+				.alt("doUntilStatement")
+				.on("else", "elseWithoutIf")
+				.error("Unknown statement.") ;
+		g.rule("elseWithoutIf").error("'ELSE' found without 'IF' preceeding.") ;
+
+		g.rule("assignmentStatement", "AssignmentStatement",
+				"<AssignmentStatement IDENTIFIER := assignedValue AssignmentStatement>") ;
+		g.rule("assignedValue")
+				.alt("STRING")
+				.otherwise("expression") ;
+		g.rule("ifStatement", "IfStatement",
+				"<IfStatement if condition then statements elsePart end if IfStatement>") ;
+		g.rule("elsePart")
+				.alt("else statements")
+				.otherwise("") ;
+		g.rule("whileStatement", "WhileStatement",
+				"<WhileStatement while condition loop statements end loop WhileStatement>") ;
+		g.rule("procedureStatement", "ProcedureStatement",
+				"<ProcedureStatement call IDENTIFIER argumentList ProcedureStatement>") ;
+		g.rule("doUntilStatement", "DoUntilStatement",
+				"<DoUntilStatement do statements until condition DoUntilStatement>") ;
+		g.rule("forStatement", "ForStatement",
+				"<ForStatement for ( IDENTIFIER := expression ; condition ; IDENTIFIER := expression ) do statements end loop ForStatement>") ;
+
+		// An empty argument list is never finished.
+		g.rule("argumentList", "ArgumentList", "( <ArgumentList arguments") ;
+		g.rule("arguments")
+				.alt(")")
+				.alt("IDENTIFIER moreArguments ArgumentList> )")
+				.error("Expected an identifier as an argument.") ;
+		g.rule("moreArguments")
+				.alt(", argument moreArguments")
+				.otherwise("") ;
+		g.rule("argument")
+				.alt("IDENTIFIER")
+				.error("Expected an identifier after a comma.") ;
+
+		g.rule("condition", "Condition", "<Condition IDENTIFIER conditionalOperator operand Condition>") ;
+		g.rule("operand")
+				.alt("NUMBER")
+				.alt("IDENTIFIER")
+				.error("Expected a number constant or identifier after operator.") ;
+		g.rule("conditionalOperator", "ConditionalOperator", "<ConditionalOperator relation ConditionalOperator>") ;
+		g.rule("relation")
+				.alt("=")
+				.alt("!=")
+				.alt("<=")
+				.alt("<")
+				.alt(">=")
+				.alt(">")
+				.error("Expected a comparison operator but found '$'") ;
+
+		// Nested, each adding or multiplying operator opens a further Expression or Term inside the last;
+		// flat, the operands follow one another in the same one.
+		String moreExpression = flat ? "term expressionTail" : "moreExpression" ;
+		String moreTerm = flat ? "factor termTail" : "moreTerm" ;
+		g.rule("expression", "Expression", "<Expression term expressionTail Expression>") ;
+		g.rule("expressionTail")
+				.alt("+ " + moreExpression)
+				.alt("- " + moreExpression)
+				.otherwise("") ;
+		g.rule("moreExpression", null, "<Expression term expressionTail Expression>") ;
+		g.rule("term", "Term", "<Term factor termTail Term>") ;
+		g.rule("termTail")
+				.alt("* " + moreTerm)
+				.alt("/ " + moreTerm)
+				.alt("% " + moreTerm)
+				.otherwise("") ;
+		g.rule("moreTerm", null, "<Term factor termTail Term>") ;
+		g.rule("factor", "Factor", "<Factor factorBody Factor>") ;
+		g.rule("factorBody")
+				.alt("IDENTIFIER")
+				.alt("NUMBER")
+				.alt("( expression )")
+				.error("Expected an identifier, number, string, or '(' for a parenthesized expression.") ;
+
+		return g.build() ;
+	} // end of method grammar
+
+	private static final int STATEMENT_PART = NESTED.ruleIndex("statementPart") ;
+
+	private final String filename ;
+	/** The parse stack, kept between parses; it grows with nesting and with the length of statement lists. */
+	private int[] stack = new int[256] ;
+
+	public TableDrivenParser(String filename) throws IOException
+	{
+		lex = new LexicalAnalyser(filename) ;
+		this.filename = filename ;
+	} // end of constructor method
+
+	/** Parses an already lexed token stream. */
+	public TableDrivenParser(TokenBuffer tokens, String filename)
+	{
+		lex = tokens.cursor() ;
+		this.filename = filename ;
+	} // end of constructor method
+
+	/** Parses tokens from any other source, such as a TokenPipeline. */
+	public TableDrivenParser(TokenSource tokens, String filename)
+	{
+		lex = tokens ;
+		this.filename = filename ;
+	} // end of constructor method
+
+	/** Recovery is not supported; asking for it is an error. */
+	@Override
+	public void setErrorRecovery(boolean recover, int maxErrors)
+	{
+		if (recover)
+			throw new UnsupportedOperationException("the table driven parser does not recover from errors") ;
+		super.setErrorRecovery(recover, maxErrors) ;
+	} // end of method setErrorRecovery
+
+	public void _statementPart_() throws IOException, CompilationException
+	{
+		run(STATEMENT_PART) ;
+	} // end of method _statementPart_
+
+	public void acceptTerminal(int symbol) throws IOException, CompilationException
+	{
+		try
+		{
+			match(symbol) ;
+		}
+		catch (IOException | CompilationException e)
+		{
+			throw frames(e, true, 0) ;
+		}
+	} // end of method acceptTerminal
+
+	private void match(int symbol) throws IOException, CompilationException
+	{
+		if (nextToken.symbol != symbol)
+			myGenerate.reportError(nextToken, "Expected " + Token.getName(symbol) + " but found '" + nextToken.getText()
+					+ "' FILE: " + filename) ;
+		myGenerate.insertTerminal(nextToken) ;
+		tokensAccepted++ ;
+		lastLine = nextToken.lineNumber ;
+		nextToken = lex.getNextToken() ;
+	} // end of method match
+
+	@Override
+	String fileName()
+	{
+		return filename ;
+	} // end of method fileName
+
+	/** Parses from the given rule until the stack is empty. */
+	private void run(int startRule) throws IOException, CompilationException
+	{
+		LL1Grammar grammar = flatExpressions ? FLAT : NESTED ;
+		int[][] table = grammar.table() ;
+		int[][] productions = grammar.productions() ;
+		int[] frames = grammar.frames() ;
+		int[] stack = this.stack ;
+		int sp = 0 ;
+		boolean inTerminal = false ;
+		stack[sp++] = (LL1Grammar.RULE << LL1Grammar.KIND_SHIFT) | startRule ;
+		try
+		{
+			while (sp > 0)
+			{
+				int top = stack[--sp] ;
+				int id = top & LL1Grammar.ID_MASK ;
+				switch (top >>> LL1Grammar.KIND_SHIFT)
+				{
+				case LL1Grammar.TERMINAL:
+					inTerminal = true ;
+					match(id) ;
+					inTerminal = false ;
+					break ;
+
+				case LL1Grammar.RULE:
+					int[] rhs ;
+					int entry = table[id][nextToken.symbol] ;
+					if (frames[id] != 0)
+						stack[sp++] = (LL1Grammar.FRAME << LL1Grammar.KIND_SHIFT) | frames[id] ;
+					if (entry < 0)
+					{
+						myGenerate.reportError(nextToken, grammar.messages()[-1 - entry].replace("$", nextToken.getText())
+								+ " FILE: " + filename) ;
+					}
+					rhs = productions[entry] ;
+					// Room for the production and the frame marker of whatever it expands to next.
+					if (sp + rhs.length + 1 > stack.length)
+						this.stack = stack = java.util.Arrays.copyOf(stack, 2 * stack.length + rhs.length) ;
+					System.arraycopy(rhs, 0, stack, sp, rhs.length) ;
+					sp += rhs.length ;
+					break ;
+
+				case LL1Grammar.BEGIN:
+					myGenerate.commenceNonterminal(Nonterminal.getName(id)) ;
+					break ;
+
+				case LL1Grammar.END:
+					myGenerate.finishNonterminal(Nonterminal.getName(id)) ;
+					break ;
+
+				default:
+					// A frame marker: the rule it belongs to is finished.
+					break ;
+				}
+			}
+		}
+		catch (IOException | CompilationException e)
+		{
+			throw frames(e, inTerminal, sp) ;
+		}
+	} // end of method run
+
+	/** Adds the frames of an error: Terminal if it happened matching one, then those of the rules
+	  still on the stack, innermost first.  A read error becomes the start of a new chain. */
+	private CompilationException frames(Exception e, boolean inTerminal, int sp)
+	{
+		CompilationException ce = (e instanceof CompilationException)
+				? (CompilationException) e
+				: new CompilationException(String.valueOf(e.getMessage())) ;
+		if (inTerminal)
+			ce.addFrame("Terminal", nextToken.lineNumber) ;
+		for (int i = sp - 1; i >= 0; i--)
+			if ((stack[i] >>> LL1Grammar.KIND_SHIFT) == LL1Grammar.FRAME)
+				ce.addFrame(Nonterminal.getName(stack[i] & LL1Grammar.ID_MASK), nextToken.lineNumber) ;
+		return ce ;
+	} // end of method frames
+} // end of class TableDrivenParser
@@ -63,11 +63,15 @@ public class Token
 
 	/** The symbol this token instance represents */
 	public int symbol ;
-	/** The original text. */
-	public String text ;
 	/** The line number of the original text in the source file. */
 	public int lineNumber ;
 
+	/** The original text, or null until getText() builds it from a buffer and the
+	  index of this token in it. */
+	private String text ;
+	private TokenBuffer buffer ;
+	private int index ;
+
 	/** Constructs a new token with a given token type and line number.
 
 	  @param s The type of symbol, typically as a class constant from Token.
@@ -95,6 +99,32 @@ public class Token
 		lineNumber = l ;
 	} // end of constructor method
 
+	/** Returns the original text, building it the first time for a token handed out
+	  by a TokenBuffer.Cursor or a TokenPipeline.  Most tokens reach a parser that
+	  only looks at the symbol, so the String is not made unless it is wanted.
+
+	  @return The original string recognised from the source file.
+	 */
+	public String getText()
+	{
+		if (text == null)
+			text = buffer.text(index) ;
+		return text ;
+	} // end of method getText
+
+	/** Makes this the index'th token of the buffer, whose text getText() builds
+	  if it is asked for.  The buffer must not change until this token does.
+
+	  @param buffer The buffer holding the token.
+	  @param index The index of the token in the buffer.
+	 */
+	void setTextAt(TokenBuffer buffer, int index)
+	{
+		text = null ;
+		this.buffer = buffer ;
+		this.index = index ;
+	} // end of method setTextAt
+
 	/** Returns a string representation of a symbol type.
 
 	  @param i The value of a symbol, typically as a class constant from Token.
@@ -115,7 +145,7 @@ public class Token
 		if ((symbol == identifier) ||
 				(symbol == numberConstant) ||
 				(symbol == stringConstant))
-			tt += ": " + text ;
+			tt += ": " + getText() ;
 		tt += " (line " + lineNumber + ")" ;
 		return tt ;
 	} // end of method toString
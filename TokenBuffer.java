@@ -0,0 +1,385 @@
+/**
+ *
+ * A whole token stream held as parallel primitive arrays (symbol, text start,
+ * text length and line) instead of one Token object per token.
+ *
+ * Text is only kept for tokens whose spelling varies: identifiers, numbers,
+ * strings and reserved words, all packed into one shared char array.  Fixed
+ * punctuation costs nothing beyond its symbol and line.
+ *
+ **/
+import java.io.* ;
+import java.util.Arrays ;
+
+public class TokenBuffer
+{
+	/** Parallel per-token arrays. */
+	private int[] symbols ;
+	private int[] starts ;
+	private int[] lengths ;
+	private int[] lines ;
+	/** The number of tokens held. */
+	private int count ;
+
+	/** The text of all tokens, back to back. */
+	private char[] chars ;
+	/** The number of chars in use. */
+	private int charCount ;
+
+	/** Creates an empty buffer. */
+	public TokenBuffer()
+	{
+		this(256) ;
+	} // end of constructor method
+
+	/** Creates an empty buffer with room for a given number of tokens.
+
+	  @param capacity The number of tokens to allocate room for.
+	 */
+	public TokenBuffer(int capacity)
+	{
+		capacity = Math.max(capacity, 16) ;
+		symbols = new int[capacity] ;
+		starts = new int[capacity] ;
+		lengths = new int[capacity] ;
+		lines = new int[capacity] ;
+		chars = new char[capacity * 4] ;
+	} // end of constructor method
+
+	/** Lexes a whole file into a new buffer.
+
+	  @param fileName The file to read.
+	  @throws IOException if any read errors occur.
+	  @return A buffer holding every token of the file, ending with eofSymbol.
+	 */
+	public static TokenBuffer read(String fileName) throws IOException
+	{
+		TokenBuffer buffer = new TokenBuffer() ;
+		buffer.fill(new LexicalAnalyser(fileName, true)) ;
+		return buffer ;
+	} // end of method read
+
+	/** Appends every remaining token from a lexical analyser, up to and including eofSymbol.
+
+	  @param lex The lexical analyser to drain.
+	  @throws IOException if any read errors occur.
+	 */
+	public void fill(LexicalAnalyser lex) throws IOException
+	{
+		int symbol ;
+		do
+		{
+			symbol = lex.nextSymbol() ;
+			add(symbol, lex.tokenChars(), 0, lex.tokenLength(), lex.tokenLineNumber()) ;
+		}
+		while (symbol != Token.eofSymbol) ;
+	} // end of method fill
+
+	/** Appends a token.
+
+	  @param symbol The type of symbol, typically as a class constant from Token.
+	  @param text The chars holding the token's text.
+	  @param offset The index of the first char of the text.
+	  @param length The length of the text, or 0 for tokens with fixed text.
+	  @param line The line number of the token.
+	 */
+	public void add(int symbol, char[] text, int offset, int length, int line)
+	{
+		reserve(length) ;
+		System.arraycopy(text, offset, chars, charCount, length) ;
+		append(symbol, length, line) ;
+	} // end of method add
+
+	/** Appends a run of tokens from another buffer, moving them a number of lines.
+
+	  @param other The buffer to copy from.
+	  @param from The index of the first token to copy.
+	  @param to The index just past the last token to copy.
+	  @param lineDelta The number to add to the line number of each copied token.
+	 */
+	public void addAll(TokenBuffer other, int from, int to, int lineDelta)
+	{
+		int n = to - from ;
+		int text = 0 ;
+		for (int i = from; i < to; i++)
+			text += other.lengths[i] ;
+		ensureCapacity(count + n) ;
+		if (charCount + text > chars.length)
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + text)) ;
+
+		System.arraycopy(other.symbols, from, symbols, count, n) ;
+		System.arraycopy(other.lengths, from, lengths, count, n) ;
+		char[] otherChars = other.chars ;
+		for (int i = 0; i < n; i++)
+		{
+			int length = other.lengths[from + i], start = other.starts[from + i] ;
+			for (int j = 0; j < length; j++)
+				chars[charCount + j] = otherChars[start + j] ;
+			starts[count + i] = charCount ;
+			lines[count + i] = other.lines[from + i] + lineDelta ;
+			charCount += length ;
+		}
+		count += n ;
+	} // end of method addAll
+
+	/** Appends a token.
+
+	  @param token The token to append.
+	 */
+	public void add(Token token)
+	{
+		String text = token.getText() ;
+		int length = text.length() ;
+		if (!hasOwnText(token.symbol) && text.equals(Token.getName(token.symbol)))
+			length = 0 ;
+		reserve(length) ;
+		text.getChars(0, length, chars, charCount) ;
+		append(token.symbol, length, token.lineNumber) ;
+	} // end of method add
+
+	/** Makes room for one more token with the given length of text. */
+	private void reserve(int length)
+	{
+		ensureCapacity(count + 1) ;
+		if (charCount + length > chars.length)
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length)) ;
+	} // end of method reserve
+
+	/** Makes room for a given number of tokens in all. */
+	private void ensureCapacity(int tokens)
+	{
+		if (tokens > symbols.length)
+		{
+			int capacity = Math.max(symbols.length * 2, tokens) ;
+			symbols = Arrays.copyOf(symbols, capacity) ;
+			starts = Arrays.copyOf(starts, capacity) ;
+			lengths = Arrays.copyOf(lengths, capacity) ;
+			lines = Arrays.copyOf(lines, capacity) ;
+		}
+	} // end of method ensureCapacity
+
+	/** Records a token whose text has already been copied to the end of chars. */
+	private void append(int symbol, int length, int line)
+	{
+		symbols[count] = symbol ;
+		starts[count] = charCount ;
+		lengths[count] = length ;
+		lines[count] = line ;
+		charCount += length ;
+		count++ ;
+	} // end of method append
+
+	/** Replaces a run of tokens with every token of another buffer, moving the
+	  tokens after the run up or down a number of lines.  The text of the
+	  replaced tokens is left behind in chars until the next time it would
+	  otherwise have to grow.
+
+	  @param from The index of the first token to replace.
+	  @param to The index just past the last token to replace.
+	  @param with The tokens to put in their place.
+	  @param lineDelta The number of lines the tokens from index to onwards have moved by.
+	 */
+	public void replace(int from, int to, TokenBuffer with, int lineDelta)
+	{
+		int n = with.count ;
+		int tail = count - to ;
+		ensureCapacity(from + n + tail) ;
+		if (n != to - from)
+		{
+			System.arraycopy(symbols, to, symbols, from + n, tail) ;
+			System.arraycopy(starts, to, starts, from + n, tail) ;
+			System.arraycopy(lengths, to, lengths, from + n, tail) ;
+			System.arraycopy(lines, to, lines, from + n, tail) ;
+		}
+		count = from + n + tail ;
+		if (lineDelta != 0)
+			for (int i = from + n; i < count; i++)
+				lines[i] += lineDelta ;
+
+		// Until the new text is in place the replaced run holds nothing, so compacting cannot lose it.
+		Arrays.fill(lengths, from, from + n, 0) ;
+		if (charCount + with.charCount > chars.length)
+			compact(with.charCount) ;
+		System.arraycopy(with.chars, 0, chars, charCount, with.charCount) ;
+		for (int i = 0; i < n; i++)
+		{
+			symbols[from + i] = with.symbols[i] ;
+			starts[from + i] = charCount + with.starts[i] ;
+			lengths[from + i] = with.lengths[i] ;
+			lines[from + i] = with.lines[i] ;
+		}
+		charCount += with.charCount ;
+	} // end of method replace
+
+	/** Copies the text still in use to a new chars, with room for at least the
+	  given number of chars more. */
+	private void compact(int extra)
+	{
+		int used = 0 ;
+		for (int i = 0; i < count; i++)
+			used += lengths[i] ;
+		char[] packed = new char[Math.max(chars.length, (used + extra) * 2)] ;
+		int at = 0 ;
+		for (int i = 0; i < count; i++)
+		{
+			System.arraycopy(chars, starts[i], packed, at, lengths[i]) ;
+			starts[i] = at ;
+			at += lengths[i] ;
+		}
+		chars = packed ;
+		charCount = at ;
+	} // end of method compact
+
+	/** Removes every token from a given index on.  As with replace, their text
+	  is left behind in chars.
+
+	  @param size The number of tokens to keep.
+	 */
+	public void truncate(int size)
+	{
+		count = Math.min(count, size) ;
+	} // end of method truncate
+
+	/** Removes every token, keeping the allocated arrays. */
+	public void clear()
+	{
+		count = 0 ;
+		charCount = 0 ;
+	} // end of method clear
+
+	/** @return The number of tokens held. */
+	public int size()
+	{
+		return count ;
+	} // end of method size
+
+	/** @return The symbol of the i'th token. */
+	public int symbol(int i)
+	{
+		return symbols[i] ;
+	} // end of method symbol
+
+	/** @return The line number of the i'th token. */
+	public int line(int i)
+	{
+		return lines[i] ;
+	} // end of method line
+
+	/** @return The offset of the i'th token's text within chars(). */
+	public int start(int i)
+	{
+		return starts[i] ;
+	} // end of method start
+
+	/** @return The length of the i'th token's text within chars(), 0 for fixed text. */
+	public int length(int i)
+	{
+		return lengths[i] ;
+	} // end of method length
+
+	/** @return The shared array holding the text of every token. */
+	public char[] chars()
+	{
+		return chars ;
+	} // end of method chars
+
+	/** Materialises the text of the i'th token.  Only identifiers, numbers,
+	  strings and reserved words spelt in anything other than lower case
+	  allocate a new String.
+
+	  @param i The index of the token.
+	  @return The text of the token as it appeared in the source.
+	 */
+	public String text(int i)
+	{
+		int symbol = symbols[i] ;
+		if (hasOwnText(symbol))
+			return new String(chars, starts[i], lengths[i]) ;
+		else if (lengths[i] == 0)
+			return ((symbol == Token.errorSymbol) || (symbol == Token.eofSymbol)) ? "" : Token.getName(symbol) ;
+
+		String name = Token.getName(symbol) ;
+		if (name.length() != lengths[i])
+			return new String(chars, starts[i], lengths[i]) ;
+		for (int j = 0; j < lengths[i]; j++)
+			if (name.charAt(j) != chars[starts[i] + j])
+				return new String(chars, starts[i], lengths[i]) ;
+		return name ;
+	} // end of method text
+
+	/** @return A new Token object for the i'th token. */
+	public Token token(int i)
+	{
+		return new Token(symbols[i], text(i), lines[i]) ;
+	} // end of method token
+
+	/** Is the text of a token with this symbol always its own, rather than fixed by the symbol? */
+	private static boolean hasOwnText(int symbol)
+	{
+		return (symbol == Token.identifier) || (symbol == Token.numberConstant) || (symbol == Token.stringConstant) ;
+	} // end of method hasOwnText
+
+	/** @return A cursor positioned before the first token. */
+	public Cursor cursor()
+	{
+		return new Cursor() ;
+	} // end of method cursor
+
+	/** @return A cursor positioned so that getNextToken returns the token at the given index first. */
+	public Cursor cursor(int index)
+	{
+		Cursor cursor = new Cursor() ;
+		cursor.index = Math.min(index, count) - 1 ;
+		return cursor ;
+	} // end of method cursor
+
+	/** Walks a TokenBuffer from start to end.  getNextToken hands back the same
+	  Token object every time, updated in place, so the caller must be finished
+	  with one token before asking for the next. */
+	public class Cursor implements TokenSource
+	{
+		/** The index of the current token, -1 before the first. */
+		private int index = -1 ;
+		/** The reused token object, whose text is built from this buffer only if asked for. */
+		private final Token token = new Token(Token.errorSymbol, "", 0) ;
+
+		/** Moves to the next token, staying on the last one (eofSymbol) once reached.
+
+		  @return The symbol of the new current token.
+		 */
+		public int advance()
+		{
+			if (index < count - 1)
+				index++ ;
+			return symbols[index] ;
+		} // end of method advance
+
+		/** @return The index of the current token. */
+		public int index()
+		{
+			return index ;
+		} // end of method index
+
+		/** @return The symbol of the current token. */
+		public int symbol()
+		{
+			return symbols[index] ;
+		} // end of method symbol
+
+		/** @return The line number of the current token. */
+		public int line()
+		{
+			return lines[index] ;
+		} // end of method line
+
+		/** @see TokenSource.getNextToken */
+		public Token getNextToken()
+		{
+			advance() ;
+			token.symbol = symbols[index] ;
+			token.setTextAt(TokenBuffer.this, index) ;
+			token.lineNumber = lines[index] ;
+			return token ;
+		} // end of method getNextToken
+	} // end of class Cursor
+} // end of class TokenBuffer
@@ -0,0 +1,220 @@
+/**
+ *
+ * Lexes on a thread of its own while the syntax analyser parses.  The lexing
+ * thread fills TokenBuffers a batch of tokens at a time and publishes them on a
+ * ring shared with the parsing thread, which reads them as an ordinary
+ * TokenSource.  The ring has one producer and one consumer, so it needs no
+ * lock: each side owns one counter, written only by itself, and the ring slot
+ * between them is handed over by the write of that counter.  A full ring holds
+ * the lexer back, so however far ahead it gets the memory it uses is bounded
+ * by the number of batches times their size, and the batches are reused round
+ * the ring rather than allocated afresh.
+ *
+ * Like TokenBuffer.Cursor, getNextToken hands back the same Token object every
+ * time, updated in place.
+ *
+ **/
+import java.io.* ;
+import java.util.concurrent.locks.LockSupport ;
+
+public class TokenPipeline implements TokenSource, Closeable
+{
+	/** The default number of tokens in a batch, and number of batches in the ring. */
+	public static final int BATCH_SIZE = 1024,
+			BATCHES = 16 ;
+
+	/** How many times to spin waiting for the other thread before parking. */
+	private static final int SPINS = 64 ;
+
+	/** The ring of batches; a power of two long. */
+	private final TokenBuffer[] ring ;
+	private final int mask ;
+	private final int batchSize ;
+
+	/** The number of batches the lexer has published; written only by the lexer. */
+	private volatile long published ;
+	/** The number of batches the parser has finished with; written only by the parser. */
+	private volatile long consumed ;
+	/** Set by close to stop the lexer early. */
+	private volatile boolean closed ;
+	/** A thread parked waiting for the other, or null. */
+	private volatile Thread waitingLexer,
+			waitingParser ;
+	/** What went wrong on the lexing thread, if anything; published along with the last batch. */
+	private IOException failure ;
+
+	private final Thread lexer ;
+
+	/** The parser's batch, its index in it, and the reused token. */
+	private TokenBuffer batch ;
+	private int index ;
+	private final Token token = new Token(Token.errorSymbol, "", 0) ;
+	/** Whether the batch being read holds eofSymbol, so that there are no more. */
+	private boolean finished ;
+	/** The number of tokens handed out. */
+	private long tokens ;
+
+	/** Starts lexing a whole file on a new thread.
+
+	  @param fileName The file to read.
+	  @throws IOException if the file cannot be opened.
+	 */
+	public TokenPipeline(String fileName) throws IOException
+	{
+		this(new LexicalAnalyser(fileName, true), BATCH_SIZE, BATCHES) ;
+	} // end of constructor method
+
+	/** Starts draining a lexical analyser on a new thread.
+
+	  @param lex The lexical analyser, which from now on belongs to the new thread.
+	  @param batchSize The number of tokens in a batch.
+	  @param batches The number of batches in the ring, rounded up to a power of two.
+	 */
+	public TokenPipeline(LexicalAnalyser lex, int batchSize, int batches)
+	{
+		int size = Integer.highestOneBit(Math.max(batches, 2) - 1) << 1 ;
+		ring = new TokenBuffer[size] ;
+		for (int i = 0; i < size; i++)
+			ring[i] = new TokenBuffer(batchSize) ;
+		mask = size - 1 ;
+		this.batchSize = Math.max(batchSize, 1) ;
+
+		lexer = new Thread(() -> produce(lex), "TokenPipeline lexer") ;
+		lexer.setDaemon(true) ;
+		lexer.start() ;
+	} // end of constructor method
+
+	/** The lexing thread: fills each free batch in turn until eofSymbol, an error or close. */
+	private void produce(LexicalAnalyser lex)
+	{
+		long next = 0 ;
+		int symbol = Token.errorSymbol ;
+		while ((symbol != Token.eofSymbol) && !closed)
+		{
+			while ((next - consumed) >= ring.length)
+			{
+				if (!await(true, next))
+					return ;
+			}
+			TokenBuffer filling = ring[(int) next & mask] ;
+			filling.clear() ;
+			try
+			{
+				while ((filling.size() < batchSize) && (symbol != Token.eofSymbol))
+				{
+					symbol = lex.nextSymbol() ;
+					filling.add(symbol, lex.tokenChars(), 0, lex.tokenLength(), lex.tokenLineNumber()) ;
+				}
+			}
+			catch (IOException e)
+			{
+				// The batch ends here; the parser rethrows this in place of its eofSymbol.
+				failure = e ;
+				symbol = Token.eofSymbol ;
+				filling.add(symbol, lex.tokenChars(), 0, 0, lex.tokenLineNumber()) ;
+			}
+			published = ++next ;
+			Thread parser = waitingParser ;
+			if (parser != null)
+				LockSupport.unpark(parser) ;
+		}
+	} // end of method produce
+
+	/** Waits for the other thread to move its counter: spinning a little, then parking
+	  until woken.  The waiting thread is recorded before the counter is read again, and
+	  the other thread reads it after writing the counter, so a wake up cannot be lost.
+
+	  @param isLexer Whether the lexer is waiting for space, rather than the parser for a batch.
+	  @param next The lexer's next batch, or the parser's.
+	  @return false if the pipeline has been closed.
+	 */
+	private boolean await(boolean isLexer, long next)
+	{
+		for (int spin = 0; spin < SPINS; spin++)
+		{
+			if (ready(isLexer, next))
+				return true ;
+			Thread.onSpinWait() ;
+		}
+		Thread self = Thread.currentThread() ;
+		if (isLexer)
+			waitingLexer = self ;
+		else
+			waitingParser = self ;
+		while (!ready(isLexer, next))
+			LockSupport.park(this) ;
+		if (isLexer)
+			waitingLexer = null ;
+		else
+			waitingParser = null ;
+		return !closed ;
+	} // end of method await
+
+	/** @return Whether the thread waiting in await can go on. */
+	private boolean ready(boolean isLexer, long next)
+	{
+		if (isLexer)
+			return closed || ((next - consumed) < ring.length) ;
+		return published > next ;
+	} // end of method ready
+
+	/** @see TokenSource.getNextToken */
+	public Token getNextToken() throws IOException
+	{
+		if ((batch == null) || ((index == batch.size()) && !finished))
+			nextBatch() ;
+		int i = Math.min(index, batch.size() - 1) ;
+		if (finished && (i == batch.size() - 1) && (failure != null))
+			throw failure ;
+		if (index < batch.size())
+		{
+			index++ ;
+			tokens++ ;
+		}
+		token.symbol = batch.symbol(i) ;
+		// The batch is not handed back until the next call, so the text can still be built from it until then.
+		token.setTextAt(batch, i) ;
+		token.lineNumber = batch.line(i) ;
+		return token ;
+	} // end of method getNextToken
+
+	/** Hands the batch just read back to the lexer and waits for the next one. */
+	private void nextBatch()
+	{
+		long next = 0 ;
+		if (batch != null)
+		{
+			next = consumed + 1 ;
+			consumed = next ;
+			Thread waiting = waitingLexer ;
+			if (waiting != null)
+				LockSupport.unpark(waiting) ;
+		}
+		if (published <= next)
+			await(false, next) ;
+		batch = ring[(int) next & mask] ;
+		index = 0 ;
+		finished = (batch.symbol(batch.size() - 1) == Token.eofSymbol) ;
+	} // end of method nextBatch
+
+	/** @return The number of tokens handed out so far, counting eofSymbol once. */
+	public long tokens()
+	{
+		return tokens ;
+	} // end of method tokens
+
+	/** Stops the lexing thread, if it has not already finished, and waits for it to end. */
+	public void close()
+	{
+		closed = true ;
+		LockSupport.unpark(lexer) ;
+		try
+		{
+			lexer.join() ;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt() ;
+		}
+	} // end of method close
+} // end of class TokenPipeline
@@ -0,0 +1,18 @@
+/**
+ *
+ * Anything a syntax analyser can pull tokens from: a LexicalAnalyser reading a
+ * file, or a cursor over an already lexed TokenBuffer.
+ *
+ **/
+import java.io.* ;
+
+public interface TokenSource
+{
+	/** Returns the next token.  Once the end of the input is reached every
+	  further call returns an eofSymbol token.
+
+	  @throws IOException in the event that the underlying input cannot be read.
+	  @return the next token.
+	 */
+	Token getNextToken() throws IOException ;
+} // end of interface TokenSource
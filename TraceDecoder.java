@@ -0,0 +1,123 @@
+
+/**
+ *
+ * Turns binary traces written by BinaryTraceSink back into 312 events.
+ *
+ * Usage: java TraceDecoder trace...
+ *
+ * prints each trace as the 312 text output it was recorded from.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class TraceDecoder
+{
+    private final InputStream in;
+    /** Read ahead from in, so that each byte of the trace is not a call on the stream. */
+    private final byte[] buffer = new byte[1 << 16];
+    private int position, limit;
+    private final ArrayList<String> names = new ArrayList<String>();
+    private final ArrayList<String> texts = new ArrayList<String>();
+
+    public TraceDecoder( InputStream in ) {
+        this.in = in;
+    }
+
+    /** Reads the whole trace, passing each event to the sink. */
+    public void replay( EventSink sink ) throws IOException {
+        for( byte b : BinaryTraceSink.MAGIC )
+            if( read() != b )
+                throw new IOException( "not a 312 trace" );
+        if( read() != BinaryTraceSink.VERSION )
+            throw new IOException( "unsupported 312 trace version" );
+
+        int line = 0;
+        int tag;
+        while( (tag = readVarint( true )) >= 0 ) {
+            if( tag == BinaryTraceSink.TAG_SUCCESS ) {
+                sink.success();
+            } else if( tag >= BinaryTraceSink.TAG_NONTERMINAL ) {
+                tag -= BinaryTraceSink.TAG_NONTERMINAL;
+                String name = readString( names, tag >> 1 );
+                if( (tag & 1) == 0 )
+                    sink.beginNonterminal( name );
+                else
+                    sink.endNonterminal( name );
+            } else {
+                int symbol = tag >> 1;
+                if( (tag & 1) != 0 ) {
+                    int delta = readVarint( false );
+                    line += (delta >>> 1) ^ -(delta & 1);
+                }
+                String text = "";
+                if( (symbol == Token.identifier) || (symbol == Token.numberConstant) || (symbol == Token.stringConstant) )
+                    text = readString( texts, readVarint( false ) );
+                sink.terminal( symbol, text, line );
+            }
+        }
+        sink.flush();
+    }
+
+    private String readString( ArrayList<String> table, int index ) throws IOException {
+        if( index < table.size() )
+            return table.get( index );
+        if( index != table.size() )
+            throw new IOException( "corrupt 312 trace: bad string reference" );
+
+        byte[] bytes = new byte[readVarint( false )];
+        for( int n = 0; n < bytes.length; n++ ) {
+            int b = read();
+            if( b < 0 )
+                throw new EOFException( "truncated 312 trace" );
+            bytes[n] = (byte) b;
+        }
+        String s = new String( bytes, StandardCharsets.UTF_8 );
+        table.add( s );
+        return s;
+    }
+
+    /** Reads a byte, or returns -1 at the end of the stream. */
+    private int read() throws IOException {
+        if( position == limit ) {
+            limit = in.read( buffer, 0, buffer.length );
+            position = 0;
+            if( limit <= 0 ) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /** Reads a varint, returning -1 at a clean end of stream if that is allowed. */
+    private int readVarint( boolean endAllowed ) throws IOException {
+        int value = 0;
+        for( int shift = 0; shift < 35; shift += 7 ) {
+            int b = read();
+            if( b < 0 ) {
+                if( endAllowed && shift == 0 )
+                    return -1;
+                throw new EOFException( "truncated 312 trace" );
+            }
+            value |= (b & 0x7F) << shift;
+            if( (b & 0x80) == 0 )
+                return value;
+        }
+        throw new IOException( "corrupt 312 trace: varint too long" );
+    }
+
+    public static void main( String[] args ) throws IOException {
+        if( args.length == 0 ) {
+            System.err.println( "usage: java TraceDecoder trace..." );
+            System.exit( 1 );
+        }
+        for( String fileName : args ) {
+            try( InputStream in = new BufferedInputStream( new FileInputStream( fileName ), 1 << 16 ) ) {
+                new TraceDecoder( in ).replay( new WriterEventSink( System.out ) );
+            }
+        }
+    }
+} // end of class TraceDecoder
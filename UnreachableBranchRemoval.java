@@ -0,0 +1,92 @@
+/**
+ *
+ * Removes the code that a condition of constants rules out: the branch of an
+ * if that is never taken, a while or for loop whose condition is false from
+ * the start (leaving a for loop's initial assignment), and the loop of a
+ * do ... until whose condition is true, whose body then runs just once.  A
+ * loop whose condition never lets it end has the statements after it in the
+ * same block removed, as they can never run.
+ *
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class UnreachableBranchRemoval extends OptimizationPass
+{
+    public String name() {
+        return "unreachable branch removal";
+    }
+
+    protected LoweredProgram.Statement[] optimize( LoweredProgram program ) {
+        return block( program.body );
+    }
+
+    private LoweredProgram.Statement[] block( LoweredProgram.Statement[] statements ) {
+        ArrayList<LoweredProgram.Statement> result = new ArrayList<LoweredProgram.Statement>();
+        boolean changed = false;
+        for( int i = 0; i < statements.length; i++ ) {
+            LoweredProgram.Statement s = statements[i];
+            boolean endless = false;
+            if( s instanceof LoweredProgram.If ) {
+                LoweredProgram.If f = (LoweredProgram.If) s;
+                Boolean value = constantValue( f.condition );
+                if( value != null ) {
+                    rewritten();
+                    result.addAll( Arrays.asList( block( value ? f.thenPart : f.elsePart ) ) );
+                    changed = true;
+                    continue;
+                }
+                LoweredProgram.Statement[] thenPart = block( f.thenPart ), elsePart = block( f.elsePart );
+                if( thenPart != f.thenPart || elsePart != f.elsePart )
+                    s = new LoweredProgram.If( f.condition, thenPart, elsePart );
+            } else if( s instanceof LoweredProgram.While ) {
+                LoweredProgram.While w = (LoweredProgram.While) s;
+                Boolean value = constantValue( w.condition );
+                if( value == Boolean.FALSE ) {
+                    rewritten();
+                    changed = true;
+                    continue;
+                }
+                endless = (value == Boolean.TRUE);
+                LoweredProgram.Statement[] body = block( w.body );
+                if( body != w.body )
+                    s = new LoweredProgram.While( w.condition, body );
+            } else if( s instanceof LoweredProgram.For ) {
+                LoweredProgram.For f = (LoweredProgram.For) s;
+                Boolean value = constantValue( f.condition );
+                if( value == Boolean.FALSE ) {
+                    rewritten();
+                    result.add( f.initial );
+                    changed = true;
+                    continue;
+                }
+                endless = (value == Boolean.TRUE);
+                LoweredProgram.Statement[] body = block( f.body );
+                if( body != f.body )
+                    s = new LoweredProgram.For( f.initial, f.condition, f.step, body );
+            } else if( s instanceof LoweredProgram.DoUntil ) {
+                LoweredProgram.DoUntil d = (LoweredProgram.DoUntil) s;
+                Boolean value = constantValue( d.condition );
+                if( value == Boolean.TRUE ) {
+                    rewritten();
+                    result.addAll( Arrays.asList( block( d.body ) ) );
+                    changed = true;
+                    continue;
+                }
+                endless = (value == Boolean.FALSE);
+                LoweredProgram.Statement[] body = block( d.body );
+                if( body != d.body )
+                    s = new LoweredProgram.DoUntil( body, d.condition );
+            }
+            changed |= (s != statements[i]);
+            result.add( s );
+            if( endless && i < statements.length - 1 ) {
+                rewritten();
+                changed = true;
+                break;
+            }
+        }
+        return changed ? result.toArray( new LoweredProgram.Statement[0] ) : statements;
+    }
+} // end of class UnreachableBranchRemoval
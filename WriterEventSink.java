@@ -0,0 +1,73 @@
+
+/**
+ *
+ * Writes 312 events as text through one large buffer, which is only pushed
+ * to the underlying stream when flushed.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.Charset;
+
+public class WriterEventSink implements EventSink
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final Writer out;
+
+    public WriterEventSink( OutputStream out ) {
+        this( new OutputStreamWriter( out, Charset.defaultCharset() ) );
+    }
+
+    public WriterEventSink( Writer out ) {
+        this.out = new BufferedWriter( out, BUFFER_SIZE );
+    }
+
+    /** Formats a terminal exactly as the 312 text output shows it. */
+    static void appendTerminal( Appendable a, int symbol, String text, int lineNumber ) throws IOException {
+        a.append( "312TOKEN " ).append( Token.getName( symbol ) );
+        if( (symbol == Token.identifier) || (symbol == Token.numberConstant) || (symbol == Token.stringConstant) )
+            a.append( " '" ).append( text ).append( '\'' );
+        a.append( " on line " ).append( Integer.toString( lineNumber ) );
+    }
+
+    public void terminal( int symbol, String text, int lineNumber ) {
+        try {
+            appendTerminal( out, symbol, text, lineNumber );
+            out.write( NEWLINE );
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    public void beginNonterminal( String name ) {
+        line( "312BEGIN ", name );
+    }
+
+    public void endNonterminal( String name ) {
+        line( "312END ", name );
+    }
+
+    public void success() {
+        line( "312SUCCESS", "" );
+    }
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    private void line( String prefix, String name ) {
+        try {
+            out.write( prefix );
+            out.write( name );
+            out.write( NEWLINE );
+        } catch( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+} // end of class WriterEventSink
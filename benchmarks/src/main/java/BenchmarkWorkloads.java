@@ -0,0 +1,321 @@
+/**
+ *
+ * The work measured by the JMH benchmarks in the benchmarks package.
+ *
+ * JMH will not generate benchmarks for classes in the default package, and a
+ * class in a named package cannot name the compiler's classes, so each piece of
+ * work is a public static method here, taking and returning Object, which the
+ * benchmarks call through a constant method handle (see benchmarks.Workloads).
+ * Everything a benchmark measures happens inside one call.
+ *
+ **/
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class BenchmarkWorkloads
+{
+    private static final PrintStream NO_OUTPUT = new PrintStream( OutputStream.nullOutputStream() );
+
+    /** A Generate that throws syntax errors without printing them, so error programs cost only their parse. */
+    private static class QuietGenerate extends Generate {
+        QuietGenerate( EventSink sink ) {
+            setSink( sink );
+        }
+
+        @Override
+        public void reportError( Token token, String explanatoryMessage ) throws CompilationException {
+            throw new CompilationException( explanatoryMessage );
+        }
+    }
+
+    /** The events of a parse, to be sent to a Generate again and again. */
+    private static class RecordedEvents extends Generate {
+        private static final int TERMINAL = 0, BEGIN = 1, END = 2, SUCCESS = 3;
+
+        private final ArrayList<Object> arguments = new ArrayList<Object>();
+        private int[] kinds = new int[256];
+        private int count;
+
+        RecordedEvents() {
+            setSink( new NullEventSink() );
+        }
+
+        private void record( int kind, Object argument ) {
+            if( count == kinds.length )
+                kinds = Arrays.copyOf( kinds, count * 2 );
+            kinds[count++] = kind;
+            arguments.add( argument );
+        }
+
+        @Override
+        public void insertTerminal( Token token ) {
+            record( TERMINAL, new Token( token.symbol, token.getText(), token.lineNumber ) );
+        }
+
+        @Override
+        public void commenceNonterminal( String name ) {
+            record( BEGIN, name );
+        }
+
+        @Override
+        public void finishNonterminal( String name ) {
+            record( END, name );
+        }
+
+        @Override
+        public void reportSuccess() {
+            record( SUCCESS, null );
+        }
+
+        @Override
+        public void reportError( Token token, String explanatoryMessage ) throws CompilationException {
+            throw new CompilationException( explanatoryMessage );
+        }
+
+        int replay( Generate generate ) {
+            for( int i = 0; i < count; i++ ) {
+                switch( kinds[i] ) {
+                    case TERMINAL:
+                        generate.insertTerminal( (Token) arguments.get( i ) );
+                        break;
+                    case BEGIN:
+                        generate.commenceNonterminal( (String) arguments.get( i ) );
+                        break;
+                    case END:
+                        generate.finishNonterminal( (String) arguments.get( i ) );
+                        break;
+                    default:
+                        generate.reportSuccess();
+                        break;
+                }
+            }
+            generate.flush();
+            return count;
+        }
+    }
+
+    /** @return The text of every programN in a directory, from program0 up to the first missing. */
+    public static Object corpus( String directory ) throws IOException {
+        ArrayList<char[]> sources = new ArrayList<char[]>();
+        for( int n = 0; ; n++ ) {
+            File file = new File( directory, "program" + n );
+            if( !file.exists() )
+                break;
+            sources.add( new String( Files.readAllBytes( file.toPath() ), Charset.defaultCharset() ).toCharArray() );
+        }
+        if( sources.isEmpty() )
+            throw new FileNotFoundException( "no programs in " + directory );
+        return sources.toArray( new char[0][] );
+    }
+
+    /** @return One valid program of the given number of statements, from ProgramGenerator, the same for the same seed. */
+    public static Object synthetic( int statements, long seed ) throws IOException {
+        StringBuilder text = new StringBuilder( statements * 40 );
+        new ProgramGenerator( seed ).write( text, statements );
+        return new char[][] { text.toString().toCharArray() };
+    }
+
+    /** @return The sources lexed into TokenBuffers, for the benchmarks that start from tokens. */
+    public static Object tokens( Object sources ) throws IOException {
+        char[][] texts = (char[][]) sources;
+        TokenBuffer[] buffers = new TokenBuffer[texts.length];
+        for( int i = 0; i < texts.length; i++ ) {
+            buffers[i] = new TokenBuffer();
+            buffers[i].fill( new LexicalAnalyser( texts[i], 0, texts[i].length, 0 ) );
+        }
+        return buffers;
+    }
+
+    /** @return The events each of the token streams parses to, for the benchmarks that emit events. */
+    public static Object events( Object tokens ) throws IOException {
+        TokenBuffer[] buffers = (TokenBuffer[]) tokens;
+        RecordedEvents[] events = new RecordedEvents[buffers.length];
+        for( int i = 0; i < buffers.length; i++ ) {
+            events[i] = new RecordedEvents();
+            new SyntaxAnalyser( buffers[i], "benchmark" ).parse( NO_OUTPUT, events[i] );
+        }
+        return events;
+    }
+
+    /** Lexes every source with getNextToken, one Token object per token.  @return The number of tokens. */
+    public static int getNextToken( Object sources ) throws IOException {
+        return getNextToken( sources, false );
+    }
+
+    /** As getNextToken, with the table driven DfaScanner.  @return The number of tokens. */
+    public static int dfaGetNextToken( Object sources ) throws IOException {
+        return getNextToken( sources, true );
+    }
+
+    private static int getNextToken( Object sources, boolean dfa ) throws IOException {
+        int tokens = 0;
+        for( char[] text : (char[][]) sources ) {
+            LexicalAnalyser lex = lexer( text, dfa );
+            while( lex.getNextToken().symbol != Token.eofSymbol )
+                tokens++;
+            tokens++;
+        }
+        return tokens;
+    }
+
+    /** Lexes every source into a reused TokenBuffer, without Token objects.  @return The number of tokens. */
+    public static int fillTokenBuffer( Object sources ) throws IOException {
+        return fillTokenBuffer( sources, false );
+    }
+
+    /** As fillTokenBuffer, with the table driven DfaScanner.  @return The number of tokens. */
+    public static int dfaFillTokenBuffer( Object sources ) throws IOException {
+        return fillTokenBuffer( sources, true );
+    }
+
+    private static int fillTokenBuffer( Object sources, boolean dfa ) throws IOException {
+        TokenBuffer buffer = new TokenBuffer();
+        int tokens = 0;
+        for( char[] text : (char[][]) sources ) {
+            buffer.clear();
+            buffer.fill( lexer( text, dfa ) );
+            tokens += buffer.size();
+        }
+        return tokens;
+    }
+
+    /** @return A scanner over the whole text: the DfaScanner, or the LexicalAnalyser in buffer mode. */
+    private static LexicalAnalyser lexer( char[] text, boolean dfa ) {
+        return dfa ? new DfaScanner( text, 0, text.length, 0 ) : new LexicalAnalyser( text, 0, text.length, 0 );
+    }
+
+    /** Lexes every source with a ParallelLexer on the common pool, cutting a source into chunks only when
+      it is large enough.  @return The number of tokens. */
+    public static int parallelLex( Object sources ) throws IOException {
+        ParallelLexer lexer = new ParallelLexer();
+        int tokens = 0;
+        for( char[] text : (char[][]) sources )
+            tokens += lexer.lex( text, 0, text.length ).size();
+        return tokens;
+    }
+
+    /** @return A parser for the tokens: "descent" for SyntaxAnalyser, "table" for TableDrivenParser. */
+    private static AbstractSyntaxAnalyser parser( TokenBuffer buffer, String engine ) {
+        if( engine.equals( "table" ) )
+            return new TableDrivenParser( buffer, "benchmark" );
+        return new SyntaxAnalyser( buffer, "benchmark" );
+    }
+
+    /** Parses every already lexed source with the given engine, discarding the events.  @return The number of tokens. */
+    public static int parse( Object tokens, String engine ) throws IOException {
+        int count = 0;
+        for( TokenBuffer buffer : (TokenBuffer[]) tokens ) {
+            parser( buffer, engine ).parse( NO_OUTPUT, new QuietGenerate( new NullEventSink() ) );
+            count += buffer.size();
+        }
+        return count;
+    }
+
+    /** Lexes and parses every source with the given engine, discarding the events.  @return The number of tokens. */
+    public static int lexAndParse( Object sources, String engine ) throws IOException {
+        int count = 0;
+        for( char[] text : (char[][]) sources ) {
+            TokenBuffer buffer = new TokenBuffer();
+            buffer.fill( new LexicalAnalyser( text, 0, text.length, 0 ) );
+            parser( buffer, engine ).parse( NO_OUTPUT, new QuietGenerate( new NullEventSink() ) );
+            count += buffer.size();
+        }
+        return count;
+    }
+
+    /** Lexes every source on a second thread, feeding the given engine through a TokenPipeline, and
+      parses it, discarding the events.  @return The number of tokens. */
+    public static int pipelinedLexAndParse( Object sources, String engine ) throws IOException {
+        int count = 0;
+        for( char[] text : (char[][]) sources ) {
+            try( TokenPipeline pipeline = new TokenPipeline( new LexicalAnalyser( text, 0, text.length, 0 ),
+                    TokenPipeline.BATCH_SIZE, TokenPipeline.BATCHES ) ) {
+                AbstractSyntaxAnalyser parser = engine.equals( "table" )
+                        ? new TableDrivenParser( pipeline, "benchmark" ) : new SyntaxAnalyser( pipeline, "benchmark" );
+                parser.parse( NO_OUTPUT, new QuietGenerate( new NullEventSink() ) );
+                count += (int) pipeline.tokens();
+            }
+        }
+        return count;
+    }
+
+    /** A loop-heavy program for the execution benchmarks: n * n times round a loop of arithmetic, a
+      remainder and a branch. */
+    private static final String LOOPS = "begin\n"
+        + "call get(n) ;\n"
+        + "total := 0 ;\n"
+        + "for (i := 0; i < n; i := i + 1) do\n"
+        + "  j := 0 ;\n"
+        + "  while j < n loop\n"
+        + "    total := total + (i * j) % 7 - j / 3 ;\n"
+        + "    if total > 1000000 then total := total - 1000000 else total := total + 1 end if ;\n"
+        + "    j := j + 1\n"
+        + "  end loop\n"
+        + "end loop ;\n"
+        + "call put(total)\n"
+        + "end\n";
+
+    /** Prepares a program to run: "factorial", program0 of the corpus, with 170 as its input (the
+      largest factorial a double holds), or "loops", with n = 300.  The back end is "bytecode" for a
+      class compiled by BytecodeGenerator, "interpret" for ProgramInterpreter or "registers" for
+      RegisterInterpreter.
+      @return The program and its input, for execute(). */
+    public static Object executable( String program, String corpusDirectory, String backend ) throws IOException {
+        String source, input;
+        if( program.equals( "factorial" ) ) {
+            source = new String( Files.readAllBytes( new File( corpusDirectory, "program0" ).toPath() ), Charset.defaultCharset() );
+            input = "170";
+        } else {
+            source = LOOPS;
+            input = "300";
+        }
+        char[] text = source.toCharArray();
+        TokenBuffer tokens = new TokenBuffer();
+        tokens.fill( new LexicalAnalyser( text, 0, text.length, 0 ) );
+        ExecutableProgram executable;
+        try {
+            LoweredProgram lowered = LoweredProgram.parse( tokens, program );
+            if( backend.equals( "interpret" ) ) {
+                executable = new ProgramInterpreter( lowered );
+            } else if( backend.equals( "registers" ) ) {
+                executable = new RegisterInterpreter( RegisterProgram.compile( lowered ) );
+            } else {
+                byte[] classFile = new BytecodeGenerator( lowered, program ).generate();
+                executable = BytecodeGenerator.load( program, classFile );
+            }
+        } catch( CompilationException e ) {
+            throw new IOException( e.getMessage(), e );
+        }
+        return new Object[] { executable, input.getBytes() };
+    }
+
+    /** Runs a program from executable() once, discarding its output.  @return 1. */
+    public static int execute( Object executable ) throws IOException {
+        Object[] prepared = (Object[]) executable;
+        ((ExecutableProgram) prepared[0]).run(
+                new ProgramRuntime( new ByteArrayInputStream( (byte[]) prepared[1] ), OutputStream.nullOutputStream() ) );
+        return 1;
+    }
+
+    /** Sends recorded events through AbstractGenerate to a sink: "null" discards them, "text" formats
+      the usual 312 lines to a stream that discards them, and "binary" writes a binary trace.
+      @return The number of events. */
+    public static int emit( Object events, String sink ) {
+        int count = 0;
+        for( RecordedEvents recorded : (RecordedEvents[]) events ) {
+            EventSink target;
+            if( sink.equals( "text" ) )
+                target = new WriterEventSink( OutputStream.nullOutputStream() );
+            else if( sink.equals( "binary" ) )
+                target = new BinaryTraceSink( OutputStream.nullOutputStream() );
+            else
+                target = new NullEventSink();
+            count += recorded.replay( new QuietGenerate( target ) );
+        }
+        return count;
+    }
+} // end of class BenchmarkWorkloads
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the GC profiler (the same as "-prof gc") always on,
+ * so that every run reports allocation per operation as well as throughput.
+ * The command line, with "-prof gc" added unless it is already there, is
+ * handed to JMH's own Main, so every other option works as it does there,
+ * including -l, -lp, -lprof and -h.
+ */
+public class BenchmarkMain
+{
+    public static void main( String[] args ) throws IOException {
+        List<String> options = new ArrayList<String>( Arrays.asList( args ) );
+        boolean gc = false;
+        for( int i = 0; i + 1 < args.length; i++ ) {
+            if( args[i].equals( "-prof" ) && args[i + 1].equals( "gc" ) )
+                gc = true;
+        }
+        if( !gc ) {
+            options.add( 0, "-prof" );
+            options.add( 1, "gc" );
+        }
+        Main.main( options.toArray( new String[0] ) );
+    }
+}
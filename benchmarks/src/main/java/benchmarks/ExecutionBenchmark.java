@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Running compiled programs: a class from BytecodeGenerator, run by the JIT,
+ * against ProgramInterpreter walking the same lowered program and
+ * RegisterInterpreter running it as register code.  "factorial" is
+ * program0 of the corpus computing 170!, and "loops" a program of 90,000 times
+ * round a loop of arithmetic and a branch.  Compiling the program is not
+ * measured, only running it.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+@State( Scope.Benchmark )
+public class ExecutionBenchmark
+{
+    @Param( { "factorial", "loops" } )
+    public String program;
+
+    /** "bytecode" for BytecodeGenerator, "interpret" for ProgramInterpreter, "registers" for RegisterInterpreter. */
+    @Param( { "bytecode", "interpret", "registers" } )
+    public String backend;
+
+    private Object executable;
+
+    @Setup
+    public void setUp() throws Throwable {
+        executable = Workloads.executable( program, backend );
+    }
+
+    @Benchmark
+    public int run() throws Throwable {
+        return Workloads.execute( executable );
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The cost of emitting parse events through AbstractGenerate, replaying events
+ * recorded from a parse so that no lexing or parsing is measured.  The sink is
+ * "null" (events dropped), "text" (the usual 312 lines, formatted and written
+ * to a stream that drops them) or "binary" (a BinaryTraceSink trace).  The
+ * "events" counter gives events per second.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+@State( Scope.Benchmark )
+public class GenerateBenchmark
+{
+    /** "corpus" for Programs Folder, or the number of statements in a synthetic program. */
+    @Param( { "corpus", "1000", "100000" } )
+    public String input;
+
+    @Param( { "null", "text", "binary" } )
+    public String sink;
+
+    private Object events;
+
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class Counters {
+        public long events;
+
+        @Setup( Level.Iteration )
+        public void reset() {
+            events = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Throwable {
+        events = Workloads.events( Workloads.tokens( Workloads.sources( input ) ) );
+    }
+
+    @Benchmark
+    public int emit( Counters counters ) throws Throwable {
+        int count = Workloads.emit( events, sink );
+        counters.events += count;
+        return count;
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Lexing throughput.  The primary score is passes over the input per second;
+ * the "tokens" counter gives tokens per second.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+@State( Scope.Benchmark )
+public class LexerBenchmark
+{
+    /** "corpus" for Programs Folder, or the number of statements in a synthetic program. */
+    @Param( { "corpus", "1000", "100000" } )
+    public String input;
+
+    private Object sources;
+
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class Counters {
+        public long tokens;
+
+        @Setup( Level.Iteration )
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Throwable {
+        sources = Workloads.sources( input );
+    }
+
+    /** LexicalAnalyser.getNextToken, as the parser reading a file uses it: a new Token every call. */
+    @Benchmark
+    public int getNextToken( Counters counters ) throws Throwable {
+        int tokens = Workloads.getNextToken( sources );
+        counters.tokens += tokens;
+        return tokens;
+    }
+
+    /** Lexing straight into a TokenBuffer, with no Token objects. */
+    @Benchmark
+    public int fillTokenBuffer( Counters counters ) throws Throwable {
+        int tokens = Workloads.fillTokenBuffer( sources );
+        counters.tokens += tokens;
+        return tokens;
+    }
+
+    /** getNextToken from the table driven DfaScanner, to compare with LexicalAnalyser's. */
+    @Benchmark
+    public int dfaGetNextToken( Counters counters ) throws Throwable {
+        int tokens = Workloads.dfaGetNextToken( sources );
+        counters.tokens += tokens;
+        return tokens;
+    }
+
+    /** The DfaScanner straight into a TokenBuffer, to compare with fillTokenBuffer. */
+    @Benchmark
+    public int dfaFillTokenBuffer( Counters counters ) throws Throwable {
+        int tokens = Workloads.dfaFillTokenBuffer( sources );
+        counters.tokens += tokens;
+        return tokens;
+    }
+
+    /** ParallelLexer on the common pool: only the 100000 statement program is big enough to be cut up. */
+    @Benchmark
+    public int parallelLex( Counters counters ) throws Throwable {
+        int tokens = Workloads.parallelLex( sources );
+        counters.tokens += tokens;
+        return tokens;
+    }
+}
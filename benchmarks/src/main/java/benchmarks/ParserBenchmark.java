@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Parser throughput, with the events discarded so that only the parse is
+ * measured, for both the recursive descent SyntaxAnalyser and the table driven
+ * TableDrivenParser.  The "tokens" counter gives tokens parsed per second.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 2 )
+@State( Scope.Benchmark )
+public class ParserBenchmark
+{
+    /** "corpus" for Programs Folder, or the number of statements in a synthetic program. */
+    @Param( { "corpus", "1000", "100000" } )
+    public String input;
+
+    /** "descent" for SyntaxAnalyser, "table" for TableDrivenParser. */
+    @Param( { "descent", "table" } )
+    public String engine;
+
+    private Object sources;
+    private Object tokens;
+
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class Counters {
+        public long tokens;
+
+        @Setup( Level.Iteration )
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Throwable {
+        sources = Workloads.sources( input );
+        tokens = Workloads.tokens( sources );
+    }
+
+    /** The parse alone, from tokens lexed in advance. */
+    @Benchmark
+    public int parse( Counters counters ) throws Throwable {
+        int count = Workloads.parse( tokens, engine );
+        counters.tokens += count;
+        return count;
+    }
+
+    /** Lexing and parsing from the source text. */
+    @Benchmark
+    public int lexAndParse( Counters counters ) throws Throwable {
+        int count = Workloads.lexAndParse( sources, engine );
+        counters.tokens += count;
+        return count;
+    }
+
+    /** Lexing on a second thread, through a TokenPipeline, while this one parses: to compare with lexAndParse. */
+    @Benchmark
+    public int pipelinedLexAndParse( Counters counters ) throws Throwable {
+        int count = Workloads.pipelinedLexAndParse( sources, engine );
+        counters.tokens += count;
+        return count;
+    }
+}
@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls into BenchmarkWorkloads, in the default package, through method handles
+ * held in static final fields, which the JIT treats as constants and inlines
+ * like a direct call.
+ */
+final class Workloads
+{
+    private static final MethodHandle CORPUS = find( "corpus", Object.class, String.class );
+    private static final MethodHandle SYNTHETIC = find( "synthetic", Object.class, int.class, long.class );
+    private static final MethodHandle TOKENS = find( "tokens", Object.class, Object.class );
+    private static final MethodHandle EVENTS = find( "events", Object.class, Object.class );
+    private static final MethodHandle GET_NEXT_TOKEN = find( "getNextToken", int.class, Object.class );
+    private static final MethodHandle FILL_TOKEN_BUFFER = find( "fillTokenBuffer", int.class, Object.class );
+    private static final MethodHandle DFA_GET_NEXT_TOKEN = find( "dfaGetNextToken", int.class, Object.class );
+    private static final MethodHandle DFA_FILL_TOKEN_BUFFER = find( "dfaFillTokenBuffer", int.class, Object.class );
+    private static final MethodHandle PARALLEL_LEX = find( "parallelLex", int.class, Object.class );
+    private static final MethodHandle PARSE = find( "parse", int.class, Object.class, String.class );
+    private static final MethodHandle LEX_AND_PARSE = find( "lexAndParse", int.class, Object.class, String.class );
+    private static final MethodHandle PIPELINED_LEX_AND_PARSE = find( "pipelinedLexAndParse", int.class, Object.class, String.class );
+    private static final MethodHandle EMIT = find( "emit", int.class, Object.class, String.class );
+    private static final MethodHandle EXECUTABLE = find( "executable", Object.class, String.class, String.class, String.class );
+    private static final MethodHandle EXECUTE = find( "execute", int.class, Object.class );
+
+    private Workloads() {
+    }
+
+    private static MethodHandle find( String name, Class<?> returnType, Class<?>... parameterTypes ) {
+        try {
+            Class<?> workloads = Class.forName( "BenchmarkWorkloads" );
+            return MethodHandles.publicLookup().findStatic( workloads, name, MethodType.methodType( returnType, parameterTypes ) );
+        } catch( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+    /** The programs to measure: "corpus" for Programs Folder, or a number of statements for one synthetic program. */
+    static Object sources( String input ) throws Throwable {
+        if( input.equals( "corpus" ) )
+            return (Object) CORPUS.invokeExact( corpusDirectory() );
+        return (Object) SYNTHETIC.invokeExact( Integer.parseInt( input ), 312L );
+    }
+
+    private static String corpusDirectory() {
+        String directory = System.getProperty( "corpus" );
+        if( directory != null )
+            return directory;
+        if( new java.io.File( "Programs Folder" ).isDirectory() )
+            return "Programs Folder";
+        return "../Programs Folder";
+    }
+
+    static Object tokens( Object sources ) throws Throwable {
+        return (Object) TOKENS.invokeExact( sources );
+    }
+
+    static Object events( Object tokens ) throws Throwable {
+        return (Object) EVENTS.invokeExact( tokens );
+    }
+
+    static int getNextToken( Object sources ) throws Throwable {
+        return (int) GET_NEXT_TOKEN.invokeExact( sources );
+    }
+
+    static int fillTokenBuffer( Object sources ) throws Throwable {
+        return (int) FILL_TOKEN_BUFFER.invokeExact( sources );
+    }
+
+    static int dfaGetNextToken( Object sources ) throws Throwable {
+        return (int) DFA_GET_NEXT_TOKEN.invokeExact( sources );
+    }
+
+    static int dfaFillTokenBuffer( Object sources ) throws Throwable {
+        return (int) DFA_FILL_TOKEN_BUFFER.invokeExact( sources );
+    }
+
+    static int parallelLex( Object sources ) throws Throwable {
+        return (int) PARALLEL_LEX.invokeExact( sources );
+    }
+
+    static int parse( Object tokens, String engine ) throws Throwable {
+        return (int) PARSE.invokeExact( tokens, engine );
+    }
+
+    static int lexAndParse( Object sources, String engine ) throws Throwable {
+        return (int) LEX_AND_PARSE.invokeExact( sources, engine );
+    }
+
+    static int pipelinedLexAndParse( Object sources, String engine ) throws Throwable {
+        return (int) PIPELINED_LEX_AND_PARSE.invokeExact( sources, engine );
+    }
+
+    static int emit( Object events, String sink ) throws Throwable {
+        return (int) EMIT.invokeExact( events, sink );
+    }
+
+    static Object executable( String program, String backend ) throws Throwable {
+        return (Object) EXECUTABLE.invokeExact( program, corpusDirectory(), backend );
+    }
+
+    static int execute( Object executable ) throws Throwable {
+        return (int) EXECUTE.invokeExact( executable );
+    }
+}